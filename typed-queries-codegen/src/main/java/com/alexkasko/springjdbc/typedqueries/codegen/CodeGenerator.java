@@ -4,11 +4,16 @@ import freemarker.ext.beans.BeansWrapper;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
 
 import java.io.*;
+import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.nio.charset.Charset;
+import java.sql.Types;
 import java.util.*;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static freemarker.ext.beans.BeansWrapper.EXPOSE_PROPERTIES_ONLY;
@@ -33,6 +38,21 @@ public class CodeGenerator {
     private static final Pattern COLUMNS_COMMA_REGEX = Pattern.compile(",");
     private static final Pattern COLUMNS_SPACE_REGEX = Pattern.compile("\\s+");
     private static final Pattern COLUMNS_NAME_RESTRICTION_PATTERN = Pattern.compile("^[a-zA-Z0-9_$]+$");
+    private static final Set<Class<?>> PRIMITIVE_COLUMN_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            long.class, int.class, short.class, double.class, float.class, boolean.class));
+    private static final Set<Class<?>> SPILLABLE_COLUMN_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            long.class, int.class, short.class, double.class, float.class, boolean.class,
+            String.class, BigDecimal.class, Date.class, byte[].class));
+    private static final Set<String> STATEMENT_DIRECTIVES = new HashSet<String>(Arrays.asList("fetchSize", "timeout", "maxRows"));
+    private static final String PAGE_KEY_DIRECTIVE = "pageKey";
+    private static final String WRITE_BEHIND_KEY_DIRECTIVE = "writeBehindKey";
+    // single values tuple without string literals, nested parentheses are allowed for one level (function calls)
+    private static final Pattern VALUES_INSERT_REGEX = Pattern.compile(
+            "^\\s*insert\\s+into\\s+[^;]+?\\bvalues\\s*\\((?:[^()']|\\([^()']*\\))*\\)\\s*;?\\s*$", CASE_INSENSITIVE | DOTALL);
+    // pageable queries are wrapped into derived table limited by generated methods
+    private static final Pattern ROW_LIMIT_REGEX = Pattern.compile("\\b(?:limit|offset)\\s+(?:[0-9?:]|\\$\\{)|" +
+            "\\bfetch\\s+(?:first|next)\\b|\\bselect\\s+(?:distinct\\s+)?top\\b", CASE_INSENSITIVE);
+    private static final Pattern PLACEHOLDER_REGEX = Pattern.compile("\\$\\{([a-zA-Z0-9_]+)(?:\\(.*?\\))?\\}", DOTALL);
 
     private final boolean isPublic;
     private final boolean useIterableJdbcTemplate;
@@ -43,6 +63,24 @@ public class CodeGenerator {
     private final boolean useUnderscoredToCamel;
     private final boolean generateInterfacesForColumns;
     private final boolean useFluentSettersForColumns;
+    private final boolean usePreparsedQueries;
+    private final boolean generateParamsSources;
+    private final boolean useTypedSubstitutions;
+    private final boolean generateRowClasses;
+    private final boolean generateColumnArrays;
+    private final boolean generateRowCallbacks;
+    private final boolean usePrefetchIterators;
+    private final boolean useStreams;
+    private final boolean useReactivePublishers;
+    private final boolean useAsyncMethods;
+    private final boolean generateLimitedSelects;
+    private final boolean useLazyLists;
+    private final boolean useSpillBuffers;
+    private final boolean generateExports;
+    private final boolean usePipelinedBatches;
+    private final boolean useParallelBatches;
+    private final boolean useMultiValuesInserts;
+    private final boolean useColumnsBatches;
     private final Pattern selectRegex;
     private final Pattern updateRegex;
     private final Pattern templateRegex;
@@ -52,7 +90,8 @@ public class CodeGenerator {
     private final Configuration freemarkerConf;
 
     /**
-     * Constructor
+     * Constructor, generator features introduced after this constructor
+     * are disabled, use {@link Builder} to enable them
      *
      *
      * @param isPublic whether generated class and its methods will have 'public' access modifier
@@ -83,29 +122,87 @@ public class CodeGenerator {
                          boolean useUnderscoredToCamel, boolean generateInterfacesForColumns,
                          boolean useFluentSettersForColumns, Map<String, Class<?>> typeIdMap, String freemarkerTemplate,
                          Configuration freemarkerConf) throws CodeGeneratorException {
-        if(null == selectRegex) throw new CodeGeneratorException("Provided selectRegex is null");
-        if(null == updateRegex) throw new CodeGeneratorException("Provided updateRegex is null");
-        if(null == templateRegex) throw new CodeGeneratorException("Provided templateRegex is null");
-        if(null == templateValueConstraintRegex) throw new CodeGeneratorException("Provided templateValueConstraintRegex is null");
-        if(null == typeIdMap) throw new CodeGeneratorException("Provided typeIdMap is null");
-        if(null == freemarkerTemplate) throw new CodeGeneratorException("Provided freemarkerTemplate is null");
-        if(null == freemarkerConf) throw new CodeGeneratorException("Provided freemarkerConf is null");
-        this.isPublic = isPublic;
-        this.useIterableJdbcTemplate = useIterableJdbcTemplate;
-        this.useCloseableIterables = useCloseableIterables;
-        this.useCheckSingleRowUpdates = useCheckSingleRowUpdates;
-        this.useBatchInserts = useBatchInserts;
-        this.useTemplateStringSubstitution = useTemplateStringSubstitution;
-        this.useUnderscoredToCamel = useUnderscoredToCamel;
-        this.generateInterfacesForColumns = generateInterfacesForColumns;
-        this.useFluentSettersForColumns = useFluentSettersForColumns;
-        this.selectRegex = Pattern.compile(selectRegex);
-        this.updateRegex = Pattern.compile(updateRegex);
-        this.templateRegex = Pattern.compile(templateRegex);
-        this.templateValueConstraintRegex = Pattern.compile(templateValueConstraintRegex);
-        this.typeIdMap = typeIdMap;
-        this.freemarkerTemplate = freemarkerTemplate;
-        this.freemarkerConf = freemarkerConf;
+        this(legacyBuilder(isPublic, useIterableJdbcTemplate, useCloseableIterables, useCheckSingleRowUpdates,
+                useBatchInserts, useTemplateStringSubstitution, selectRegex, updateRegex, templateRegex,
+                templateValueConstraintRegex, useUnderscoredToCamel, generateInterfacesForColumns,
+                useFluentSettersForColumns, typeIdMap, freemarkerTemplate, freemarkerConf));
+    }
+
+    /**
+     * Constructor used by {@link Builder}, all the options are taken from builder
+     *
+     * @param builder configured builder
+     * @throws CodeGeneratorException on any error
+     */
+    private CodeGenerator(Builder builder) throws CodeGeneratorException {
+        if(null == builder.selectRegex) throw new CodeGeneratorException("Provided selectRegex is null");
+        if(null == builder.updateRegex) throw new CodeGeneratorException("Provided updateRegex is null");
+        if(null == builder.templateRegex) throw new CodeGeneratorException("Provided templateRegex is null");
+        if(null == builder.templateValueConstraintRegex) throw new CodeGeneratorException("Provided templateValueConstraintRegex is null");
+        if(null == builder.typeIdMap) throw new CodeGeneratorException("Provided typeIdMap is null");
+        if(null == builder.freemarkerTemplate) throw new CodeGeneratorException("Provided freemarkerTemplate is null");
+        if(null == builder.freemarkerConf) throw new CodeGeneratorException("Provided freemarkerConf is null");
+        this.isPublic = builder.isPublic;
+        this.useIterableJdbcTemplate = builder.useIterableJdbcTemplate;
+        this.useCloseableIterables = builder.useCloseableIterables;
+        this.useCheckSingleRowUpdates = builder.useCheckSingleRowUpdates;
+        this.useBatchInserts = builder.useBatchInserts;
+        this.useTemplateStringSubstitution = builder.useTemplateStringSubstitution;
+        this.useUnderscoredToCamel = builder.useUnderscoredToCamel;
+        this.generateInterfacesForColumns = builder.generateInterfacesForColumns;
+        this.useFluentSettersForColumns = builder.useFluentSettersForColumns;
+        this.usePreparsedQueries = builder.usePreparsedQueries;
+        this.generateParamsSources = builder.generateParamsSources;
+        this.useTypedSubstitutions = builder.useTypedSubstitutions;
+        this.generateRowClasses = builder.generateRowClasses;
+        this.generateColumnArrays = builder.generateColumnArrays;
+        this.generateRowCallbacks = builder.generateRowCallbacks;
+        this.usePrefetchIterators = builder.usePrefetchIterators;
+        this.useStreams = builder.useStreams;
+        this.useReactivePublishers = builder.useReactivePublishers;
+        this.useAsyncMethods = builder.useAsyncMethods;
+        this.generateLimitedSelects = builder.generateLimitedSelects;
+        this.useLazyLists = builder.useLazyLists;
+        this.useSpillBuffers = builder.useSpillBuffers;
+        this.generateExports = builder.generateExports;
+        this.usePipelinedBatches = builder.usePipelinedBatches;
+        this.useParallelBatches = builder.useParallelBatches;
+        this.useMultiValuesInserts = builder.useMultiValuesInserts;
+        this.useColumnsBatches = builder.useColumnsBatches;
+        this.selectRegex = Pattern.compile(builder.selectRegex);
+        this.updateRegex = Pattern.compile(builder.updateRegex);
+        this.templateRegex = Pattern.compile(builder.templateRegex);
+        this.templateValueConstraintRegex = Pattern.compile(builder.templateValueConstraintRegex);
+        this.typeIdMap = builder.typeIdMap;
+        this.freemarkerTemplate = builder.freemarkerTemplate;
+        this.freemarkerConf = builder.freemarkerConf;
+    }
+
+    private static Builder legacyBuilder(boolean isPublic, boolean useIterableJdbcTemplate, boolean useCloseableIterables,
+                                         boolean useCheckSingleRowUpdates, boolean useBatchInserts,
+                                         boolean useTemplateStringSubstitution, String selectRegex,
+                                         String updateRegex, String templateRegex, String templateValueConstraintRegex,
+                                         boolean useUnderscoredToCamel, boolean generateInterfacesForColumns,
+                                         boolean useFluentSettersForColumns, Map<String, Class<?>> typeIdMap,
+                                         String freemarkerTemplate, Configuration freemarkerConf) {
+        Builder builder = new Builder();
+        builder.isPublic = isPublic;
+        builder.useIterableJdbcTemplate = useIterableJdbcTemplate;
+        builder.useCloseableIterables = useCloseableIterables;
+        builder.useCheckSingleRowUpdates = useCheckSingleRowUpdates;
+        builder.useBatchInserts = useBatchInserts;
+        builder.useTemplateStringSubstitution = useTemplateStringSubstitution;
+        builder.selectRegex = selectRegex;
+        builder.updateRegex = updateRegex;
+        builder.templateRegex = templateRegex;
+        builder.templateValueConstraintRegex = templateValueConstraintRegex;
+        builder.useUnderscoredToCamel = useUnderscoredToCamel;
+        builder.generateInterfacesForColumns = generateInterfacesForColumns;
+        builder.useFluentSettersForColumns = useFluentSettersForColumns;
+        builder.typeIdMap = typeIdMap;
+        builder.freemarkerTemplate = freemarkerTemplate;
+        builder.freemarkerConf = freemarkerConf;
+        return builder;
     }
 
     /**
@@ -119,13 +216,29 @@ public class CodeGenerator {
      */
     public void generate(Map<String, String> queries, String fullClassName, String sourceSqlFileName, Writer output)
             throws CodeGeneratorException {
+        generate(queries, Collections.<String, Map<String, String>>emptyMap(), fullClassName, sourceSqlFileName, output);
+    }
+
+    /**
+     * Generates queries wrappers class
+     *
+     * @param queries name -> text query mapping
+     * @param directives name -> directives mapping, queries without directives may be omitted
+     * @param fullClassName class name with package prefix
+     * @param sourceSqlFileName name of source SQL file
+     * @param output output writer
+     * @throws CodeGeneratorException
+     */
+    public void generate(Map<String, String> queries, Map<String, Map<String, String>> directives, String fullClassName,
+                         String sourceSqlFileName, Writer output) throws CodeGeneratorException {
         if(null == queries || 0 == queries.size()) throw new CodeGeneratorException("Provided queries map is empty");
+        if(null == directives) throw new CodeGeneratorException("Provided directives map is null");
         if(null == fullClassName || 0 == fullClassName.length()) throw new CodeGeneratorException("Provided fullClassName is empty");
         if(!fullClassName.contains(".") || (fullClassName.lastIndexOf(".") ==  fullClassName.length())) throw new CodeGeneratorException(
                 "Full class name must have non empty package prefix, but was: [" + fullClassName + "]");
         if(null == output) throw new CodeGeneratorException("Provided output is null");
         try {
-            RootTemplateArg params = createTemplateArgs(queries, fullClassName, sourceSqlFileName);
+            RootTemplateArg params = createTemplateArgs(queries, directives, fullClassName, sourceSqlFileName);
             Reader templateReader = new StringReader(freemarkerTemplate);
             Template ftl = new Template(fullClassName, templateReader, freemarkerConf, "UTF-8");
             ftl.process(params, output);
@@ -139,7 +252,12 @@ public class CodeGenerator {
         }
     }
 
-    private RootTemplateArg createTemplateArgs(Map<String, String> queries, String fullClassName, String sourceSqlFileName) {
+    private RootTemplateArg createTemplateArgs(Map<String, String> queries, Map<String, Map<String, String>> directives,
+                                               String fullClassName, String sourceSqlFileName) {
+        for (String name : directives.keySet()) {
+            if (!queries.containsKey(name)) throw new CodeGeneratorException(
+                    "Directives provided for unknown query: [" + name + "], queries: [" + queries.keySet() + "]");
+        }
         int dotIndex = fullClassName.lastIndexOf(".");
         String packageName = fullClassName.substring(0, dotIndex);
         String className = fullClassName.substring(dotIndex + 1);
@@ -149,35 +267,147 @@ public class CodeGenerator {
         for (Map.Entry<String, String> en : queries.entrySet()) {
             String name = en.getKey();
             String sql = en.getValue();
+            Map<String, String> queryDirectives = checkDirectives(name, directives.get(name));
             List<String> paramNames = parseParamsNames(sql);
-            Set<ParamTemplateArg> params = createNamedParams(paramNames);
+            List<ParamTemplateArg> paramsOrder = createParamsList(paramNames);
+            Set<ParamTemplateArg> params = new LinkedHashSet<ParamTemplateArg>(paramsOrder);
             List<String> colNames = parseColumnNames(sql);
-            Set<ParamTemplateArg> columns = createNamedParams(colNames);
+            Set<ParamTemplateArg> columns = new LinkedHashSet<ParamTemplateArg>(createParamsList(colNames));
             boolean isTemplate = useTemplateStringSubstitution && templateRegex.matcher(name).matches();
-            QueryTemplateArg query = new QueryTemplateArg(name, params, columns, isTemplate);
-            if (selectRegex.matcher(name).matches()) selects.add(query);
+            boolean isPreparsed = usePreparsedQueries && !isTemplate && params.size() > 0 && allPositional(params);
+            List<String> placeholders = isTemplate ? parsePlaceholders(sql) : Collections.<String>emptyList();
+            boolean isSelect = selectRegex.matcher(name).matches();
+            // index-based mapping requires all columns to be parsed and to have distinct names
+            boolean columnsParsed = isSelect && columns.size() > 0 && columns.size() == parseColumnCandidates(sql).size();
+            boolean hasRowClass = generateRowClasses && columnsParsed && columns.size() > 1;
+            boolean hasColumnArrays = generateColumnArrays && columnsParsed && allPrimitiveNumbers(columns);
+            boolean hasSpillBuffer = useSpillBuffers && hasRowClass && allSpillable(columns);
+            boolean hasValuesInsert = useBatchInserts && useMultiValuesInserts && !isSelect && !isTemplate &&
+                    params.size() > 0 && VALUES_INSERT_REGEX.matcher(sql).matches();
+            boolean hasColumnsBatch = useBatchInserts && useColumnsBatches && !isSelect && !isTemplate &&
+                    params.size() > 0 && allPositional(params);
+            ParamTemplateArg pageKey = pageKeyColumn(name, sql, isSelect, columns, queryDirectives.get(PAGE_KEY_DIRECTIVE));
+            ParamTemplateArg writeBehindKey = writeBehindKeyParam(name, isSelect, isTemplate, params,
+                    queryDirectives.get(WRITE_BEHIND_KEY_DIRECTIVE));
+            QueryTemplateArg query = new QueryTemplateArg(name, params, columns, paramsOrder, isTemplate, isPreparsed,
+                    placeholders, columnsParsed, hasRowClass, hasColumnArrays, hasSpillBuffer, hasValuesInsert,
+                    hasColumnsBatch, queryDirectives, pageKey, writeBehindKey);
+            if (isSelect) selects.add(query);
             else if (updateRegex.matcher(name).matches()) updates.add(query);
             else throw new CodeGeneratorException("Invalid query name: [" + name + "], names must match select regex: " +
                         "[" + selectRegex + "] or updateRegex: [" + updateRegex + "]");
         }
         return new RootTemplateArg(packageName, className, modifier, useIterableJdbcTemplate, useCloseableIterables, useCheckSingleRowUpdates,
-                useBatchInserts, useTemplateStringSubstitution, useUnderscoredToCamel, generateInterfacesForColumns, useFluentSettersForColumns, sourceSqlFileName, templateValueConstraintRegex.pattern(),
+                useBatchInserts, useTemplateStringSubstitution, useUnderscoredToCamel, generateInterfacesForColumns, useFluentSettersForColumns, usePreparsedQueries,
+                generateParamsSources, useTypedSubstitutions, generateRowClasses, generateColumnArrays, generateRowCallbacks,
+                usePrefetchIterators, useStreams, useReactivePublishers, useAsyncMethods, generateLimitedSelects,
+                useLazyLists, useSpillBuffers, generateExports, usePipelinedBatches, useParallelBatches,
+                useMultiValuesInserts, useColumnsBatches,
+                sourceSqlFileName, templateValueConstraintRegex.pattern(),
                 selects, updates);
     }
 
-    private Set<ParamTemplateArg> createNamedParams(List<String> rawParamNames) {
-        final List<String> paramNames;
-        if(useUnderscoredToCamel) {
-            paramNames = new ArrayList<String>(rawParamNames.size());
-            for(String pa : rawParamNames) paramNames.add(underscoredToCamel(pa));
-        } else paramNames = rawParamNames;
-        Set<ParamTemplateArg> args = new LinkedHashSet<ParamTemplateArg>(paramNames.size());
-        for (String name : paramNames) {
-            args.add(new ParamTemplateArg(name, typeForName(name)));
+    private static Map<String, String> checkDirectives(String name, Map<String, String> directives) {
+        if (null == directives) return Collections.emptyMap();
+        for (Map.Entry<String, String> en : directives.entrySet()) {
+            if (PAGE_KEY_DIRECTIVE.equals(en.getKey())) {
+                if (!COLUMNS_NAME_RESTRICTION_PATTERN.matcher(en.getValue()).matches()) throw new CodeGeneratorException(
+                        "Invalid value: [" + en.getValue() + "] of directive: [" + en.getKey() + "] for query: [" + name + "], " +
+                        "column name expected");
+                continue;
+            }
+            if (WRITE_BEHIND_KEY_DIRECTIVE.equals(en.getKey())) {
+                if (!COLUMNS_NAME_RESTRICTION_PATTERN.matcher(en.getValue()).matches()) throw new CodeGeneratorException(
+                        "Invalid value: [" + en.getValue() + "] of directive: [" + en.getKey() + "] for query: [" + name + "], " +
+                        "parameter name expected");
+                continue;
+            }
+            if (!STATEMENT_DIRECTIVES.contains(en.getKey())) throw new CodeGeneratorException(
+                    "Unknown directive: [" + en.getKey() + "] for query: [" + name + "], " +
+                    "supported directives: [" + STATEMENT_DIRECTIVES + ", " + PAGE_KEY_DIRECTIVE + ", " +
+                    WRITE_BEHIND_KEY_DIRECTIVE + "]");
+            if (!en.getValue().matches("^[0-9]{1,9}$")) throw new CodeGeneratorException(
+                    "Invalid value: [" + en.getValue() + "] of directive: [" + en.getKey() + "] for query: [" + name + "], " +
+                    "non-negative integer expected");
+        }
+        return directives;
+    }
+
+    // keyset pagination key must be one of the columns parsed from select clause,
+    // its uniqueness cannot be checked here and is checked by generated code on reading pages
+    private static ParamTemplateArg pageKeyColumn(String name, String sql, boolean isSelect, Collection<ParamTemplateArg> columns,
+                                                  String pageKey) {
+        if (null == pageKey) return null;
+        if (!isSelect) throw new CodeGeneratorException(
+                "Directive: [" + PAGE_KEY_DIRECTIVE + "] is supported only for select queries, query: [" + name + "]");
+        if (ROW_LIMIT_REGEX.matcher(sql).find()) throw new CodeGeneratorException(
+                "Directive: [" + PAGE_KEY_DIRECTIVE + "] is not supported for queries limiting rows themselves " +
+                "(pages are limited by generated methods), query: [" + name + "]");
+        for (ParamTemplateArg col : columns) {
+            if (col.getSqlName().equalsIgnoreCase(pageKey)) return col;
+        }
+        List<String> colNames = new ArrayList<String>();
+        for (ParamTemplateArg col : columns) colNames.add(col.getSqlName());
+        throw new CodeGeneratorException("Page key column: [" + pageKey + "] for query: [" + name + "] " +
+                "not found in select clause columns: [" + colNames + "]");
+    }
+
+    // write-behind key must be one of the parameters of non-template update query, buffer flushes use batch methods
+    private ParamTemplateArg writeBehindKeyParam(String name, boolean isSelect, boolean isTemplate,
+                                                 Collection<ParamTemplateArg> params, String key) {
+        if (null == key) return null;
+        if (isSelect || isTemplate) throw new CodeGeneratorException("Directive: [" + WRITE_BEHIND_KEY_DIRECTIVE + "] " +
+                "is supported only for non-template update queries, query: [" + name + "]");
+        if (!useBatchInserts) throw new CodeGeneratorException("Directive: [" + WRITE_BEHIND_KEY_DIRECTIVE + "] " +
+                "requires 'useBatchInserts' flag to be enabled, query: [" + name + "]");
+        for (ParamTemplateArg pa : params) {
+            if (pa.getSqlName().equals(key)) return pa;
+        }
+        List<String> paramNames = new ArrayList<String>();
+        for (ParamTemplateArg pa : params) paramNames.add(pa.getSqlName());
+        throw new CodeGeneratorException("Write-behind key parameter: [" + key + "] for query: [" + name + "] " +
+                "not found in query parameters: [" + paramNames + "]");
+    }
+
+    private List<ParamTemplateArg> createParamsList(List<String> rawParamNames) {
+        List<ParamTemplateArg> args = new ArrayList<ParamTemplateArg>(rawParamNames.size());
+        Map<String, Integer> indices = new HashMap<String, Integer>();
+        for (String rawName : rawParamNames) {
+            String name = useUnderscoredToCamel ? underscoredToCamel(rawName) : rawName;
+            Integer index = indices.get(name);
+            if (null == index) {
+                index = indices.size();
+                indices.put(name, index);
+            }
+            Class<?> type = typeForName(name);
+            args.add(new ParamTemplateArg(name, type, rawName, index, sqlTypeConstant(type)));
         }
         return args;
     }
 
+    // parameters of unknown types may be collections those require query text expansion
+    private static boolean allPositional(Collection<ParamTemplateArg> params) {
+        for (ParamTemplateArg pa : params) {
+            Class<?> type = pa.getTypeClass();
+            if (Object.class.equals(type) || Collection.class.isAssignableFrom(type)) return false;
+        }
+        return true;
+    }
+
+    private static boolean allPrimitiveNumbers(Collection<ParamTemplateArg> columns) {
+        for (ParamTemplateArg col : columns) {
+            if (!PRIMITIVE_COLUMN_TYPES.contains(col.getTypeClass())) return false;
+        }
+        return true;
+    }
+
+    private static boolean allSpillable(Collection<ParamTemplateArg> columns) {
+        for (ParamTemplateArg col : columns) {
+            if (!SPILLABLE_COLUMN_TYPES.contains(col.getTypeClass())) return false;
+        }
+        return true;
+    }
+
     private Class typeForName(String name) {
         for (Map.Entry<String, Class<?>> en : typeIdMap.entrySet()) {
             String postfix = en.getKey();
@@ -186,8 +416,38 @@ public class CodeGenerator {
         return Object.class;
     }
 
+    static List<String> parsePlaceholders(String sql) {
+        Set<String> keys = new LinkedHashSet<String>();
+        Matcher ma = PLACEHOLDER_REGEX.matcher(sql);
+        while (ma.find()) keys.add(ma.group(1));
+        return new ArrayList<String>(keys);
+    }
+
+    // the same derivation as in BeanPropertySqlParameterSource, but on generation time
+    static String sqlTypeConstant(Class<?> type) {
+        int sqlType = byte[].class.equals(type) ? Types.VARBINARY : StatementCreatorUtils.javaTypeToSqlParameterType(type);
+        if (SqlTypeValue.TYPE_UNKNOWN == sqlType) return "SqlTypeValue.TYPE_UNKNOWN";
+        try {
+            for (Field fi : Types.class.getFields()) {
+                if (int.class.equals(fi.getType()) && sqlType == fi.getInt(null)) return "Types." + fi.getName();
+            }
+        } catch (IllegalAccessException e) {
+            throw new CodeGeneratorException("Cannot access 'java.sql.Types' constants", e);
+        }
+        return Integer.toString(sqlType);
+    }
+
     // todo: use proper SQL parser (javacc/antlr)
     static List<String> parseColumnNames(String sql) {
+        List<String> res = new ArrayList<String>();
+        for(String colname : parseColumnCandidates(sql)) {
+            if(COLUMNS_NAME_RESTRICTION_PATTERN.matcher(colname).matches()) res.add(colname);
+        }
+        return res;
+    }
+
+    // returns last word of each select-clause part, may contain non-names
+    private static List<String> parseColumnCandidates(String sql) {
         if(!sql.toLowerCase(ENGLISH).startsWith("select")) return emptyList();
         // clean from parenthesed contents
         int level = 0;
@@ -209,8 +469,7 @@ public class CodeGenerator {
         List<String> res = new ArrayList<String>(selectParts.length);
         for(String pa : selectParts) {
             String[] colParts = COLUMNS_SPACE_REGEX.split(pa);
-            String colname = colParts[colParts.length - 1];
-            if(COLUMNS_NAME_RESTRICTION_PATTERN.matcher(colname).matches()) res.add(colname);
+            res.add(colParts[colParts.length - 1]);
         }
         return res;
     }
@@ -274,6 +533,24 @@ public class CodeGenerator {
         sb.append(", useBatchInserts=").append(useBatchInserts);
         sb.append(", useTemplateStringSubstitution=").append(useTemplateStringSubstitution);
         sb.append(", useUnderscoredToCamel=").append(useUnderscoredToCamel);
+        sb.append(", usePreparsedQueries=").append(usePreparsedQueries);
+        sb.append(", generateParamsSources=").append(generateParamsSources);
+        sb.append(", useTypedSubstitutions=").append(useTypedSubstitutions);
+        sb.append(", generateRowClasses=").append(generateRowClasses);
+        sb.append(", generateColumnArrays=").append(generateColumnArrays);
+        sb.append(", generateRowCallbacks=").append(generateRowCallbacks);
+        sb.append(", usePrefetchIterators=").append(usePrefetchIterators);
+        sb.append(", useStreams=").append(useStreams);
+        sb.append(", useReactivePublishers=").append(useReactivePublishers);
+        sb.append(", useAsyncMethods=").append(useAsyncMethods);
+        sb.append(", generateLimitedSelects=").append(generateLimitedSelects);
+        sb.append(", useLazyLists=").append(useLazyLists);
+        sb.append(", useSpillBuffers=").append(useSpillBuffers);
+        sb.append(", generateExports=").append(generateExports);
+        sb.append(", usePipelinedBatches=").append(usePipelinedBatches);
+        sb.append(", useParallelBatches=").append(useParallelBatches);
+        sb.append(", useMultiValuesInserts=").append(useMultiValuesInserts);
+        sb.append(", useColumnsBatches=").append(useColumnsBatches);
         sb.append(", selectRegex=").append(selectRegex);
         sb.append(", updateRegex=").append(updateRegex);
         sb.append(", templateRegex=").append(templateRegex);
@@ -307,6 +584,24 @@ public class CodeGenerator {
         private boolean useUnderscoredToCamel = true;
         private boolean generateInterfacesForColumns = false;
         private boolean useFluentSettersForColumns = false;
+        private boolean usePreparsedQueries = false;
+        private boolean generateParamsSources = false;
+        private boolean useTypedSubstitutions = false;
+        private boolean generateRowClasses = false;
+        private boolean generateColumnArrays = false;
+        private boolean generateRowCallbacks = false;
+        private boolean usePrefetchIterators = false;
+        private boolean useStreams = false;
+        private boolean useReactivePublishers = false;
+        private boolean useAsyncMethods = false;
+        private boolean generateLimitedSelects = false;
+        private boolean useLazyLists = false;
+        private boolean useSpillBuffers = false;
+        private boolean generateExports = false;
+        private boolean usePipelinedBatches = false;
+        private boolean useParallelBatches = false;
+        private boolean useMultiValuesInserts = false;
+        private boolean useColumnsBatches = false;
         private String selectRegex = "^select[a-zA-Z][a-zA-Z0-9_$]*$";
         private String updateRegex = "^(?:insert|update|delete|create|drop)[a-zA-Z][a-zA-Z0-9_$]*$";
         private String templateRegex = "^[a-zA-Z0-9_$]*Template$";
@@ -413,6 +708,232 @@ public class CodeGenerator {
             this.useFluentSettersForColumns = useFluentSettersForColumns;
         }
 
+        /**
+         * Whether to parse queries once on generated class construction and execute them
+         * with positional parameters bypassing {@code NamedParameterJdbcTemplate} parsed SQL cache,
+         * false by default. Template queries and queries with {@code Object} or collection parameters
+         * are executed through {@code NamedParameterJdbcTemplate} as usual
+         *
+         * @param usePreparsedQueries whether to parse queries once on construction
+         * @return builder itself
+         */
+        public Builder setUsePreparsedQueries(boolean usePreparsedQueries) {
+            this.usePreparsedQueries = usePreparsedQueries;
+            return this;
+        }
+
+        /**
+         * Whether to generate reflection-free {@code SqlParameterSource} implementations for
+         * parameters interfaces, those call interface getters directly instead of
+         * {@code BeanPropertySqlParameterSource} introspection, false by default
+         *
+         * @param generateParamsSources whether to generate reflection-free parameters sources for parameters interfaces
+         * @return builder itself
+         */
+        public Builder setGenerateParamsSources(boolean generateParamsSources) {
+            this.generateParamsSources = generateParamsSources;
+            return this;
+        }
+
+        /**
+         * Whether to generate typed holder class with setter for each placeholder of template query
+         * and use it instead of {@code Object... substitutions} vararg, disabled by default
+         *
+         * @param useTypedSubstitutions whether to use generated typed holders for template queries substitutions
+         * @return builder itself
+         */
+        public Builder setUseTypedSubstitutions(boolean useTypedSubstitutions) {
+            this.useTypedSubstitutions = useTypedSubstitutions;
+            return this;
+        }
+
+        /**
+         * Whether to generate result row class and row mapper, that reads columns by indices,
+         * for each select query with parsed columns list, disabled by default
+         *
+         * @param generateRowClasses whether to generate result row classes and index-based row mappers for selects
+         * @return builder itself
+         */
+        public Builder setGenerateRowClasses(boolean generateRowClasses) {
+            this.generateRowClasses = generateRowClasses;
+            return this;
+        }
+
+        /**
+         * Whether to generate methods, that collect results of select queries with only numeric
+         * columns into primitive arrays (one array per column), disabled by default
+         *
+         * @param generateColumnArrays whether to generate methods collecting numeric selects results into primitive arrays
+         * @return builder itself
+         */
+        public Builder setGenerateColumnArrays(boolean generateColumnArrays) {
+            this.generateColumnArrays = generateColumnArrays;
+            return this;
+        }
+
+        /**
+         * Whether to generate select methods, that pass each result row to the callback as a single
+         * reusable row view with typed columns accessors, disabled by default
+         *
+         * @param generateRowCallbacks whether to generate select methods passing reusable row views to callbacks
+         * @return builder itself
+         */
+        public Builder setGenerateRowCallbacks(boolean generateRowCallbacks) {
+            this.generateRowCallbacks = generateRowCallbacks;
+            return this;
+        }
+
+        /**
+         * Whether to generate iterator methods, that read and map rows in background task and pass them
+         * to the caller in chunks, effective only with "useIterableJdbcTemplate" flag, disabled by default
+         *
+         * @param usePrefetchIterators whether to generate iterator methods prefetching rows in background
+         * @return builder itself
+         */
+        public Builder setUsePrefetchIterators(boolean usePrefetchIterators) {
+            this.usePrefetchIterators = usePrefetchIterators;
+            return this;
+        }
+
+        /**
+         * Whether to generate select methods, that return "java.util.stream.Stream" backed by the query cursor,
+         * effective only with "useIterableJdbcTemplate" flag, generated code requires Java 8, disabled by default
+         *
+         * @param useStreams whether to generate select methods returning java.util.stream.Stream
+         * @return builder itself
+         */
+        public Builder setUseStreams(boolean useStreams) {
+            this.useStreams = useStreams;
+            return this;
+        }
+
+        /**
+         * Whether to generate select methods, that return "org.reactivestreams.Publisher" pulling rows
+         * from the query cursor on subscribers demand, effective only with "useIterableJdbcTemplate" flag,
+         * disabled by default
+         *
+         * @param useReactivePublishers whether to generate select methods returning reactive streams publishers
+         * @return builder itself
+         */
+        public Builder setUseReactivePublishers(boolean useReactivePublishers) {
+            this.useReactivePublishers = useReactivePublishers;
+            return this;
+        }
+
+        /**
+         * Whether to generate async counterparts of select and update methods, that return "CompletableFuture"
+         * and run on executor provided to generated class constructor, generated code requires Java 8, disabled by default
+         *
+         * @param useAsyncMethods whether to generate async counterparts of select and update methods returning CompletableFuture
+         * @return builder itself
+         */
+        public Builder setUseAsyncMethods(boolean useAsyncMethods) {
+            this.useAsyncMethods = useAsyncMethods;
+            return this;
+        }
+
+        /**
+         * Whether to generate "Exists" and "First" select methods, that limit statement max rows and fetch size
+         * and read only required number of rows, disabled by default
+         *
+         * @param generateLimitedSelects whether to generate exists and first rows select methods
+         *                               reading only required rows
+         * @return builder itself
+         */
+        public Builder setGenerateLimitedSelects(boolean generateLimitedSelects) {
+            this.generateLimitedSelects = generateLimitedSelects;
+            return this;
+        }
+
+        /**
+         * Whether to generate "LazyList" select methods, that return read-only lists reading and mapping rows
+         * from query cursor by pages on first access, requires "useIterableJdbcTemplate", disabled by default
+         *
+         * @param useLazyLists whether to generate select methods returning lazily paged lists backed by query cursor
+         * @return builder itself
+         */
+        public Builder setUseLazyLists(boolean useLazyLists) {
+            this.useLazyLists = useLazyLists;
+            return this;
+        }
+
+        /**
+         * Whether to generate "Spilled" select methods, that buffer result rows in compact binary form in memory
+         * and spill them to memory-mapped temporary file, requires "generateRowClasses", disabled by default
+         *
+         * @param useSpillBuffers whether to generate select methods buffering result rows in memory
+         *                        and spilling them to disk
+         * @return builder itself
+         */
+        public Builder setUseSpillBuffers(boolean useSpillBuffers) {
+            this.useSpillBuffers = useSpillBuffers;
+            return this;
+        }
+
+        /**
+         * Whether to generate "Export" select methods, that encode result rows directly into byte buffer
+         * and write them to provided channel in CSV or binary format, disabled by default
+         *
+         * @param generateExports whether to generate select methods exporting results to channels
+         *                        in CSV or binary format
+         * @return builder itself
+         */
+        public Builder setGenerateExports(boolean generateExports) {
+            this.generateExports = generateExports;
+            return this;
+        }
+
+        /**
+         * Whether to generate pipelined batch methods that bind the next batch in background
+         * while the current one is executed, with batch size adapting to measured latency
+         *
+         * @param usePipelinedBatches whether to generate pipelined batch methods, requires useBatchInserts
+         * @return builder itself
+         */
+        public Builder setUsePipelinedBatches(boolean usePipelinedBatches) {
+            this.usePipelinedBatches = usePipelinedBatches;
+            return this;
+        }
+
+        /**
+         * Whether to generate parallel batch methods that load batches through multiple connections
+         * in separate transactions with retries for transient errors
+         *
+         * @param useParallelBatches whether to generate parallel multi-connection batch methods,
+         *                           requires useBatchInserts
+         * @return builder itself
+         */
+        public Builder setUseParallelBatches(boolean useParallelBatches) {
+            this.useParallelBatches = useParallelBatches;
+            return this;
+        }
+
+        /**
+         * Whether to generate batch methods for simple {@code insert ... values (...)} queries, that execute
+         * each batch as a single multi-row {@code values (...), (...)} statement
+         *
+         * @param useMultiValuesInserts whether to generate multi-row VALUES batch methods for simple inserts,
+         *                              requires useBatchInserts
+         * @return builder itself
+         */
+        public Builder setUseMultiValuesInserts(boolean useMultiValuesInserts) {
+            this.useMultiValuesInserts = useMultiValuesInserts;
+            return this;
+        }
+
+        /**
+         * Whether to generate batch methods, that take parameters as columns arrays
+         * and bind them by index without creating parameters objects
+         *
+         * @param useColumnsBatches whether to generate batch methods taking parameters as arrays,
+         *                          requires useBatchInserts
+         * @return builder itself
+         */
+        public Builder setUseColumnsBatches(boolean useColumnsBatches) {
+            this.useColumnsBatches = useColumnsBatches;
+            return this;
+        }
+
         /**
          * Regular expression to use for identifying 'select' queries by name,
          * default: {@code ^select[a-zA-Z][a-zA-Z0-9_$]*$}
@@ -555,10 +1076,7 @@ public class CodeGenerator {
          * @return configured {@link CodeGenerator} instance
          */
         public CodeGenerator build() {
-            return new CodeGenerator(isPublic, useIterableJdbcTemplate, useCloseableIterables, useCheckSingleRowUpdates,
-                    useBatchInserts, useTemplateStringSubstitution, selectRegex, updateRegex, templateRegex,
-                    templateValueConstraintRegex, useUnderscoredToCamel, generateInterfacesForColumns, useFluentSettersForColumns, typeIdMap,
-                    freemarkerTemplate, freemarkerConf);
+            return new CodeGenerator(this);
         }
 
         private static Map<String, Class<?>> defaultTypeIdMap() {
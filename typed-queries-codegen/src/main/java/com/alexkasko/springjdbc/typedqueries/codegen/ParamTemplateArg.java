@@ -1,5 +1,7 @@
 package com.alexkasko.springjdbc.typedqueries.codegen;
 
+import static com.alexkasko.springjdbc.typedqueries.codegen.CodeGenerator.camelToUnderscored;
+
 /**
  * Query parameter argument class for freemarker template
  * Made public to conform freemarker's requirements
@@ -10,16 +12,25 @@ package com.alexkasko.springjdbc.typedqueries.codegen;
 public class ParamTemplateArg {
     private final String name;
     private final Class<?> type;
+    private final String sqlName;
+    private final int index;
+    private final String sqlType;
 
     /**
      * Constructor
      *
      * @param name parameter name
      * @param type parameter type
+     * @param sqlName parameter name as it is written in SQL query
+     * @param index index of this parameter among distinct parameters of the query
+     * @param sqlType JDBC type constant expression for this parameter
      */
-    ParamTemplateArg(String name, Class<?> type) {
+    ParamTemplateArg(String name, Class<?> type, String sqlName, int index, String sqlType) {
         this.name = name;
         this.type = type;
+        this.sqlName = sqlName;
+        this.index = index;
+        this.sqlType = sqlType;
     }
 
     /**
@@ -40,6 +51,78 @@ public class ParamTemplateArg {
         return type.getSimpleName();
     }
 
+    /**
+     * Parameter type accessor, primitive types are replaced with wrapper ones
+     *
+     * @return parameter wrapper type
+     */
+    public String getBoxedType() {
+        if (!type.isPrimitive()) return type.getSimpleName();
+        if (long.class.equals(type)) return "Long";
+        if (int.class.equals(type)) return "Integer";
+        if (short.class.equals(type)) return "Short";
+        if (double.class.equals(type)) return "Double";
+        if (float.class.equals(type)) return "Float";
+        if (boolean.class.equals(type)) return "Boolean";
+        if (byte.class.equals(type)) return "Byte";
+        return "Character";
+    }
+
+    /**
+     * Parameter name as it is written in SQL query, may differ from
+     * {@link #getName()} on underscored to camel conversion
+     *
+     * @return parameter name as it is written in SQL query
+     */
+    public String getSqlName() {
+        return sqlName;
+    }
+
+    /**
+     * Parameter name converted from camelCase to under_scored
+     *
+     * @return under_scored parameter name
+     */
+    public String getUnderscoredName() {
+        return camelToUnderscored(name);
+    }
+
+    /**
+     * Index of this parameter among distinct parameters of the query
+     *
+     * @return parameter index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * JDBC type constant expression accessor, e.g. {@code Types.BIGINT}
+     *
+     * @return JDBC type constant expression
+     */
+    public String getSqlType() {
+        return sqlType;
+    }
+
+    /**
+     * Whether parameter has primitive type
+     *
+     * @return whether parameter has primitive type
+     */
+    public boolean isPrimitive() {
+        return type.isPrimitive();
+    }
+
+    /**
+     * Parameter raw type accessor
+     *
+     * @return parameter type
+     */
+    Class<?> getTypeClass() {
+        return type;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -69,6 +152,9 @@ public class ParamTemplateArg {
         sb.append("ParamTemplateArg");
         sb.append("{name='").append(name).append('\'');
         sb.append(", type=").append(type);
+        sb.append(", sqlName='").append(sqlName).append('\'');
+        sb.append(", index=").append(index);
+        sb.append(", sqlType='").append(sqlType).append('\'');
         sb.append('}');
         return sb.toString();
     }
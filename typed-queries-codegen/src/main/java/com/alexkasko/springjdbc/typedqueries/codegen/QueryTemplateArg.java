@@ -1,6 +1,11 @@
 package com.alexkasko.springjdbc.typedqueries.codegen;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.alexkasko.springjdbc.typedqueries.codegen.CodeGenerator.camelToUnderscored;
+import static java.util.Locale.ENGLISH;
 
 /**
  * Query argument class for freemarker template
@@ -13,7 +18,19 @@ public class QueryTemplateArg {
     private final String name;
     private final Collection<ParamTemplateArg> params;
     private final Collection<ParamTemplateArg> columns;
+    private final List<ParamTemplateArg> paramsOrder;
     private final boolean template;
+    private final boolean preparsed;
+    private final List<String> placeholders;
+    private final boolean columnsParsed;
+    private final boolean rowClass;
+    private final boolean columnArrays;
+    private final boolean spillBuffer;
+    private final boolean valuesInsert;
+    private final boolean columnsBatch;
+    private final Map<String, String> directives;
+    private final ParamTemplateArg pageKey;
+    private final ParamTemplateArg writeBehindKey;
 
     /**
      * Constructor
@@ -21,14 +38,41 @@ public class QueryTemplateArg {
      * @param name query name
      * @param params query parameters list
      * @param columns
+     * @param paramsOrder query parameters in order of their occurrence in query text
      * @param template whether this query needs template substitutions
+     * @param preparsed whether this query will be parsed once on construction and executed with positional parameters
+     * @param placeholders distinct template placeholders keys in order of their occurrence in query text
+     * @param columnsParsed whether all select-clause columns are parsed and have distinct names
+     * @param rowClass whether result row class and index-based row mapper will be generated for this query
+     * @param columnArrays whether method collecting results into primitive arrays will be generated for this query
+     * @param spillBuffer whether method buffering result rows with spilling to disk will be generated for this query
+     * @param valuesInsert whether multi-row VALUES batch method will be generated for this query
+     * @param columnsBatch whether batch method taking parameters as arrays will be generated for this query
+     * @param directives query directives from SQL file
+     * @param pageKey keyset pagination key column, may be null
+     * @param writeBehindKey write-behind buffer key parameter, may be null
      */
-    QueryTemplateArg(String name, Collection<ParamTemplateArg> params,
-                     Collection<ParamTemplateArg> columns, boolean template) {
+    QueryTemplateArg(String name, Collection<ParamTemplateArg> params, Collection<ParamTemplateArg> columns,
+                     List<ParamTemplateArg> paramsOrder, boolean template, boolean preparsed, List<String> placeholders,
+                     boolean columnsParsed, boolean rowClass, boolean columnArrays, boolean spillBuffer,
+                     boolean valuesInsert, boolean columnsBatch, Map<String, String> directives,
+                     ParamTemplateArg pageKey, ParamTemplateArg writeBehindKey) {
         this.name = name;
         this.params = params;
         this.columns = columns;
+        this.paramsOrder = paramsOrder;
         this.template = template;
+        this.preparsed = preparsed;
+        this.placeholders = placeholders;
+        this.columnsParsed = columnsParsed;
+        this.rowClass = rowClass;
+        this.columnArrays = columnArrays;
+        this.spillBuffer = spillBuffer;
+        this.valuesInsert = valuesInsert;
+        this.columnsBatch = columnsBatch;
+        this.directives = directives;
+        this.pageKey = pageKey;
+        this.writeBehindKey = writeBehindKey;
     }
 
     /**
@@ -40,6 +84,15 @@ public class QueryTemplateArg {
         return name;
     }
 
+    /**
+     * Query name in upper case with underscores accessor, used for constants names
+     *
+     * @return query name in constant form
+     */
+    public String getConstName() {
+        return camelToUnderscored(name).toUpperCase(ENGLISH);
+    }
+
     /**
      * Query parameters list accessor
      *
@@ -58,6 +111,16 @@ public class QueryTemplateArg {
         return columns;
     }
 
+    /**
+     * Query parameters in order of their occurrence in query text accessor,
+     * may contain the same parameter multiple times
+     *
+     * @return query parameters in order of their occurrence
+     */
+    public List<ParamTemplateArg> getParamsOrder() {
+        return paramsOrder;
+    }
+
     /**
      * Whether this query needs template substitutions
      *
@@ -65,6 +128,143 @@ public class QueryTemplateArg {
      */
     public boolean isTemplate() { return template; }
 
+    /**
+     * Whether this query will be parsed once on construction and executed with positional parameters
+     *
+     * @return whether this query is preparsed
+     */
+    public boolean isPreparsed() { return preparsed; }
+
+    /**
+     * Distinct template placeholders keys in order of their occurrence in query text accessor
+     *
+     * @return template placeholders keys
+     */
+    public List<String> getPlaceholders() {
+        return placeholders;
+    }
+
+    /**
+     * Whether all select-clause columns are parsed and have distinct names,
+     * so results may be read by columns indices
+     *
+     * @return whether all columns are parsed
+     */
+    public boolean isColumnsParsed() { return columnsParsed; }
+
+    /**
+     * Whether result row class and index-based row mapper will be generated for this query
+     *
+     * @return whether result row class will be generated
+     */
+    public boolean isRowClass() { return rowClass; }
+
+    /**
+     * Whether method collecting results into primitive arrays will be generated for this query
+     *
+     * @return whether columns arrays method will be generated
+     */
+    public boolean isColumnArrays() { return columnArrays; }
+
+    /**
+     * Whether method buffering result rows with spilling to disk will be generated for this query
+     *
+     * @return whether spill buffer method will be generated
+     */
+    public boolean isSpillBuffer() { return spillBuffer; }
+
+    /**
+     * Whether this query is a simple {@code insert ... values (...)} one and multi-row VALUES
+     * batch method will be generated for it
+     *
+     * @return whether multi-row VALUES batch method will be generated
+     */
+    public boolean isValuesInsert() { return valuesInsert; }
+
+    /**
+     * Whether batch method taking parameters as arrays will be generated for this query
+     *
+     * @return whether columns batch method will be generated
+     */
+    public boolean isColumnsBatch() { return columnsBatch; }
+
+    /**
+     * Query directives from SQL file accessor
+     *
+     * @return query directives
+     */
+    public Map<String, String> getDirectives() {
+        return directives;
+    }
+
+    /**
+     * Whether any of statement settings (fetch size, query timeout or max rows) is specified
+     * in this query directives
+     *
+     * @return whether statement settings are specified
+     */
+    public boolean isStatementSettings() {
+        return directives.containsKey("fetchSize") || directives.containsKey("timeout") || directives.containsKey("maxRows");
+    }
+
+    /**
+     * Fetch size directive accessor
+     *
+     * @return fetch size from directives, {@code -1} if not specified
+     */
+    public int getFetchSize() { return intDirective("fetchSize"); }
+
+    /**
+     * Query timeout (in seconds) directive accessor
+     *
+     * @return query timeout from directives, {@code -1} if not specified
+     */
+    public int getTimeout() { return intDirective("timeout"); }
+
+    /**
+     * Max rows directive accessor
+     *
+     * @return max rows from directives, {@code -1} if not specified
+     */
+    public int getMaxRows() { return intDirective("maxRows"); }
+
+    /**
+     * Whether keyset pagination methods will be generated for this query
+     *
+     * @return whether page key column is specified
+     */
+    public boolean isPageable() { return null != pageKey; }
+
+    /**
+     * Keyset pagination key column accessor
+     *
+     * @return page key column, null if not specified
+     */
+    public ParamTemplateArg getPageKey() {
+        return pageKey;
+    }
+
+    /**
+     * Whether write-behind buffer will be generated for this query
+     *
+     * @return whether write-behind key parameter is specified
+     */
+    public boolean isWriteBehind() { return null != writeBehindKey; }
+
+    /**
+     * Write-behind buffer key parameter accessor
+     *
+     * @return write-behind key parameter, null if not specified
+     */
+    public ParamTemplateArg getWriteBehindKey() {
+        return writeBehindKey;
+    }
+
+    private int intDirective(String key) {
+        String val = directives.get(key);
+        return null != val ? Integer.parseInt(val) : -1;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -75,7 +275,19 @@ public class QueryTemplateArg {
         sb.append("{name='").append(name).append('\'');
         sb.append(", params=").append(params);
         sb.append(", columns=").append(columns);
+        sb.append(", paramsOrder=").append(paramsOrder);
         sb.append(", template=").append(template);
+        sb.append(", preparsed=").append(preparsed);
+        sb.append(", placeholders=").append(placeholders);
+        sb.append(", columnsParsed=").append(columnsParsed);
+        sb.append(", rowClass=").append(rowClass);
+        sb.append(", columnArrays=").append(columnArrays);
+        sb.append(", spillBuffer=").append(spillBuffer);
+        sb.append(", valuesInsert=").append(valuesInsert);
+        sb.append(", columnsBatch=").append(columnsBatch);
+        sb.append(", directives=").append(directives);
+        sb.append(", pageKey=").append(pageKey);
+        sb.append(", writeBehindKey=").append(writeBehindKey);
         sb.append('}');
         return sb.toString();
     }
@@ -24,6 +24,24 @@ public class RootTemplateArg {
     private final boolean useUnderscoredToCamel;
     private final boolean generateInterfacesForColumns;
     private final boolean useFluentSettersForColumns;
+    private final boolean usePreparsedQueries;
+    private final boolean generateParamsSources;
+    private final boolean useTypedSubstitutions;
+    private final boolean generateRowClasses;
+    private final boolean generateColumnArrays;
+    private final boolean generateRowCallbacks;
+    private final boolean usePrefetchIterators;
+    private final boolean useStreams;
+    private final boolean useReactivePublishers;
+    private final boolean useAsyncMethods;
+    private final boolean generateLimitedSelects;
+    private final boolean useLazyLists;
+    private final boolean useSpillBuffers;
+    private final boolean generateExports;
+    private final boolean usePipelinedBatches;
+    private final boolean useParallelBatches;
+    private final boolean useMultiValuesInserts;
+    private final boolean useColumnsBatches;
     private final String sourceSqlFileName;
     private final String templateValueConstraintRegex;
     private final Collection<QueryTemplateArg> selects;
@@ -47,13 +65,33 @@ public class RootTemplateArg {
      * @param useUnderscoredToCamel whether to convert underscored parameter named to camel ones
      * @param generateInterfacesForColumns whether to generate interfaces for columns
      * @param useFluentSettersForColumns whether to use fluent setters for columns
+     * @param usePreparsedQueries whether to parse queries once on construction and execute them
+     *                            with positional parameters
+     * @param generateParamsSources whether to generate reflection-free parameters sources for parameters interfaces
+     * @param useTypedSubstitutions whether to use generated typed holders for template queries substitutions
+     * @param generateRowClasses whether to generate result row classes and index-based row mappers for selects
+     * @param generateColumnArrays whether to generate methods collecting numeric selects results into primitive arrays
+     * @param generateRowCallbacks whether to generate select methods passing reusable row views to callbacks
+     * @param usePrefetchIterators whether to generate iterator methods prefetching rows in background
+     * @param useStreams whether to generate select methods returning java.util.stream.Stream
+     * @param useReactivePublishers whether to generate select methods returning reactive streams publishers
+     * @param useAsyncMethods whether to generate async counterparts of select and update methods returning CompletableFuture
+     * @param generateLimitedSelects whether to generate exists and first rows select methods reading only required rows
+     * @param useLazyLists whether to generate select methods returning lazily paged lists backed by query cursor
+     * @param useSpillBuffers whether to generate select methods buffering result rows in memory and spilling them to disk
+     * @param generateExports whether to generate select methods exporting results to channels in CSV or binary format
+     * @param usePipelinedBatches whether to generate pipelined batch methods, requires useBatchInserts
+     * @param useParallelBatches whether to generate parallel multi-connection batch methods, requires useBatchInserts
+     * @param useMultiValuesInserts whether to generate multi-row VALUES batch methods for simple inserts,
+     *                              requires useBatchInserts
+     * @param useColumnsBatches whether to generate batch methods taking parameters as arrays, requires useBatchInserts
      * @param sourceSqlFileName name of source SQL file
      * @param templateValueConstraintRegex regular expression constraint for template substitution values
      * @param selects list of 'select' queries
      * @param updates list of 'update' queries
      */
     RootTemplateArg(String packageName, String className, String modifier, boolean useIterableJdbcTemplate,
-                    boolean useCloseableIterables, boolean useCheckSingleRowUpdates, boolean useBatchInserts, boolean useTemplateStringSubstitution, boolean useUnderscoredToCamel, boolean generateInterfacesForColumns, boolean useFluentSettersForColumns, String sourceSqlFileName,
+                    boolean useCloseableIterables, boolean useCheckSingleRowUpdates, boolean useBatchInserts, boolean useTemplateStringSubstitution, boolean useUnderscoredToCamel, boolean generateInterfacesForColumns, boolean useFluentSettersForColumns, boolean usePreparsedQueries, boolean generateParamsSources, boolean useTypedSubstitutions, boolean generateRowClasses, boolean generateColumnArrays, boolean generateRowCallbacks, boolean usePrefetchIterators, boolean useStreams, boolean useReactivePublishers, boolean useAsyncMethods, boolean generateLimitedSelects, boolean useLazyLists, boolean useSpillBuffers, boolean generateExports, boolean usePipelinedBatches, boolean useParallelBatches, boolean useMultiValuesInserts, boolean useColumnsBatches, String sourceSqlFileName,
                     String templateValueConstraintRegex, Collection<QueryTemplateArg> selects, Collection<QueryTemplateArg> updates) {
         this.packageName = packageName;
         this.className = className;
@@ -66,6 +104,24 @@ public class RootTemplateArg {
         this.useUnderscoredToCamel = useUnderscoredToCamel;
         this.generateInterfacesForColumns = generateInterfacesForColumns;
         this.useFluentSettersForColumns = useFluentSettersForColumns;
+        this.usePreparsedQueries = usePreparsedQueries;
+        this.generateParamsSources = generateParamsSources;
+        this.useTypedSubstitutions = useTypedSubstitutions;
+        this.generateRowClasses = generateRowClasses;
+        this.generateColumnArrays = generateColumnArrays;
+        this.generateRowCallbacks = generateRowCallbacks;
+        this.usePrefetchIterators = usePrefetchIterators;
+        this.useStreams = useStreams;
+        this.useReactivePublishers = useReactivePublishers;
+        this.useAsyncMethods = useAsyncMethods;
+        this.generateLimitedSelects = generateLimitedSelects;
+        this.useLazyLists = useLazyLists;
+        this.useSpillBuffers = useSpillBuffers;
+        this.generateExports = generateExports;
+        this.usePipelinedBatches = usePipelinedBatches;
+        this.useParallelBatches = useParallelBatches;
+        this.useMultiValuesInserts = useMultiValuesInserts;
+        this.useColumnsBatches = useColumnsBatches;
         this.sourceSqlFileName = sourceSqlFileName;
         this.templateValueConstraintRegex = templateValueConstraintRegex;
         this.selects = selects;
@@ -168,6 +224,168 @@ public class RootTemplateArg {
         return useFluentSettersForColumns;
     }
 
+    /**
+     * Whether to parse queries once on construction and execute them with positional parameters
+     *
+     * @return whether to parse queries once on construction
+     */
+    public boolean isUsePreparsedQueries() {
+        return usePreparsedQueries;
+    }
+
+    /**
+     * Whether to generate reflection-free parameters sources for parameters interfaces
+     *
+     * @return whether to generate reflection-free parameters sources for parameters interfaces
+     */
+    public boolean isGenerateParamsSources() {
+        return generateParamsSources;
+    }
+
+    /**
+     * Whether to use generated typed holders for template queries substitutions
+     *
+     * @return whether to use generated typed holders for template queries substitutions
+     */
+    public boolean isUseTypedSubstitutions() {
+        return useTypedSubstitutions;
+    }
+
+    /**
+     * Whether to generate result row classes and index-based row mappers for selects
+     *
+     * @return whether to generate result row classes and index-based row mappers for selects
+     */
+    public boolean isGenerateRowClasses() {
+        return generateRowClasses;
+    }
+
+    /**
+     * Whether to generate methods collecting numeric selects results into primitive arrays
+     *
+     * @return whether to generate methods collecting numeric selects results into primitive arrays
+     */
+    public boolean isGenerateColumnArrays() {
+        return generateColumnArrays;
+    }
+
+    /**
+     * Whether to generate select methods passing reusable row views to callbacks
+     *
+     * @return whether to generate select methods passing reusable row views to callbacks
+     */
+    public boolean isGenerateRowCallbacks() {
+        return generateRowCallbacks;
+    }
+
+    /**
+     * Whether to generate iterator methods prefetching rows in background
+     *
+     * @return whether to generate iterator methods prefetching rows in background
+     */
+    public boolean isUsePrefetchIterators() {
+        return usePrefetchIterators;
+    }
+
+    /**
+     * Whether to generate select methods returning java.util.stream.Stream
+     *
+     * @return whether to generate select methods returning java.util.stream.Stream
+     */
+    public boolean isUseStreams() {
+        return useStreams;
+    }
+
+    /**
+     * Whether to generate select methods returning reactive streams publishers
+     *
+     * @return whether to generate select methods returning reactive streams publishers
+     */
+    public boolean isUseReactivePublishers() {
+        return useReactivePublishers;
+    }
+
+    /**
+     * Whether to generate async counterparts of select and update methods returning CompletableFuture
+     *
+     * @return whether to generate async counterparts of select and update methods returning CompletableFuture
+     */
+    public boolean isUseAsyncMethods() {
+        return useAsyncMethods;
+    }
+
+    /**
+     * Whether to generate exists and first rows select methods reading only required rows
+     *
+     * @return whether to generate exists and first rows select methods reading only required rows
+     */
+    public boolean isGenerateLimitedSelects() {
+        return generateLimitedSelects;
+    }
+
+    /**
+     * Whether to generate select methods returning lazily paged lists backed by query cursor
+     *
+     * @return whether to generate select methods returning lazily paged lists backed by query cursor
+     */
+    public boolean isUseLazyLists() {
+        return useLazyLists;
+    }
+
+    /**
+     * Whether to generate select methods buffering result rows in memory and spilling them to disk
+     *
+     * @return whether to generate select methods buffering result rows in memory and spilling them to disk
+     */
+    public boolean isUseSpillBuffers() {
+        return useSpillBuffers;
+    }
+
+    /**
+     * Whether to generate select methods exporting results to channels in CSV or binary format
+     *
+     * @return whether to generate select methods exporting results to channels in CSV or binary format
+     */
+    public boolean isGenerateExports() {
+        return generateExports;
+    }
+
+    /**
+     * Whether to generate pipelined batch methods, requires useBatchInserts
+     *
+     * @return whether to generate pipelined batch methods, requires useBatchInserts
+     */
+    public boolean isUsePipelinedBatches() {
+        return usePipelinedBatches;
+    }
+
+    /**
+     * Whether to generate parallel multi-connection batch methods, requires useBatchInserts
+     *
+     * @return whether to generate parallel multi-connection batch methods, requires useBatchInserts
+     */
+    public boolean isUseParallelBatches() {
+        return useParallelBatches;
+    }
+
+    /**
+     * Whether to generate multi-row VALUES batch methods for simple inserts, requires useBatchInserts
+     *
+     * @return whether to generate multi-row VALUES batch methods for simple inserts, requires useBatchInserts
+     */
+    public boolean isUseMultiValuesInserts() {
+        return useMultiValuesInserts;
+    }
+
+    /**
+     * Whether to generate batch methods taking parameters as arrays, requires useBatchInserts
+     *
+     * @return whether to generate batch methods taking parameters as arrays, requires useBatchInserts
+     */
+    public boolean isUseColumnsBatches() {
+        return useColumnsBatches;
+    }
+
     /**
      * Source SQL file name accessor
      *
@@ -228,6 +446,24 @@ public class RootTemplateArg {
         sb.append(", useCheckSingleRowUpdates=").append(useCheckSingleRowUpdates);
         sb.append(", useBatchInserts=").append(useBatchInserts);
         sb.append(", useTemplateStringSubstitution=").append(useTemplateStringSubstitution);
+        sb.append(", usePreparsedQueries=").append(usePreparsedQueries);
+        sb.append(", generateParamsSources=").append(generateParamsSources);
+        sb.append(", useTypedSubstitutions=").append(useTypedSubstitutions);
+        sb.append(", generateRowClasses=").append(generateRowClasses);
+        sb.append(", generateColumnArrays=").append(generateColumnArrays);
+        sb.append(", generateRowCallbacks=").append(generateRowCallbacks);
+        sb.append(", usePrefetchIterators=").append(usePrefetchIterators);
+        sb.append(", useStreams=").append(useStreams);
+        sb.append(", useReactivePublishers=").append(useReactivePublishers);
+        sb.append(", useAsyncMethods=").append(useAsyncMethods);
+        sb.append(", generateLimitedSelects=").append(generateLimitedSelects);
+        sb.append(", useLazyLists=").append(useLazyLists);
+        sb.append(", useSpillBuffers=").append(useSpillBuffers);
+        sb.append(", generateExports=").append(generateExports);
+        sb.append(", usePipelinedBatches=").append(usePipelinedBatches);
+        sb.append(", useParallelBatches=").append(useParallelBatches);
+        sb.append(", useMultiValuesInserts=").append(useMultiValuesInserts);
+        sb.append(", useColumnsBatches=").append(useColumnsBatches);
         sb.append(", sourceSqlFileName='").append(sourceSqlFileName).append('\'');
         sb.append(", templateValueConstraintRegex='").append(templateValueConstraintRegex).append('\'');
         sb.append(", selects=").append(selects);
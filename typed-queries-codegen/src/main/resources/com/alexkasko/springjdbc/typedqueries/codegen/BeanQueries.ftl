@@ -1,6 +1,418 @@
 [#ftl encoding="UTF-8"/]
 [#if useIterableJdbcTemplate][#assign jtClass="IterableNamedParameterJdbcTemplate"][#else][#assign jtClass="NamedParameterJdbcTemplate"][/#if]
 [#if useUnderscoredToCamel][#assign bpspsClass="UnderscoredBeanPropertySqlParameterSource"][#else][#assign bpspsClass="BeanPropertySqlParameterSource"][/#if]
+[#macro positionalArgs query bean=""]new Object[]{[#list query.paramsOrder as param][#if bean?has_content]${bean}.get${param.name?cap_first}()[#else]${param.name}[/#if][#if param_has_next], [/#if][/#list]}[/#macro]
+[#macro substitutionsType query][#if useTypedSubstitutions]${query.name?cap_first}Substitutions[#else]Object...[/#if][/#macro]
+[#macro columnValue col index][#switch col.type][#case "long"]rs.getLong(${index})[#break][#case "int"]rs.getInt(${index})[#break][#case "short"]rs.getShort(${index})[#break][#case "double"]rs.getDouble(${index})[#break][#case "float"]rs.getFloat(${index})[#break][#case "boolean"]rs.getBoolean(${index})[#break][#case "String"]rs.getString(${index})[#break][#case "BigDecimal"]rs.getBigDecimal(${index})[#break][#case "Date"]rs.getTimestamp(${index})[#break][#case "byte[]"]rs.getBytes(${index})[#break][#case "Object"]rs.getObject(${index})[#break][#default](${col.type}) JdbcUtils.getResultSetValue(rs, ${index}, ${col.type}.class)[/#switch][/#macro]
+[#macro spillWrite col value][#switch col.type][#case "long"]out.writeLong(${value})[#break][#case "int"]out.writeInt(${value})[#break][#case "short"]out.writeShort(${value})[#break][#case "double"]out.writeDouble(${value})[#break][#case "float"]out.writeFloat(${value})[#break][#case "boolean"]out.writeBoolean(${value})[#break][#default]writeSpilled(out, ${value})[/#switch][/#macro]
+[#macro spillRead col][#switch col.type][#case "long"]in.getLong()[#break][#case "int"]in.getInt()[#break][#case "short"]in.getShort()[#break][#case "double"]in.getDouble()[#break][#case "float"]in.getFloat()[#break][#case "boolean"]0 != in.get()[#break][#case "String"]readSpilledString(in)[#break][#case "BigDecimal"]readSpilledDecimal(in)[#break][#case "Date"]readSpilledDate(in)[#break][#default]readSpilledBytes(in)[/#switch][/#macro]
+[#macro exportValue col index][#switch col.type][#case "long"]writer.writeLong(rs.getLong(${index}), rs.wasNull())[#break][#case "int"]writer.writeInt(rs.getInt(${index}), rs.wasNull())[#break][#case "short"]writer.writeShort(rs.getShort(${index}), rs.wasNull())[#break][#case "double"]writer.writeDouble(rs.getDouble(${index}), rs.wasNull())[#break][#case "float"]writer.writeFloat(rs.getFloat(${index}), rs.wasNull())[#break][#case "boolean"]writer.writeBoolean(rs.getBoolean(${index}), rs.wasNull())[#break][#case "String"]writer.writeString(rs.getString(${index}))[#break][#case "BigDecimal"]writer.writeDecimal(rs.getBigDecimal(${index}))[#break][#case "Date"]writer.writeDate(rs.getTimestamp(${index}))[#break][#case "byte[]"]writer.writeBytes(rs.getBytes(${index}))[#break][#default]writer.writeObject(rs.getObject(${index}))[/#switch][/#macro]
+[#macro methodParams query extra=""][#if query.params?size > 1]final ${query.name?cap_first}Params paramsBean[#elseif query.params?size == 1]final ${query.params[0].type} ${query.params[0].name}[/#if][#if extra?has_content][#if query.params?size > 0], [/#if]${extra}[/#if][#if query.template][#if query.params?size > 0 || extra?has_content], [/#if]final [@substitutionsType query/] substitutions[/#if][/#macro]
+[#macro callArgs query][#if query.params?size > 1]paramsBean[#elseif query.params?size == 1]${query.params[0].name}[/#if][/#macro]
+[#macro invokeArgs query extra=""][#if query.params?size > 0][@callArgs query=query/][#if extra?has_content || query.template], [/#if][/#if]${extra}[#if query.template][#if extra?has_content], [/#if]substitutions[/#if][/#macro]
+[#macro paramsDoc query]
+[#if query.params?size > 1]
+     * @param paramsBean parameters object
+[#elseif query.params?size == 1]
+     * @param ${query.params[0].name} query single parameter
+[/#if]
+[#if query.template]
+     * @param substitutions template substitutions
+[/#if]
+[/#macro]
+[#macro tuned query setter][#if query.statementSettings]${query.constName}_SETTINGS.setter(${setter})[#else]${setter}[/#if][/#macro]
+[#macro parsedArg query][#if query.template]rendered.parsed[#else]parsedSql(sql)[/#if][/#macro]
+[#macro settingsArg query][#if hasStatementSettings][#if query.statementSettings]${query.constName}_SETTINGS[#else]null[/#if], [/#if][/#macro]
+[#macro jdbcCall query method binding sql="sql" extractor="" result="return " settings=""]
+[#if extractor?has_content][#local ext = ", " + extractor][#else][#local ext = ""][/#if]
+[#if method == "queryForIter"][#local ops = "jt.getIterableJdbcOperations()"][#else][#local ops = "jt.getJdbcOperations()"][/#if]
+[#if !settings?has_content && query.statementSettings][#local settings = query.constName + "_SETTINGS"][/#if]
+[#if settings?has_content]
+[#if binding == "named"]
+        SettingsSetter settingsSetter = ${settings}.setter([@parsedArg query=query/], params);
+[#local sqlArg = "settingsSetter.getSql()"][#local setter = "settingsSetter"]
+[#else]
+[#local sqlArg = sql]
+[#if binding == "args"][#local setter = settings + ".setter(args, " + query.constName + "_TYPES)"][#elseif binding == "pss"][#local setter = settings + ".setter(pss)"][#else][#local setter = settings + ".setter(null)"][/#if]
+[/#if]
+[#if method == "queryForObject"]
+        ${result}DataAccessUtils.requiredSingleResult(${ops}.query(${sqlArg}, ${setter}${ext}));
+[#else]
+        ${result}${ops}.${method}(${sqlArg}, ${setter}${ext});
+[/#if]
+[#elseif binding == "args"]
+        ${result}${ops}.${method}(${sql}, args, ${query.constName}_TYPES${ext});
+[#elseif binding == "pss" && method == "queryForObject"]
+        ${result}DataAccessUtils.requiredSingleResult(${ops}.query(${sql}, pss${ext}));
+[#elseif binding == "pss"]
+        ${result}${ops}.${method}(${sql}, pss${ext});
+[#elseif binding == "named"]
+        ${result}jt.${method}(sql, params${ext});
+[#else]
+        ${result}${ops}.${method}(sql${ext});
+[/#if]
+[/#macro]
+[#macro extractBody query extractor method="query" settings=""]
+[#if query.params?size > 1]
+[#if query.preparsed]
+        checkArgs(paramsBean);
+        Object[] args = [@positionalArgs query=query bean="paramsBean"/];
+[@jdbcCall query=query method=method settings=settings binding="args" sql=query.name + "Sql" extractor=extractor/]
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsBean);
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        SqlParameterSource params = new ${sourceClass}(paramsBean);
+[@jdbcCall query=query method=method settings=settings binding="named" extractor=extractor/]
+[/#if]
+[#elseif query.params?size == 1]
+[#assign singlpar = query.params[0]]
+[#if query.preparsed]
+[#if !singlpar.primitive]
+        checkArgs(${singlpar.name});
+[/#if]
+[@singleParamSetter query=query param=singlpar/]
+[@jdbcCall query=query method=method settings=settings binding="pss" sql=query.name + "Sql" extractor=extractor/]
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", [#if singlpar.primitive]""[#else]${singlpar.name}[/#if]);
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        SqlParameterSource params = new SingleParamSource("${singlpar.name}", "${singlpar.sqlName}", ${singlpar.name}, ${singlpar.sqlType});
+[@jdbcCall query=query method=method settings=settings binding="named" extractor=extractor/]
+[/#if]
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", "");
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+[@jdbcCall query=query method=method settings=settings binding="none" extractor=extractor/]
+[/#if]
+[/#macro]
+[#macro limitedBody query extractor limit]
+[#if query.params?size > 1]
+[#if query.preparsed]
+        checkArgs(paramsBean);
+        Object[] args = [@positionalArgs query=query bean="paramsBean"/];
+        PreparedStatementSetter pss = new LimitedSetter(${limit}, args, ${query.constName}_TYPES);
+[@jdbcCall query=query method="query" binding="pss" sql=query.name + "Sql" extractor=extractor/]
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsBean);
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        SqlParameterSource params = new ${sourceClass}(paramsBean);
+        return queryLimited(jt, [@settingsArg query=query/][@parsedArg query=query/], params, ${limit}, ${extractor});
+[/#if]
+[#elseif query.params?size == 1]
+[#assign singlpar = query.params[0]]
+[#if query.preparsed]
+[#if !singlpar.primitive]
+        checkArgs(${singlpar.name});
+[/#if]
+[@singleParamSetter query=query param=singlpar/]
+        return jt.getJdbcOperations().query(${query.name}Sql, [@tuned query=query setter="new LimitedSetter(" + limit + ", pss)"/], ${extractor});
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", [#if singlpar.primitive]""[#else]${singlpar.name}[/#if]);
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        SqlParameterSource params = new SingleParamSource("${singlpar.name}", "${singlpar.sqlName}", ${singlpar.name}, ${singlpar.sqlType});
+        return queryLimited(jt, [@settingsArg query=query/][@parsedArg query=query/], params, ${limit}, ${extractor});
+[/#if]
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", "");
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        return jt.getJdbcOperations().query(sql, [@tuned query=query setter="new LimitedSetter(" + limit + ", null)"/], ${extractor});
+[/#if]
+[/#macro]
+[#macro arraySetter param index][#switch param.type][#case "long"]ps.setLong(${index}, ${param.name}[row])[#break][#case "int"]ps.setInt(${index}, ${param.name}[row])[#break][#case "short"]ps.setShort(${index}, ${param.name}[row])[#break][#case "double"]ps.setDouble(${index}, ${param.name}[row])[#break][#case "float"]ps.setFloat(${index}, ${param.name}[row])[#break][#case "boolean"]ps.setBoolean(${index}, ${param.name}[row])[#break][#default]StatementCreatorUtils.setParameterValue(ps, ${index}, ${param.sqlType}, ${param.name}[row])[/#switch][/#macro]
+[#macro singleParamSetter query param]
+        PreparedStatementSetter pss = new PreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps) throws SQLException {
+[#list query.paramsOrder as po]
+[#switch param.type]
+[#case "long"]
+                ps.setLong(${po_index + 1}, ${param.name});
+[#break]
+[#case "int"]
+                ps.setInt(${po_index + 1}, ${param.name});
+[#break]
+[#case "short"]
+                ps.setShort(${po_index + 1}, ${param.name});
+[#break]
+[#case "double"]
+                ps.setDouble(${po_index + 1}, ${param.name});
+[#break]
+[#case "float"]
+                ps.setFloat(${po_index + 1}, ${param.name});
+[#break]
+[#case "boolean"]
+                ps.setBoolean(${po_index + 1}, ${param.name});
+[#break]
+[#default]
+                StatementCreatorUtils.setParameterValue(ps, ${po_index + 1}, ${param.sqlType}, ${param.name});
+[/#switch]
+[/#list]
+            }
+        };
+[/#macro]
+[#macro paramsSource query batch=false]
+[#if generateParamsSources]
+
+    /**
+     * Reflection-free parameters source for "${query.name}" query
+     */
+    private static class ${query.name?cap_first}ParamsSource extends AbstractSqlParameterSource {
+        private static final Map<String, Integer> PARAMS_INDEX = new HashMap<String, Integer>();
+        private static final int[] SQL_TYPES = {[#list query.params as param]${param.sqlType}[#if param_has_next], [/#if][/#list]};
+[#if batch]
+        private static final ParamsSourceFactory<${query.name?cap_first}Params> FACTORY = new ParamsSourceFactory<${query.name?cap_first}Params>() {
+            @Override
+            public SqlParameterSource createSource(${query.name?cap_first}Params paramsBean) {
+                return new ${query.name?cap_first}ParamsSource(paramsBean);
+            }
+        };
+[/#if]
+        private final ${query.name?cap_first}Params paramsBean;
+
+        static {
+[#assign indexed = []]
+[#list query.params as param]
+            PARAMS_INDEX.put("${param.name}", ${param.index});
+[#assign indexed = indexed + [param.name]]
+[/#list]
+[#list query.paramsOrder as param]
+[#if !indexed?seq_contains(param.sqlName)]
+            PARAMS_INDEX.put("${param.sqlName}", ${param.index});
+[#assign indexed = indexed + [param.sqlName]]
+[/#if]
+[/#list]
+        }
+
+        private ${query.name?cap_first}ParamsSource(${query.name?cap_first}Params paramsBean) {
+            this.paramsBean = paramsBean;
+        }
+
+        @Override
+        public boolean hasValue(String paramName) {
+            return PARAMS_INDEX.containsKey(paramName);
+        }
+
+        @Override
+        public Object getValue(String paramName) throws IllegalArgumentException {
+            Integer index = PARAMS_INDEX.get(paramName);
+            if(null == index) throw new IllegalArgumentException("No value registered for key '" + paramName + "'");
+            switch(index) {
+[#list query.params as param]
+                case ${param.index}: return paramsBean.get${param.name?cap_first}();
+[/#list]
+                default: throw new IllegalArgumentException("No value registered for key '" + paramName + "'");
+            }
+        }
+
+        @Override
+        public int getSqlType(String paramName) {
+            Integer index = PARAMS_INDEX.get(paramName);
+            return null != index ? SQL_TYPES[index] : TYPE_UNKNOWN;
+        }
+    }
+[/#if]
+[/#macro]
+[#macro batchVariants query]
+[#if query.valuesInsert]
+
+    /**
+     * Executes "${query.name}" query in batch mode sending each batch
+     * as a single multi-row {@code insert ... values (...), (...)} statement.
+     * Number of rows in single statement is additionally limited, so the number
+     * of bind parameters doesn't exceed {@link #VALUES_MAX_PARAMS}
+     *
+     * @param paramsIter parameters iterator
+     * @param batchSize number of rows in single statement
+     * @return count of inserted rows
+     * @throws DataAccessException on query error
+     */
+    ${modifier}long ${query.name}ValuesBatch(Iterator<? extends ${query.name?cap_first}Params> paramsIter, int batchSize) throws DataAccessException {
+        return ${query.name}ValuesBatch(paramsIter, batchSize, VALUES_MAX_PARAMS);
+    }
+
+    /**
+     * Executes "${query.name}" query in batch mode sending each batch
+     * as a single multi-row {@code insert ... values (...), (...)} statement
+     *
+     * @param paramsIter parameters iterator
+     * @param batchSize number of rows in single statement
+     * @param maxParams max number of bind parameters in single statement supported by JDBC driver,
+     *                  number of rows in single statement is limited to {@code maxParams / ${query.paramsOrder?size}}
+     * @return count of inserted rows
+     * @throws DataAccessException on query error
+     */
+    ${modifier}long ${query.name}ValuesBatch(Iterator<? extends ${query.name?cap_first}Params> paramsIter, int batchSize, int maxParams) throws DataAccessException {
+        return valuesBatchUpdate(jt, [@settingsArg query=query/]${query.name}Values, paramsIter, batchSize, maxParams, [#if generateParamsSources]${sourceClass}.FACTORY[#else]BEAN_PROPERTY_SOURCE_FACTORY[/#if]);
+    }
+[/#if]
+[#if query.columnsBatch]
+
+    /**
+     * Executes "${query.name}" query in batch mode binding parameters
+     * directly from provided arrays by row index
+     *
+[#list query.params as param]
+     * @param ${param.name} "${param.sqlName}" parameter values
+[/#list]
+     * @param from index of the first row, inclusive
+     * @param to index of the last row, exclusive
+     * @param batchSize single batch size
+     * @return count of updated rows, {@code -1} if such information is not available
+     * @throws DataAccessException on query error
+     */
+    ${modifier}long ${query.name}BatchColumns([#list query.params as param]final ${param.type}[] ${param.name}, [/#list]int from, int to, int batchSize) throws DataAccessException {
+        checkRowsRange(from, to, batchSize);
+[#list query.params as param]
+        if(null == ${param.name} || ${param.name}.length < to) throw new QueryException(
+                "Provided array: [${param.name}] is null or shorter than: [" + to + "]");
+[/#list]
+        return columnsBatchUpdate(jt, [@settingsArg query=query/][#if query.preparsed]${query.name}Sql[#else]${query.name}ColumnsSql[/#if], from, to, batchSize, new ColumnsBatchSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                int row = offset + i;
+[#list query.paramsOrder as po]
+                [@arraySetter param=po index=po_index + 1/];
+[/#list]
+            }
+        });
+    }
+[/#if]
+[#if query.writeBehind]
+
+    /**
+     * Creates write-behind buffer for "${query.name}" query, that coalesces updates with the same
+     * "${query.writeBehindKey.sqlName}" parameter using provided merger and executes them in batch mode
+     * on size or time trigger, on explicit flush or on close
+     *
+     * @param maxSize number of buffered distinct keys, that triggers flush on the calling thread
+     * @param flushIntervalMillis delay between scheduled flushes in milliseconds
+     * @param scheduler scheduler for time-triggered flushes, may be null to disable them
+     * @param txManager transaction manager to execute each flush in new transaction with,
+     *                  may be null to execute flushes without explicit transactions
+     * @param merger combines buffered parameters with the new ones with the same key, {@link WriteBehind#replacing()}
+     *               may be used only if query assigns absolute values, relative updates (e.g. counter increments)
+     *               require merger that accumulates parameters
+     * @return write-behind buffer, must be closed to flush remaining updates
+     * @throws DataAccessException on invalid arguments
+     */
+    ${modifier}WriteBehind<${query.name?cap_first}Params> ${query.name}WriteBehind(int maxSize, long flushIntervalMillis, ScheduledExecutorService scheduler, PlatformTransactionManager txManager, WriteBehindMerger<${query.name?cap_first}Params> merger) throws DataAccessException {
+        WriteBehindTarget<${query.name?cap_first}Params> target = new WriteBehindTarget<${query.name?cap_first}Params>() {
+            @Override
+            public Object key(${query.name?cap_first}Params paramsBean) {
+                return paramsBean.get${query.writeBehindKey.name?cap_first}();
+            }
+
+            @Override
+            public int execute(Iterator<? extends ${query.name?cap_first}Params> paramsIter, int batchSize) {
+                return ${query.name}Batch(paramsIter, batchSize);
+            }
+        };
+        return WriteBehind.start(target, maxSize, flushIntervalMillis, scheduler, txManager, merger);
+    }
+[/#if]
+[#if pipelined]
+
+    /**
+     * Executes "${query.name}" query in pipelined batch mode: next batch is bound from parameters iterator
+     * using provided executor while the current batch is executed on the calling thread.
+     * Batch size starts from {@code minBatchSize} and is doubled or halved within provided bounds
+     * depending on the measured execution time of the previous batch.
+     *
+     * @param paramsIter parameters iterator, accessed only from one thread at a time
+     * @param minBatchSize minimal (and initial) batch size
+     * @param maxBatchSize maximal batch size
+     * @param targetBatchMillis desired execution time of a single batch in milliseconds
+     * @param executor executor to bind batches with
+     * @return count of updated rows, {@code -1} if such information is not available
+     * @throws DataAccessException on query error
+     */
+    ${modifier}long ${query.name}BatchPipelined(Iterator<? extends ${query.name?cap_first}Params> paramsIter, int minBatchSize, int maxBatchSize, long targetBatchMillis, Executor executor[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsIter);
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        return pipelinedBatchUpdate(jt, [@settingsArg query=query/]sql, paramsIter, minBatchSize, maxBatchSize, targetBatchMillis, executor, [#if generateParamsSources]${sourceClass}.FACTORY[#else]BEAN_PROPERTY_SOURCE_FACTORY[/#if]);
+    }
+[/#if]
+[#if parallel]
+
+    /**
+     * Executes "${query.name}" query in batch mode using multiple connections in parallel.
+     * Each batch is executed in its own new transaction and is retried on transient errors.
+     * Batches are executed in arbitrary order, unless partitioner is specified - then all
+     * parameters with the same partition are executed through the same connection in iterator order.
+     *
+     * @param paramsIter parameters iterator
+     * @param batchSize single batch size
+     * @param parallelism number of connections to use
+     * @param maxRetries max number of retries for a single batch failed with transient error
+     * @param txManager transaction manager for the data source of the jdbc template provided on construction,
+     *                  each task uses its own connection bound by this manager
+     * @param executor executor to run loading tasks with, must be able to run {@code parallelism} tasks at once
+     * @param partitioner parameters partitioner, may be null if ordering is not required
+     * @return load report with count of updated rows and failed batches
+     * @throws DataAccessException on query error
+     */
+    ${modifier}ParallelBatchReport ${query.name}ParallelBatch(Iterator<? extends ${query.name?cap_first}Params> paramsIter, int batchSize, int parallelism, int maxRetries, PlatformTransactionManager txManager, Executor executor, ParallelBatchPartitioner<? super ${query.name?cap_first}Params> partitioner[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsIter);
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        return parallelBatchUpdate(sql, paramsIter, batchSize, parallelism, maxRetries, txManager, executor, partitioner, [#if generateParamsSources]${sourceClass}.FACTORY[#else]BEAN_PROPERTY_SOURCE_FACTORY[/#if]);
+    }
+[/#if]
+[/#macro]
+[#assign hasNamedSingleParam = false]
+[#assign hasStatementSettings = false]
+[#assign hasPageable = false]
+[#assign spills = false]
+[#assign exports = false]
+[#assign valuesInserts = false]
+[#assign columnsBatches = false]
+[#assign writeBehinds = false]
+[#list selects + updates as query]
+[#if query.params?size == 1 && (!query.preparsed || query.pageable)][#assign hasNamedSingleParam = true][/#if]
+[#if query.statementSettings][#assign hasStatementSettings = true][/#if]
+[#if query.pageable][#assign hasPageable = true][/#if]
+[#if query.spillBuffer][#assign spills = true][/#if]
+[#if generateExports && query.columnsParsed][#assign exports = true][/#if]
+[#if query.valuesInsert][#assign valuesInserts = true][/#if]
+[#if query.columnsBatch][#assign columnsBatches = true][/#if]
+[#if query.writeBehind][#assign writeBehinds = true][/#if]
+[/#list]
+[#assign limited = generateLimitedSelects]
+[#assign limitsRows = limited || hasPageable]
+[#assign lazyLists = useIterableJdbcTemplate && useLazyLists]
+[#assign readsColumns = generateRowClasses || generateColumnArrays || generateRowCallbacks || exports]
+[#assign extractsResults = generateColumnArrays || generateRowCallbacks || limitsRows || spills || exports]
+[#assign tunesStatements = hasStatementSettings || (useIterableJdbcTemplate && useReactivePublishers)]
+[#assign setsStatements = usePreparsedQueries || limitsRows || valuesInserts || columnsBatches || tunesStatements]
+[#assign prefetch = useIterableJdbcTemplate && usePrefetchIterators]
+[#assign streams = useIterableJdbcTemplate && useStreams]
+[#assign publishers = useIterableJdbcTemplate && useReactivePublishers]
+[#assign async = useAsyncMethods]
+[#assign pipelined = useBatchInserts && usePipelinedBatches]
+[#assign parallel = useBatchInserts && useParallelBatches]
+[#assign parsesSql = limitsRows || tunesStatements || pipelined]
 package ${packageName};
 
 [#if useIterableJdbcTemplate]
@@ -10,35 +422,212 @@ import com.alexkasko.springjdbc.iterable.CloseableIterator;
 import com.alexkasko.springjdbc.iterable.CloseableIterable;
 [/#if]
 [/#if]
+[#if publishers]
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+[/#if]
 import org.springframework.dao.DataAccessException;
 [#if useCheckSingleRowUpdates]
 import org.springframework.dao.EmptyResultDataAccessException;
 [/#if]
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
+[#if parallel || writeBehinds]
+import org.springframework.dao.TransientDataAccessException;
+[/#if]
+[#if usePreparsedQueries || tunesStatements]
+import org.springframework.dao.support.DataAccessUtils;
+[/#if]
+[#if columnsBatches || pipelined || tunesStatements]
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+[/#if]
+[#if publishers]
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+[/#if]
+[#if limitsRows || tunesStatements]
+import org.springframework.jdbc.core.ParameterDisposer;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+[/#if]
+[#if setsStatements]
+import org.springframework.jdbc.core.PreparedStatementSetter;
+[/#if]
+[#if extractsResults]
+import org.springframework.jdbc.core.ResultSetExtractor;
+[/#if]
 import org.springframework.jdbc.core.RowMapper;
+[#if pipelined]
+import org.springframework.jdbc.core.SqlParameterValue;
+[/#if]
+import org.springframework.jdbc.core.SqlTypeValue;
+[#if setsStatements || pipelined]
+import org.springframework.jdbc.core.StatementCreatorUtils;
+[/#if]
+import org.springframework.jdbc.core.namedparam.AbstractSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 [#if !useIterableJdbcTemplate]
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 [/#if]
+[#if setsStatements || pipelined]
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+[/#if]
+[#if readsColumns || hasPageable]
+import org.springframework.jdbc.support.JdbcUtils;
+[/#if]
+[#if parallel || writeBehinds]
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+[/#if]
+[#if parallel || writeBehinds]
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+[/#if]
 
+[#if spills]
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+[/#if]
+[#if lazyLists || spills || writeBehinds]
+import java.io.Closeable;
+[/#if]
+[#if spills]
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+[/#if]
+[#if spills || exports]
+import java.io.IOException;
+[/#if]
+[#if spills]
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+[/#if]
 import java.math.BigDecimal;
+[#if spills]
+import java.math.BigInteger;
+[/#if]
+[#if spills || exports]
+import java.nio.ByteBuffer;
+[/#if]
+[#if exports]
+import java.nio.CharBuffer;
+[/#if]
+[#if spills]
+import java.nio.channels.FileChannel;
+[/#if]
+[#if exports]
+import java.nio.channels.WritableByteChannel;
+[/#if]
+[#if spills || exports]
+import java.nio.charset.Charset;
+[/#if]
+[#if exports]
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+[/#if]
+[#if setsStatements || pipelined]
+import java.sql.PreparedStatement;
+[/#if]
+[#if readsColumns || extractsResults]
+import java.sql.ResultSet;
+[/#if]
+[#if readsColumns]
+import java.sql.ResultSetMetaData;
+[/#if]
+[#if setsStatements || readsColumns || extractsResults || pipelined]
+import java.sql.SQLException;
+[/#if]
+import java.sql.Types;
 import java.util.Date;
+[#if lazyLists]
+import java.util.AbstractList;
+[/#if]
 import java.util.ArrayList;
+[#if usePreparsedQueries || useTemplateStringSubstitution || generateRowClasses || generateColumnArrays || generateRowCallbacks || exports || prefetch || pipelined || parallel || valuesInserts || columnsBatches]
+import java.util.Arrays;
+[/#if]
+[#if generateColumnArrays]
+import java.util.BitSet;
+[/#if]
 import java.util.Collection;
-[#if useBatchInserts]
+[#if lazyLists || hasPageable || parallel || writeBehinds]
+import java.util.Collections;
+[/#if]
+[#if parallel]
+import java.util.Comparator;
+[/#if]
+[#if useBatchInserts || lazyLists || hasPageable || spills || parsesSql || useTemplateStringSubstitution]
 import java.util.Iterator;
 [/#if]
 import java.util.List;
+[#if lazyLists]
+import java.util.LinkedHashMap;
+[/#if]
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.HashMap;
+[#if prefetch || lazyLists || hasPageable || spills]
+import java.util.NoSuchElementException;
+[/#if]
+[#if streams]
+import java.util.Spliterator;
+import java.util.Spliterators;
+[/#if]
 import java.util.Set;
-[#if useTemplateStringSubstitution]
+[#if prefetch || parallel]
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+[/#if]
+[#if parsesSql || useTemplateStringSubstitution || writeBehinds]
 import java.util.concurrent.ConcurrentHashMap;
+[/#if]
+[#if prefetch || parallel]
+import java.util.concurrent.CountDownLatch;
+[/#if]
+[#if pipelined]
+import java.util.concurrent.Callable;
+[/#if]
+[#if async]
+import java.util.concurrent.CompletableFuture;
+[/#if]
+[#if pipelined]
+import java.util.concurrent.ExecutionException;
+[/#if]
+[#if prefetch || publishers || async || pipelined || parallel]
+import java.util.concurrent.Executor;
+[/#if]
+[#if pipelined]
+import java.util.concurrent.FutureTask;
+[/#if]
+[#if writeBehinds]
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+[/#if]
+[#if publishers]
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+[/#if]
+[#if streams]
+import java.util.function.Consumer;
+[/#if]
+[#if async]
+import java.util.function.Supplier;
+[/#if]
+[#if valuesInserts]
 import java.util.regex.Matcher;
+[/#if]
+[#if useTemplateStringSubstitution || valuesInserts || hasPageable]
 import java.util.regex.Pattern;
 [/#if]
+[#if streams]
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+[/#if]
 
 [#if useUnderscoredToCamel]
 import static java.lang.Character.toLowerCase;
@@ -56,17 +645,95 @@ import static java.util.Collections.unmodifiableSet;
  */
 ${modifier}class ${className} {
     private static final Set<String> GENERATED_QUERIES_NAMES;
+[#if useUnderscoredToCamel]
+    private static final Map<String, String> UNDERSCORED_TO_CAMEL;
+    private static final Map<String, String> CAMEL_TO_UNDERSCORED;
+[/#if]
 [#if useTemplateStringSubstitution]
-    private static final String SUBSTITUTE_KEY_PATTERN_PREFIX = "\\$\\{";
-    private static final String SUBSTITUTE_KEY_PATTERN_POSTFIX = "(?:\\(.*?\\))?\\}";
+[#if !useTypedSubstitutions]
     private static final Pattern SUBSTITUTE_KEY_RESTRICTION_PATTERN = Pattern.compile("^[a-zA-Z0-9_]+$");
+[/#if]
     private static final Pattern SUBSTITUTE_VALUE_PATTERN = Pattern.compile("${templateValueConstraintRegex}");
+[/#if]
+[#if parsesSql || useTemplateStringSubstitution]
+    private static final int SQL_CACHE_MAX_SIZE = 256;
+[/#if]
+[#if valuesInserts]
+    /**
+     * Default max number of bind parameters in single multi-row {@code values} statement,
+     * conservative value accepted by all popular databases (999 is the default limit of SQLite
+     * before 3.32), larger limit may be provided for the database in use, e.g. 32767 for PostgreSQL
+     */
+    ${modifier}static final int VALUES_MAX_PARAMS = 999;
+    // same as the one used on generation time, groups: statement prefix and values tuple
+    private static final Pattern VALUES_INSERT_PATTERN = Pattern.compile(
+            "(?is)^(\\s*insert\\s+into\\s+[^;]+?\\bvalues\\s*)(\\((?:[^()']|\\([^()']*\\))*\\))\\s*;?\\s*$");
+[/#if]
+[#if useBatchInserts && !generateParamsSources]
+    private static final ParamsSourceFactory<Object> BEAN_PROPERTY_SOURCE_FACTORY = new ParamsSourceFactory<Object>() {
+        @Override
+        public SqlParameterSource createSource(Object paramsBean) {
+            return new ${bpspsClass}(paramsBean);
+        }
+    };
+[/#if]
+[#if usePreparsedQueries || valuesInserts || columnsBatches]
+    // resolves each parameter to its own name, ParsedSql doesn't expose parameters names
+    private static final SqlParameterSource PARAMS_NAMES_SOURCE = new AbstractSqlParameterSource() {
+        @Override
+        public boolean hasValue(String paramName) {
+            return true;
+        }
+
+        @Override
+        public Object getValue(String paramName) {
+            return paramName;
+        }
+    };
+    // JDBC types of positional parameters known at generation time
+[#list selects + updates as query]
+[#if query.preparsed && query.params?size > 1]
+    private static final int[] ${query.constName}_TYPES = {[#list query.paramsOrder as param]${param.sqlType}[#if param_has_next], [/#if][/#list]};
+[/#if]
+[/#list]
+[/#if]
+[#if hasStatementSettings]
+    // statement settings from query directives
+[#list selects + updates as query]
+[#if query.statementSettings]
+    private static final StatementSettings ${query.constName}_SETTINGS = new StatementSettings(${query.fetchSize?c}, ${query.timeout?c}, ${query.maxRows?c});
+[/#if]
+[/#list]
 [/#if]
 
     private final Map<String, String> queries;
     private final ${jtClass} jt;
+[#if async]
+    private final Executor asyncExecutor;
+[/#if]
+[#list selects + updates as query]
+[#if query.preparsed]
+    private final String ${query.name}Sql;
+[/#if]
+[/#list]
+[#list updates as query]
+[#if query.valuesInsert]
+    private final ValuesInsert ${query.name}Values;
+[/#if]
+[#if query.columnsBatch && !query.preparsed]
+    private final String ${query.name}ColumnsSql;
+[/#if]
+[/#list]
 [#if useTemplateStringSubstitution]
-    private final Map<String, Pattern> substituteMap = new ConcurrentHashMap<String, Pattern>();
+    private final Map<String, SqlTemplate> templates;
+[/#if]
+[#if useTemplateStringSubstitution]
+    // rendered templates, keyed by template and substitutions
+    private final ConcurrentHashMap<SubstitutionsKey, RenderedSql> renderedCache = new ConcurrentHashMap<SubstitutionsKey, RenderedSql>();
+[/#if]
+[#if parsesSql]
+    // parsed queries, keyed by query text with named parameters
+    private final ConcurrentHashMap<String, ParsedSql> parsedSqlCache = new ConcurrentHashMap<String, ParsedSql>();
 [/#if]
 
     // static initializer for query names known at generation time
@@ -88,6 +755,31 @@ ${modifier}class ${className} {
         }
         // set names that will be used in constructor check
         GENERATED_QUERIES_NAMES = unmodifiableSet(getNamesSet);
+[#if useUnderscoredToCamel]
+        // parameters names translations known at generation time
+        Map<String, String> utc = new HashMap<String, String>();
+        Map<String, String> ctu = new HashMap<String, String>();
+[#assign translated = []]
+[#list selects + updates as query]
+[#list query.paramsOrder as param]
+[#if !translated?seq_contains(param.sqlName)]
+        utc.put("${param.sqlName}", "${param.name}");
+[#assign translated = translated + [param.sqlName]]
+[/#if]
+[/#list]
+[/#list]
+[#assign translated = []]
+[#list selects + updates as query]
+[#list query.params as param]
+[#if !translated?seq_contains(param.name)]
+        ctu.put("${param.name}", "${param.underscoredName}");
+[#assign translated = translated + [param.name]]
+[/#if]
+[/#list]
+[/#list]
+        UNDERSCORED_TO_CAMEL = unmodifiableMap(utc);
+        CAMEL_TO_UNDERSCORED = unmodifiableMap(ctu);
+[/#if]
     }
 
     /**
@@ -95,11 +787,17 @@ ${modifier}class ${className} {
      *
      * @param queries 'name'->'sql' map
      * @param jt jdbc template
+[#if async]
+     * @param asyncExecutor executor to run async methods
+[/#if]
      * @throws DataAccessException if provided queries names are not consistent with generated ones
      */
-    ${modifier}${className}(Map<String, String> queries, ${jtClass} jt) throws DataAccessException {
+    ${modifier}${className}(Map<String, String> queries, ${jtClass} jt[#if async], Executor asyncExecutor[/#if]) throws DataAccessException {
         if(null == queries) throw new QueryException("Provided queries map is null");
         if(null == jt) throw new QueryException("Provided JdbcTemplate is null");
+[#if async]
+        if(null == asyncExecutor) throw new QueryException("Provided async executor is null");
+[/#if]
         if(queries.size() != GENERATED_QUERIES_NAMES.size()) throw new QueryException(
                 "Provided queries: [" + queries.keySet() + "] are non consistent with queries " +
                 " known on generation time: [" + GENERATED_QUERIES_NAMES + "]: size differs");
@@ -108,16 +806,45 @@ ${modifier}class ${className} {
                 " known on generation time: [" + GENERATED_QUERIES_NAMES + "]: unknown name: [" + name + "]");
         this.queries = unmodifiableMap(queries);
         this.jt = jt;
-    }
-
-    /**
-     * Jdbc template accessor
-     *
-     * @return jdbc template
-     */
-    ${modifier}${jtClass} jt() {
-        return this.jt;
-    }
+[#if async]
+        this.asyncExecutor = asyncExecutor;
+[/#if]
+[#if useTemplateStringSubstitution]
+        Map<String, SqlTemplate> templatesMap = new HashMap<String, SqlTemplate>();
+[#list selects + updates as query]
+[#if query.template]
+[#if useTypedSubstitutions]
+        templatesMap.put(queryText("${query.name}"), compileTemplate("${query.name}", ${query.name?cap_first}Substitutions.KEYS));
+[#else]
+        templatesMap.put(queryText("${query.name}"), new SqlTemplate(queryText("${query.name}")));
+[/#if]
+[/#if]
+[/#list]
+        this.templates = unmodifiableMap(templatesMap);
+[/#if]
+[#list selects + updates as query]
+[#if query.preparsed]
+        this.${query.name}Sql = preparse("${query.name}"[#list query.paramsOrder as param], "${param.sqlName}"[/#list]);
+[/#if]
+[/#list]
+[#list updates as query]
+[#if query.valuesInsert]
+        this.${query.name}Values = new ValuesInsert("${query.name}", queryText("${query.name}")[#list query.paramsOrder as param], "${param.sqlName}"[/#list]);
+[/#if]
+[#if query.columnsBatch && !query.preparsed]
+        this.${query.name}ColumnsSql = preparse("${query.name}"[#list query.paramsOrder as param], "${param.sqlName}"[/#list]);
+[/#if]
+[/#list]
+    }
+
+    /**
+     * Jdbc template accessor
+     *
+     * @return jdbc template
+     */
+    ${modifier}${jtClass} jt() {
+        return this.jt;
+    }
 
     /**
      * Query text accessor
@@ -134,6 +861,7 @@ ${modifier}class ${className} {
 
     // select methods
 [#list selects as query]
+[#if generateParamsSources][#assign sourceClass=query.name?cap_first + "ParamsSource"][#else][#assign sourceClass=bpspsClass][/#if]
 
     // ${query.name} methods
 [#if generateInterfacesForColumns && query.columns?size > 1]
@@ -151,6 +879,68 @@ ${modifier}class ${className} {
 [#else]
     [#assign rowMapperGenericParam="T"]
 [/#if]
+[#if query.rowClass]
+[#assign rowColumnsInterface = generateInterfacesForColumns && query.columns?size > 1]
+
+    /**
+     * Result row of "${query.name}" query
+     */
+    ${modifier}static class ${query.name?cap_first}Row[#if rowColumnsInterface] implements ${query.name?cap_first}Columns[/#if] {
+[#list query.columns as col]
+        private [#if !rowColumnsInterface]final [/#if]${col.type} ${col.name};
+[/#list]
+
+        /**
+         * Constructor
+         *
+[#list query.columns as col]
+         * @param ${col.name} "${col.sqlName}" column value
+[/#list]
+         */
+        ${modifier}${query.name?cap_first}Row([#list query.columns as col]${col.type} ${col.name}[#if col_has_next], [/#if][/#list]) {
+[#list query.columns as col]
+            this.${col.name} = ${col.name};
+[/#list]
+        }
+[#list query.columns as col]
+
+        /**
+         * "${col.sqlName}" column value accessor
+         *
+         * @return column value
+         */
+        ${modifier}${col.type} [#if col.type == "boolean"]is[#else]get[/#if]${col.name?cap_first}() {
+            return ${col.name};
+        }
+[/#list]
+[#if rowColumnsInterface]
+[#list query.columns as col]
+
+        @Override
+        public ${columnSetterReturnVal} set${col.name?cap_first}(${col.type} ${col.name}) {
+            this.${col.name} = ${col.name};
+[#if useFluentSettersForColumns]
+            return this;
+[/#if]
+        }
+[/#list]
+[/#if]
+    }
+
+    /**
+     * Maps "${query.name}" query result rows reading columns by indices
+     */
+    ${modifier}static final RowMapper<${query.name?cap_first}Row> ${query.constName}_ROW_MAPPER = new RowMapper<${query.name?cap_first}Row>() {
+        @Override
+        public ${query.name?cap_first}Row mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if(0 == rowNum) checkColumns(rs, "${query.name}"[#list query.columns as col], "${col.sqlName}"[/#list]);
+            return new ${query.name?cap_first}Row(
+[#list query.columns as col]
+                    [@columnValue col=col index=col_index + 1/][#if col_has_next],[#else]);[/#if]
+[/#list]
+        }
+    };
+[/#if]
 [#if query.params?size > 1]
 
     /**
@@ -161,6 +951,7 @@ ${modifier}class ${className} {
         ${param.type} get${param.name?cap_first}();
 [/#list]
     }
+[@paramsSource query=query/]
 
     /**
      * Executes "${query.name}" query, maps results using provided mapper and returns them as list
@@ -171,13 +962,20 @@ ${modifier}class ${className} {
      * @return list of mapped objects
      * @throws DataAccessException on query error
      */
-    ${modifier}<${rowMapperGenericParam}> List<T> ${query.name}(${query.name?cap_first}Params paramsBean, RowMapper<T> mapper[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
+    ${modifier}<${rowMapperGenericParam}> List<T> ${query.name}(${query.name?cap_first}Params paramsBean, RowMapper<T> mapper[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+[#if query.preparsed]
+        checkArgs(paramsBean, mapper);
+        Object[] args = [@positionalArgs query=query bean="paramsBean"/];
+[@jdbcCall query=query method="query" binding="args" sql=query.name + "Sql" extractor="mapper"/]
+[#else]
         String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsBean, mapper);
 [#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        SqlParameterSource params = new ${sourceClass}(paramsBean);
+[@jdbcCall query=query method="query" binding="named" extractor="mapper"/]
 [/#if]
-        SqlParameterSource params = new ${bpspsClass}(paramsBean);
-        return jt.query(sql, params, mapper);
     }
 
     /**
@@ -191,13 +989,20 @@ ${modifier}class ${className} {
      * @throws IncorrectResultSizeDataAccessException if not one row returned
      * @throws DataAccessException on query error
      */
-    ${modifier}<${rowMapperGenericParam}> T ${query.name}Single(${query.name?cap_first}Params paramsBean, RowMapper<T> mapper[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
+    ${modifier}<${rowMapperGenericParam}> T ${query.name}Single(${query.name?cap_first}Params paramsBean, RowMapper<T> mapper[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+[#if query.preparsed]
+        checkArgs(paramsBean, mapper);
+        Object[] args = [@positionalArgs query=query bean="paramsBean"/];
+[@jdbcCall query=query method="queryForObject" binding="args" sql=query.name + "Sql" extractor="mapper"/]
+[#else]
         String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsBean, mapper);
 [#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        SqlParameterSource params = new ${sourceClass}(paramsBean);
+[@jdbcCall query=query method="queryForObject" binding="named" extractor="mapper"/]
 [/#if]
-        SqlParameterSource params = new ${bpspsClass}(paramsBean);
-        return jt.queryForObject(sql, params, mapper);
     }
 [#if useIterableJdbcTemplate]
 
@@ -210,13 +1015,20 @@ ${modifier}class ${className} {
      * @return iterator of mapped objects
      * @throws DataAccessException on query error
      */
-    ${modifier}<${rowMapperGenericParam}> CloseableIterator<T> ${query.name}Iterator(${query.name?cap_first}Params paramsBean, RowMapper<T> mapper[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
+    ${modifier}<${rowMapperGenericParam}> CloseableIterator<T> ${query.name}Iterator(${query.name?cap_first}Params paramsBean, RowMapper<T> mapper[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+[#if query.preparsed]
+        checkArgs(paramsBean, mapper);
+        Object[] args = [@positionalArgs query=query bean="paramsBean"/];
+[@jdbcCall query=query method="queryForIter" binding="args" sql=query.name + "Sql" extractor="mapper"/]
+[#else]
         String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsBean, mapper);
 [#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        SqlParameterSource params = new ${sourceClass}(paramsBean);
+[@jdbcCall query=query method="queryForIter" binding="named" extractor="mapper"/]
 [/#if]
-        SqlParameterSource params = new ${bpspsClass}(paramsBean);
-        return jt.queryForIter(sql, params, mapper);
     }
 [#if useCloseableIterables]
 
@@ -228,7 +1040,7 @@ ${modifier}class ${className} {
      * @param <T> row mapper return type
      * @return closeable iterable for "${query.name}" query
      */
-    ${modifier}<${rowMapperGenericParam}> CloseableIterable<T> ${query.name}Iterable(final ${query.name?cap_first}Params paramsBean, final RowMapper<T> mapper[#if query.template], final Object... substitutions[/#if]) {
+    ${modifier}<${rowMapperGenericParam}> CloseableIterable<T> ${query.name}Iterable(final ${query.name?cap_first}Params paramsBean, final RowMapper<T> mapper[#if query.template], final [@substitutionsType query/] substitutions[/#if]) {
         return new CloseableIterable<T>() {
             @Override
             protected CloseableIterator<T> closeableIterator() {
@@ -250,17 +1062,20 @@ ${modifier}class ${className} {
      * @return list of mapped objects
      * @throws DataAccessException on query error
      */
-    ${modifier}<${rowMapperGenericParam}> List<T> ${query.name}(${singlpar.type} ${singlpar.name}, RowMapper<T> mapper[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
-        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", ${singlpar.name}, mapper);
+    ${modifier}<${rowMapperGenericParam}> List<T> ${query.name}(final ${singlpar.type} ${singlpar.name}, RowMapper<T> mapper[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+[#if query.preparsed]
+        checkArgs([#if singlpar.primitive]""[#else]${singlpar.name}[/#if], mapper);
+[@singleParamSetter query=query param=singlpar/]
+[@jdbcCall query=query method="query" binding="pss" sql=query.name + "Sql" extractor="mapper"/]
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", [#if singlpar.primitive]""[#else]${singlpar.name}[/#if], mapper);
 [#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
 [/#if]
-        Map<String, Object> params = new HashMap<String, Object>(1);
-        params.put("${singlpar.name}", ${singlpar.name});
-[#if useUnderscoredToCamel]
-        params.put(camelToUnderscored("${singlpar.name}"), ${singlpar.name});
+        SqlParameterSource params = new SingleParamSource("${singlpar.name}", "${singlpar.sqlName}", ${singlpar.name}, ${singlpar.sqlType});
+[@jdbcCall query=query method="query" binding="named" extractor="mapper"/]
 [/#if]
-        return jt.query(sql, params, mapper);
     }
 
     /**
@@ -274,17 +1089,20 @@ ${modifier}class ${className} {
      * @throws IncorrectResultSizeDataAccessException if not one row returned
      * @throws DataAccessException on query error
      */
-    ${modifier}<${rowMapperGenericParam}> T ${query.name}Single(${singlpar.type} ${singlpar.name}, RowMapper<T> mapper[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
-        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", ${singlpar.name}, mapper);
+    ${modifier}<${rowMapperGenericParam}> T ${query.name}Single(final ${singlpar.type} ${singlpar.name}, RowMapper<T> mapper[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+[#if query.preparsed]
+        checkArgs([#if singlpar.primitive]""[#else]${singlpar.name}[/#if], mapper);
+[@singleParamSetter query=query param=singlpar/]
+[@jdbcCall query=query method="queryForObject" binding="pss" sql=query.name + "Sql" extractor="mapper"/]
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", [#if singlpar.primitive]""[#else]${singlpar.name}[/#if], mapper);
 [#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
 [/#if]
-        Map<String, Object> params = new HashMap<String, Object>(1);
-        params.put("${singlpar.name}", ${singlpar.name});
-[#if useUnderscoredToCamel]
-        params.put(camelToUnderscored("${singlpar.name}"), ${singlpar.name});
+        SqlParameterSource params = new SingleParamSource("${singlpar.name}", "${singlpar.sqlName}", ${singlpar.name}, ${singlpar.sqlType});
+[@jdbcCall query=query method="queryForObject" binding="named" extractor="mapper"/]
 [/#if]
-        return jt.queryForObject(sql, params, mapper);
     }
 [#if useIterableJdbcTemplate]
 
@@ -297,17 +1115,20 @@ ${modifier}class ${className} {
      * @return iterator of mapped objects
      * @throws DataAccessException on query error
      */
-    ${modifier}<${rowMapperGenericParam}> CloseableIterator<T> ${query.name}Iterator(${singlpar.type} ${singlpar.name}, RowMapper<T> mapper[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
-        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", ${singlpar.name}, mapper);
+    ${modifier}<${rowMapperGenericParam}> CloseableIterator<T> ${query.name}Iterator(final ${singlpar.type} ${singlpar.name}, RowMapper<T> mapper[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+[#if query.preparsed]
+        checkArgs([#if singlpar.primitive]""[#else]${singlpar.name}[/#if], mapper);
+[@singleParamSetter query=query param=singlpar/]
+[@jdbcCall query=query method="queryForIter" binding="pss" sql=query.name + "Sql" extractor="mapper"/]
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", [#if singlpar.primitive]""[#else]${singlpar.name}[/#if], mapper);
 [#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
 [/#if]
-        Map<String, Object> params = new HashMap<String, Object>(1);
-        params.put("${singlpar.name}", ${singlpar.name});
-[#if useUnderscoredToCamel]
-        params.put(camelToUnderscored("${singlpar.name}"), ${singlpar.name});
+        SqlParameterSource params = new SingleParamSource("${singlpar.name}", "${singlpar.sqlName}", ${singlpar.name}, ${singlpar.sqlType});
+[@jdbcCall query=query method="queryForIter" binding="named" extractor="mapper"/]
 [/#if]
-        return jt.queryForIter(sql, params, mapper);
     }
 [#if useCloseableIterables]
 
@@ -319,7 +1140,7 @@ ${modifier}class ${className} {
      * @param <T> row mapper return type
      * @return closeable iterable for "${query.name}" query
      */
-    ${modifier}<${rowMapperGenericParam}> CloseableIterable<T> ${query.name}Iterable(final ${singlpar.type} ${singlpar.name}, final RowMapper<T> mapper[#if query.template], final Object... substitutions[/#if]) {
+    ${modifier}<${rowMapperGenericParam}> CloseableIterable<T> ${query.name}Iterable(final ${singlpar.type} ${singlpar.name}, final RowMapper<T> mapper[#if query.template], final [@substitutionsType query/] substitutions[/#if]) {
         return new CloseableIterable<T>() {
             @Override
             protected CloseableIterator<T> closeableIterator() {
@@ -339,12 +1160,13 @@ ${modifier}class ${className} {
      * @return list of mapped objects
      * @throws DataAccessException on query error
      */
-    ${modifier}<${rowMapperGenericParam}> List<T> ${query.name}(RowMapper<T> mapper[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
+    ${modifier}<${rowMapperGenericParam}> List<T> ${query.name}(RowMapper<T> mapper[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
         String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", "", mapper);
 [#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
 [/#if]
-        return jt.getJdbcOperations().query(sql, mapper);
+[@jdbcCall query=query method="query" binding="none" extractor="mapper"/]
     }
 
     /**
@@ -357,12 +1179,13 @@ ${modifier}class ${className} {
      * @throws IncorrectResultSizeDataAccessException if not one row returned
      * @throws DataAccessException on query error
      */
-    ${modifier}<${rowMapperGenericParam}> T ${query.name}Single(RowMapper<T> mapper[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
+    ${modifier}<${rowMapperGenericParam}> T ${query.name}Single(RowMapper<T> mapper[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
         String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", "", mapper);
 [#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
 [/#if]
-        return jt.getJdbcOperations().queryForObject(sql, mapper);
+[@jdbcCall query=query method="queryForObject" binding="none" extractor="mapper"/]
     }
 [#if useIterableJdbcTemplate]
 
@@ -374,12 +1197,13 @@ ${modifier}class ${className} {
      * @return iterator of mapped objects
      * @throws DataAccessException on query error
      */
-    ${modifier}<${rowMapperGenericParam}> CloseableIterator<T> ${query.name}Iterator(RowMapper<T> mapper[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
+    ${modifier}<${rowMapperGenericParam}> CloseableIterator<T> ${query.name}Iterator(RowMapper<T> mapper[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
         String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", "", mapper);
 [#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
 [/#if]
-        return jt.getIterableJdbcOperations().queryForIter(sql, mapper);
+[@jdbcCall query=query method="queryForIter" binding="none" extractor="mapper"/]
     }
 [#if useCloseableIterables]
 
@@ -390,7 +1214,7 @@ ${modifier}class ${className} {
      * @param <T> row mapper return type
      * @return closeable iterable for "${query.name}" query
      */
-    ${modifier}<${rowMapperGenericParam}> CloseableIterable<T> ${query.name}Iterable(final RowMapper<T> mapper[#if query.template], final Object... substitutions[/#if]) {
+    ${modifier}<${rowMapperGenericParam}> CloseableIterable<T> ${query.name}Iterable(final RowMapper<T> mapper[#if query.template], final [@substitutionsType query/] substitutions[/#if]) {
         return new CloseableIterable<T>() {
             @Override
             protected CloseableIterator<T> closeableIterator() {
@@ -401,468 +1225,3924 @@ ${modifier}class ${className} {
 [/#if]
 [/#if]
 [/#if]
+[#if query.columnArrays]
+
+    /**
+     * Results of "${query.name}" query collected into primitive arrays, one array per column
+     */
+    ${modifier}static class ${query.name?cap_first}ColumnArrays {
+        private int size = 0;
+[#list query.columns as col]
+        private ${col.type}[] ${col.name} = new ${col.type}[64];
+        private final BitSet ${col.name}Nulls = new BitSet();
 [/#list]
 
-    // update methods
-[#list updates as query]
+        private void add(ResultSet rs) throws SQLException {
+            if(size == ${query.columns?first.name}.length) resize(size * 2);
+[#list query.columns as col]
+            ${col.name}[size] = [@columnValue col=col index=col_index + 1/];
+            if(rs.wasNull()) ${col.name}Nulls.set(size);
+[/#list]
+            size += 1;
+        }
 
-    // ${query.name} methods
-[#if query.params?size > 1]
+        private void resize(int length) {
+[#list query.columns as col]
+            ${col.name} = Arrays.copyOf(${col.name}, length);
+[/#list]
+        }
 
-    /**
-     * Interface for "${query.name}" query parameters
-     */
-    ${modifier}interface ${query.name?cap_first}Params {
-[#list query.params as param]
-        ${param.type} get${param.name?cap_first}();
+        /**
+         * Rows count accessor
+         *
+         * @return number of collected rows
+         */
+        ${modifier}int size() {
+            return size;
+        }
+[#list query.columns as col]
+
+        /**
+         * "${col.sqlName}" column values accessor, {@code NULL} values are represented as default values
+         *
+         * @return column values array with length equal to rows count
+         */
+        ${modifier}${col.type}[] get${col.name?cap_first}() {
+            return ${col.name};
+        }
+
+        /**
+         * "${col.sqlName}" column {@code NULL} values bitmap accessor
+         *
+         * @return bitmap with bits set for rows with {@code NULL} column values
+         */
+        ${modifier}BitSet get${col.name?cap_first}Nulls() {
+            return ${col.name}Nulls;
+        }
 [/#list]
     }
 
+    private static final ResultSetExtractor<${query.name?cap_first}ColumnArrays> ${query.constName}_COLUMNS_EXTRACTOR = new ResultSetExtractor<${query.name?cap_first}ColumnArrays>() {
+        @Override
+        public ${query.name?cap_first}ColumnArrays extractData(ResultSet rs) throws SQLException {
+            ${query.name?cap_first}ColumnArrays res = new ${query.name?cap_first}ColumnArrays();
+            if(rs.next()) {
+                checkColumns(rs, "${query.name}"[#list query.columns as col], "${col.sqlName}"[/#list]);
+                do {
+                    res.add(rs);
+                } while(rs.next());
+            }
+            if(res.size != res.${query.columns?first.name}.length) res.resize(res.size);
+            return res;
+        }
+    };
+
     /**
-     * Executes "${query.name}" query
+     * Executes "${query.name}" query and collects results into primitive arrays, one array per column
      *
-     * @param paramsBean parameters object
-     * @return count of updated rows
+[@paramsDoc query=query/]
+     * @return columns arrays
      * @throws DataAccessException on query error
      */
-    ${modifier}int ${query.name}(${query.name?cap_first}Params paramsBean[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
-        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsBean);
-[#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
+    ${modifier}${query.name?cap_first}ColumnArrays ${query.name}Columns([@methodParams query=query/]) throws DataAccessException {
+[@extractBody query=query extractor=query.constName + "_COLUMNS_EXTRACTOR"/]
+    }
 [/#if]
-        SqlParameterSource params = new ${bpspsClass}(paramsBean);
-        return jt.update(sql, params);
+[#if generateRowCallbacks && query.columnsParsed]
+
+    /**
+     * Reusable view of the current result row of "${query.name}" query, reads columns by their indices,
+     * must not be used outside of the callback call
+     */
+    ${modifier}static final class ${query.name?cap_first}RowView {
+        private final ResultSet rs;
+
+        private ${query.name?cap_first}RowView(ResultSet rs) {
+            this.rs = rs;
+        }
+[#list query.columns as col]
+
+        /**
+         * "${col.sqlName}" column value accessor
+         *
+         * @return column value of the current row
+         * @throws SQLException on result set access error
+         */
+        ${modifier}${col.type} get${col.name?cap_first}() throws SQLException {
+            return [@columnValue col=col index=col_index + 1/];
+        }
+[/#list]
+
+        /**
+         * Whether the last accessed column value was {@code NULL}
+         *
+         * @return whether the last accessed column value was {@code NULL}
+         * @throws SQLException on result set access error
+         */
+        ${modifier}boolean wasNull() throws SQLException {
+            return rs.wasNull();
+        }
     }
-[#if useCheckSingleRowUpdates]
 
     /**
-     * Executes "${query.name}" query and checks that exactly one row was updated
+     * Callback for "${query.name}" query results
+     */
+    ${modifier}interface ${query.name?cap_first}RowCallback {
+        /**
+         * Processes current result row, called once for each row
+         *
+         * @param row reusable current row view
+         * @throws SQLException on result set access error
+         */
+        void processRow(${query.name?cap_first}RowView row) throws SQLException;
+    }
+
+    private static class ${query.name?cap_first}ForEachExtractor implements ResultSetExtractor<Long> {
+        private final ${query.name?cap_first}RowCallback callback;
+
+        private ${query.name?cap_first}ForEachExtractor(${query.name?cap_first}RowCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public Long extractData(ResultSet rs) throws SQLException {
+            if(!rs.next()) return 0L;
+            checkColumns(rs, "${query.name}"[#list query.columns as col], "${col.sqlName}"[/#list]);
+            ${query.name?cap_first}RowView row = new ${query.name?cap_first}RowView(rs);
+            long count = 0;
+            do {
+                callback.processRow(row);
+                count += 1;
+            } while(rs.next());
+            return count;
+        }
+    }
+
+    /**
+     * Executes "${query.name}" query and passes each result row to the callback
+     * using single reusable row view
      *
-     * @param paramsBean parameters object
-     * @throws IncorrectResultSizeDataAccessException if not one row was updated
+[@paramsDoc query=query/]
+     * @param callback result rows callback
+     * @return number of processed rows
      * @throws DataAccessException on query error
      */
-    ${modifier}void ${query.name}Single(${query.name?cap_first}Params paramsBean[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
-        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsBean);
-[#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
-[/#if]
-        SqlParameterSource params = new ${bpspsClass}(paramsBean);
-        int updatedRowsCount = jt.update(sql, params);
-        checkSingleRowUpdated(updatedRowsCount);
+    ${modifier}long ${query.name}ForEach([@methodParams query=query extra="${query.name?cap_first}RowCallback callback"/]) throws DataAccessException {
+        if(null == callback) throw new QueryException("Provided callback is null");
+[@extractBody query=query extractor="new ${query.name?cap_first}ForEachExtractor(callback)"/]
     }
 [/#if]
-[#if useBatchInserts]
+[#if generateExports && query.columnsParsed]
+
+    private static final class ${query.name?cap_first}ExportExtractor implements ResultSetExtractor<Long> {
+        private final ExportWriter writer;
+
+        private ${query.name?cap_first}ExportExtractor(ExportWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public Long extractData(ResultSet rs) throws SQLException {
+            try {
+                writer.writeHeader([#list query.columns as col]"${col.sqlName}"[#if col_has_next], [/#if][/#list]);
+                long count = 0;
+                while(rs.next()) {
+                    if(0 == count) checkColumns(rs, "${query.name}"[#list query.columns as col], "${col.sqlName}"[/#list]);
+                    writer.startRow(${query.columns?size});
+[#list query.columns as col]
+                    [@exportValue col=col index=col_index + 1/];
+[/#list]
+                    writer.endRow();
+                    count += 1;
+                }
+                writer.flush();
+                return count;
+            } catch(IOException e) {
+                throw new QueryException("Error exporting results of query: [${query.name}]", e);
+            }
+        }
+    }
 
     /**
-     * Executes "${query.name}" query in batch mode
+     * Executes "${query.name}" query and writes result rows to provided channel in specified format,
+     * rows are encoded directly from result set into reusable buffer without intermediate objects
      *
-     * @param paramsIter parameters iterator
-     * @param batchSize single batch size
-     * @return count of updated rows
-     * @throws DataAccessException on query error
+[@paramsDoc query=query/]
+     * @param channel blocking channel to write results to, is not closed by this method
+     * @param format export format
+     * @return number of exported rows
+     * @throws DataAccessException on query error or channel IO error
      */
-    ${modifier}int ${query.name}Batch(Iterator<? extends ${query.name?cap_first}Params> paramsIter, int batchSize[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
-        if(batchSize <= 0) throw new QueryException("Provided batchSize must be positive: [" + batchSize + "]");
-        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsIter);
-[#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
-[/#if]
-        return batchUpdate(sql, paramsIter, batchSize);
+    ${modifier}long ${query.name}Export([@methodParams query=query extra="WritableByteChannel channel, ExportFormat format"/]) throws DataAccessException {
+        if(null == channel) throw new QueryException("Provided channel is null");
+        if(null == format) throw new QueryException("Provided format is null");
+[@extractBody query=query extractor="new ${query.name?cap_first}ExportExtractor(new ExportWriter(channel, format))"/]
     }
 [/#if]
-[#elseif query.params?size == 1]
-[#assign singlpar = query.params[0]]
+[#if prefetch]
 
     /**
-     * Executes "${query.name}" query
+     * Returns iterator, that executes "${query.name}" query in background task, reads and maps results
+     * using provided mapper and passes them to the caller in chunks. Query is executed on executor thread
+     * with its own connection, so it doesn't participate in the caller transaction.
      *
-     * @param ${singlpar.name} query single parameter
-     * @return count of updated rows
-     * @throws DataAccessException on query error
+[@paramsDoc query=query/]
+     * @param mapper row mapper
+     * @param executor executor to run background query task
+     * @param chunkSize number of rows in chunk, no more than two chunks are buffered at any time
+     * @param <T> row mapper return type
+     * @return iterator of mapped objects, query errors are thrown from its methods
+     * @throws DataAccessException on invalid arguments
      */
-    ${modifier}int ${query.name}(${singlpar.type} ${singlpar.name}[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
-        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", ${singlpar.name});
-[#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
-[/#if]
-        Map<String, Object> params = new HashMap<String, Object>(1);
-        params.put("${singlpar.name}", ${singlpar.name});
-[#if useUnderscoredToCamel]
-        params.put(camelToUnderscored("${singlpar.name}"), ${singlpar.name});
-[/#if]
-        return jt.update(sql, params);
+    ${modifier}<${rowMapperGenericParam}> CloseableIterator<T> ${query.name}PrefetchIterator([@methodParams query=query extra="final RowMapper<T> mapper, Executor executor, int chunkSize"/]) throws DataAccessException {
+        if(null == mapper) throw new QueryException("Provided mapper object is null");
+        if(null == executor) throw new QueryException("Provided executor is null");
+        if(chunkSize <= 0) throw new QueryException("Provided chunkSize must be positive: [" + chunkSize + "]");
+        PrefetchIterator<T> iter = new PrefetchIterator<T>(chunkSize) {
+            @Override
+            protected CloseableIterator<T> open() {
+                return ${query.name}Iterator([@invokeArgs query=query extra="mapper"/]);
+            }
+        };
+        executor.execute(iter);
+        return iter;
     }
-[#if useCheckSingleRowUpdates]
+[/#if]
+[#if streams]
 
     /**
-     * Executes "${query.name}" query and checks that exactly one row was updated
+     * Executes "${query.name}" query and returns sequential stream of results mapped using provided mapper,
+     * stream must be closed to release database resources
      *
-     * @param ${singlpar.name} query single parameter
-     * @throws IncorrectResultSizeDataAccessException if not one row was updated
+[@paramsDoc query=query/]
+     * @param mapper row mapper
+     * @param <T> row mapper return type
+     * @return stream of mapped objects backed by query cursor
      * @throws DataAccessException on query error
      */
-    ${modifier}void ${query.name}Single(${singlpar.type} ${singlpar.name}[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
-        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", ${singlpar.name});
-[#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
-[/#if]
-        Map<String, Object> params = new HashMap<String, Object>(1);
-        params.put("${singlpar.name}", ${singlpar.name});
-[#if useUnderscoredToCamel]
-        params.put(camelToUnderscored("${singlpar.name}"), ${singlpar.name});
-[/#if]
-        int updatedRowsCount = jt.update(sql, params);
-        checkSingleRowUpdated(updatedRowsCount);
+    ${modifier}<${rowMapperGenericParam}> Stream<T> ${query.name}Stream([@methodParams query=query extra="RowMapper<T> mapper"/]) throws DataAccessException {
+        CloseableIterator<T> iter = ${query.name}Iterator([#if query.params?size > 0][@callArgs query=query/], [/#if]mapper[#if query.template], substitutions[/#if]);
+        return stream(iter);
     }
 [/#if]
-[#if useBatchInserts]
+[#if publishers]
 
     /**
-     * Interface for "${query.name}" query parameters
+     * Returns publisher for "${query.name}" query, query is executed on each subscription
+     * and rows are read from the query cursor and mapped only as subscriber requests them,
+     * statement fetch size is set from the subscriber demand on query execution
+     *
+[@paramsDoc query=query/]
+     * @param mapper row mapper
+     * @param executor executor to run query and to read rows
+     * @param <T> row mapper return type
+     * @return publisher of mapped objects
      */
-    ${modifier}interface ${query.name?cap_first}Params {
-[#list query.params as param]
-        ${param.type} get${param.name?cap_first}();
-[/#list]
+    ${modifier}<${rowMapperGenericParam}> Publisher<T> ${query.name}Publisher([@methodParams query=query extra="final RowMapper<T> mapper, Executor executor"/]) {
+        if(null == mapper) throw new QueryException("Provided mapper object is null");
+        if(null == executor) throw new QueryException("Provided executor is null");
+        return new IteratorPublisher<T>(executor) {
+            @Override
+            protected CloseableIterator<T> open(long demand) {
+                StatementSettings settings = demandSettings(demand, [#if query.statementSettings]${query.constName}_SETTINGS[#else]null[/#if]);
+                return ${query.name}Iterator(settings, [@invokeArgs query=query extra="mapper"/]);
+            }
+        };
     }
 
     /**
-     * Executes "${query.name}" query in batch mode
+     * Executes "${query.name}" query with provided statement settings, maps results
+     * using provided mapper and returns them as closeable iterator
      *
-     * @param paramsIter parameters iterator
-     * @param batchSize single batch size
-     * @return count of updated rows
+     * @param statementSettings statement settings
+[@paramsDoc query=query/]
+     * @param mapper row mapper
+     * @param <T> row mapper return type
+     * @return iterator of mapped objects
      * @throws DataAccessException on query error
      */
-    ${modifier}int ${query.name}Batch(Iterator<? extends ${query.name?cap_first}Params> paramsIter, int batchSize[#if query.template], Object... substitutions[/#if]) throws DataAccessException {
-        if(batchSize <= 0) throw new QueryException("Provided batchSize must be positive: [" + batchSize + "]");
-        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsIter);
-[#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
-[/#if]
-        return batchUpdate(sql, paramsIter, batchSize);
+    private <${rowMapperGenericParam}> CloseableIterator<T> ${query.name}Iterator(StatementSettings statementSettings, [@methodParams query=query extra="RowMapper<T> mapper"/]) throws DataAccessException {
+[@extractBody query=query extractor="mapper" method="queryForIter" settings="statementSettings"/]
     }
 [/#if]
-[#else]
+[#if async]
 
     /**
-     * Executes "${query.name}" query
+     * Executes "${query.name}" query asynchronously, maps results using provided mapper
      *
-     * @return count of updated rows
-     * @throws DataAccessException on query error
+[@paramsDoc query=query/]
+     * @param mapper row mapper
+     * @param <T> row mapper return type
+     * @return future of mapped objects list
+     * @throws DataAccessException if no executor for async methods was provided
      */
-    ${modifier}int ${query.name}([#if query.template]Object... substitutions[/#if]) {
-        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", "");
-[#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
-[/#if]
-        return jt.getJdbcOperations().update(sql);
+    ${modifier}<${rowMapperGenericParam}> CompletableFuture<List<T>> ${query.name}Async([@methodParams query=query extra="final RowMapper<T> mapper"/]) throws DataAccessException {
+        return async(() -> ${query.name}([@invokeArgs query=query extra="mapper"/]));
     }
-[#if useCheckSingleRowUpdates]
 
     /**
-     * Executes "${query.name}" query and checks that exactly one row was updated
+     * Executes "${query.name}" query asynchronously, checks that only one row was returned
+     * and maps it using provided mapper
      *
-     * @throws IncorrectResultSizeDataAccessException if not one row was updated
-     * @throws DataAccessException on query error
+[@paramsDoc query=query/]
+     * @param mapper row mapper
+     * @param <T> row mapper return type
+     * @return future of mapped object
+     * @throws DataAccessException if no executor for async methods was provided
      */
-    ${modifier}void ${query.name}Single([#if query.template]Object... substitutions[/#if]) {
-        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", "");
-[#if query.template]
-        String sql = substitute(sqlTemplate, substitutions);
-[/#if]
-        int updatedRowsCount =  jt.getJdbcOperations().update(sql);
-        checkSingleRowUpdated(updatedRowsCount);
+    ${modifier}<${rowMapperGenericParam}> CompletableFuture<T> ${query.name}SingleAsync([@methodParams query=query extra="final RowMapper<T> mapper"/]) throws DataAccessException {
+        return async(() -> ${query.name}Single([@invokeArgs query=query extra="mapper"/]));
     }
 [/#if]
-[/#if]
-[/#list]
-
-    // private helper methods
+[#if lazyLists]
 
     /**
-     * Checks client-provided arguments and returns query sql text
+     * Returns read-only list of "${query.name}" query results, query is executed on first access
+     * and rows are read from the query cursor and mapped by pages as list elements are accessed
      *
-     * @param name query name
-     * @param paramsBean query parameters
+[@paramsDoc query=query/]
      * @param mapper row mapper
-     * @return query sql text
-     * @throws DataAccessException if provided arguments are null or queries are inconsistent
+     * @param pageSize number of rows in page
+     * @param maxPages max number of pages kept in memory, least recently used pages are evicted
+     * @param <T> row mapper return type
+     * @return lazily paged list of mapped objects
+     * @throws DataAccessException on invalid arguments
      */
-    private String checkAndGetSql(String name, Object paramsBean, RowMapper<?> mapper) throws DataAccessException {
-        if(null == paramsBean) throw new QueryException("Provided params object is null");
+    ${modifier}<${rowMapperGenericParam}> LazyList<T> ${query.name}LazyList([@methodParams query=query extra="final RowMapper<T> mapper, int pageSize, int maxPages"/]) throws DataAccessException {
         if(null == mapper) throw new QueryException("Provided mapper object is null");
-        String sql = queries.get(name);
-        if(null == sql) throw new QueryException("No query found with name: [" + name + "], queries: [" + queries.keySet() + "]");
-        return sql;
+        if(pageSize <= 0) throw new QueryException("Provided pageSize must be positive: [" + pageSize + "]");
+        if(maxPages <= 0) throw new QueryException("Provided maxPages must be positive: [" + maxPages + "]");
+        return new LazyList<T>(pageSize, maxPages, new CursorSource<T>() {
+            @Override
+            public CloseableIterator<T> open() {
+                return ${query.name}Iterator([@invokeArgs query=query extra="mapper"/]);
+            }
+        });
     }
+[/#if]
+[#if query.pageable]
+[#assign key = query.pageKey]
 
     /**
-     * Checks client-provided arguments and returns query sql text
+     * Executes "${query.name}" query using keyset pagination by "${key.sqlName}" column,
+     * returns no more than {@code limit} rows following the specified key
      *
-     * @param name query name
-     * @param paramsBean query parameters
-     * @return query sql text
-     * @throws DataAccessException if provided arguments are null or queries are inconsistent
+[@paramsDoc query=query/]
+     * @param afterKey "${key.sqlName}" value of the last row of previous page, {@code null} for the first page
+     * @param limit max number of rows in page, must be positive
+     * @param mapper row mapper
+     * @param <T> row mapper return type
+     * @return page of mapped objects with the key to request next page
+     * @throws DataAccessException on query error or if "${key.sqlName}" values are null or not unique
      */
-    private String checkAndGetSql(String name, Object paramsBean) throws DataAccessException {
-        if(null == paramsBean) throw new QueryException("Provided params object is null");
-        String sql = queries.get(name);
-        if(null == sql) throw new QueryException("No query found with name: [" + name + "], queries: [" + queries.keySet() + "]");
-        return sql;
+    ${modifier}<${rowMapperGenericParam}> Page<T, ${key.boxedType}> ${query.name}Page([@methodParams query=query extra="${key.boxedType} afterKey, int limit, RowMapper<T> mapper"/]) throws DataAccessException {
+        if(limit <= 0) throw new QueryException("Provided limit must be positive: [" + limit + "]");
+        if(null == mapper) throw new QueryException("Provided mapper object is null");
+[#if query.params?size > 1]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsBean);
+[#elseif query.params?size == 1]
+[#assign singlpar = query.params[0]]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", [#if singlpar.primitive]""[#else]${singlpar.name}[/#if]);
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", "");
+[/#if]
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+[#if query.params?size > 1]
+        SqlParameterSource params = new KeysetParamSource(new ${sourceClass}(paramsBean), afterKey, ${key.sqlType});
+[#elseif query.params?size == 1]
+        SqlParameterSource params = new KeysetParamSource(new SingleParamSource("${singlpar.name}", "${singlpar.sqlName}", ${singlpar.name}, ${singlpar.sqlType}),
+                afterKey, ${key.sqlType});
+[#else]
+        SqlParameterSource params = new KeysetParamSource(null, afterKey, ${key.sqlType});
+[/#if]
+        String pageSql = keysetSql(sql, "${key.sqlName}", null != afterKey);
+        return queryLimited(jt, [@settingsArg query=query/]parsedSql(pageSql), params, Integer.MAX_VALUE == limit ? limit : limit + 1,
+                new PageExtractor<T, ${key.boxedType}>(limit, mapper, "${key.sqlName}", ${key.boxedType}.class));
+    }
+
+    /**
+     * Returns iterator over all "${query.name}" query results, results are read by pages
+     * of {@code pageSize} rows using keyset pagination by "${key.sqlName}" column,
+     * each page is read with separate query
+     *
+[@paramsDoc query=query/]
+     * @param pageSize number of rows in page, must be positive
+     * @param mapper row mapper
+     * @param <T> row mapper return type
+     * @return iterator of mapped objects
+     * @throws DataAccessException on invalid arguments
+     */
+    ${modifier}<${rowMapperGenericParam}> Iterator<T> ${query.name}AllPages([@methodParams query=query extra="final int pageSize, final RowMapper<T> mapper"/]) throws DataAccessException {
+        if(pageSize <= 0) throw new QueryException("Provided pageSize must be positive: [" + pageSize + "]");
+        if(null == mapper) throw new QueryException("Provided mapper object is null");
+        return new KeysetIterator<T, ${key.boxedType}>() {
+            @Override
+            protected Page<T, ${key.boxedType}> fetch(${key.boxedType} afterKey) {
+                return ${query.name}Page([@invokeArgs query=query extra="afterKey, pageSize, mapper"/]);
+            }
+        };
+    }
+[/#if]
+[#if query.spillBuffer]
+
+    /**
+     * Writes and reads "${query.name}" query result rows in compact binary form
+     */
+    private static final RowCodec<${query.name?cap_first}Row> ${query.constName}_ROW_CODEC = new RowCodec<${query.name?cap_first}Row>() {
+        @Override
+        public void write(${query.name?cap_first}Row row, DataOutput out) throws IOException {
+[#list query.columns as col]
+            [@spillWrite col=col value="row." + (col.type == "boolean")?string("is", "get") + col.name?cap_first + "()"/];
+[/#list]
+        }
+
+        @Override
+        public ${query.name?cap_first}Row read(ByteBuffer in) {
+            return new ${query.name?cap_first}Row(
+[#list query.columns as col]
+                    [@spillRead col=col/][#if col_has_next],[#else]);[/#if]
+[/#list]
+        }
+    };
+
+    /**
+     * Executes "${query.name}" query and buffers result rows in compact binary form. Rows are kept
+     * in memory until memory budget is exceeded, then all rows are spilled to temporary file,
+     * that is read back using memory mapping. Buffer may be iterated multiple times.
+     *
+[@paramsDoc query=query/]
+     * @param memoryBudget max number of bytes to keep in memory, must be positive and not exceed 1GB
+     * @param spillDir directory for temporary file, {@code null} to use default temporary directory
+     * @return buffer of result rows, must be closed to delete temporary file
+     * @throws DataAccessException on query error or temporary file IO error
+     */
+    ${modifier}SpillBuffer<${query.name?cap_first}Row> ${query.name}Spilled([@methodParams query=query extra="long memoryBudget, File spillDir"/]) throws DataAccessException {
+        if(memoryBudget <= 0 || memoryBudget > SPILL_SEGMENT_MAX_SIZE) throw new QueryException(
+                "Provided memoryBudget must be positive and not exceed: [" + SPILL_SEGMENT_MAX_SIZE + "], but was: [" + memoryBudget + "]");
+[@extractBody query=query extractor="new SpillExtractor<${query.name?cap_first}Row>(${query.constName}_ROW_MAPPER, ${query.constName}_ROW_CODEC, (int) memoryBudget, spillDir)"/]
+    }
+[/#if]
+[#if limited]
+
+    /**
+     * Executes "${query.name}" query limiting it to single row and checks whether any row was returned
+     *
+[@paramsDoc query=query/]
+     * @return whether query returned at least one row
+     * @throws DataAccessException on query error
+     */
+    ${modifier}boolean ${query.name}Exists([@methodParams query=query/]) throws DataAccessException {
+[@limitedBody query=query extractor="EXISTS_EXTRACTOR" limit="1"/]
+    }
+
+    /**
+     * Executes "${query.name}" query limiting it to specified number of rows,
+     * maps returned rows using provided mapper
+     *
+[@paramsDoc query=query/]
+     * @param limit max number of rows to read, must be positive
+     * @param mapper row mapper
+     * @param <T> row mapper return type
+     * @return list of no more than {@code limit} mapped objects
+     * @throws DataAccessException on query error
+     */
+    ${modifier}<${rowMapperGenericParam}> List<T> ${query.name}First([@methodParams query=query extra="int limit, RowMapper<T> mapper"/]) throws DataAccessException {
+        if(limit <= 0) throw new QueryException("Provided limit must be positive: [" + limit + "]");
+        if(null == mapper) throw new QueryException("Provided mapper object is null");
+[@limitedBody query=query extractor="new FirstRowsExtractor<T>(limit, mapper)" limit="limit"/]
+    }
+[/#if]
+[/#list]
+
+    // update methods
+[#list updates as query]
+[#if generateParamsSources][#assign sourceClass=query.name?cap_first + "ParamsSource"][#else][#assign sourceClass=bpspsClass][/#if]
+
+    // ${query.name} methods
+[#if query.params?size > 1]
+
+    /**
+     * Interface for "${query.name}" query parameters
+     */
+    ${modifier}interface ${query.name?cap_first}Params {
+[#list query.params as param]
+        ${param.type} get${param.name?cap_first}();
+[/#list]
+    }
+[@paramsSource query=query batch=useBatchInserts/]
+
+    /**
+     * Executes "${query.name}" query
+     *
+     * @param paramsBean parameters object
+     * @return count of updated rows
+     * @throws DataAccessException on query error
+     */
+    ${modifier}int ${query.name}(${query.name?cap_first}Params paramsBean[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+[#if query.preparsed]
+        checkArgs(paramsBean);
+        Object[] args = [@positionalArgs query=query bean="paramsBean"/];
+[@jdbcCall query=query method="update" binding="args" sql=query.name + "Sql"/]
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsBean);
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        SqlParameterSource params = new ${sourceClass}(paramsBean);
+[@jdbcCall query=query method="update" binding="named"/]
+[/#if]
+    }
+[#if useCheckSingleRowUpdates]
+
+    /**
+     * Executes "${query.name}" query and checks that exactly one row was updated
+     *
+     * @param paramsBean parameters object
+     * @throws IncorrectResultSizeDataAccessException if not one row was updated
+     * @throws DataAccessException on query error
+     */
+    ${modifier}void ${query.name}Single(${query.name?cap_first}Params paramsBean[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+[#if query.preparsed]
+        checkArgs(paramsBean);
+        Object[] args = [@positionalArgs query=query bean="paramsBean"/];
+[@jdbcCall query=query method="update" binding="args" sql=query.name + "Sql" result="int updatedRowsCount = "/]
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsBean);
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        SqlParameterSource params = new ${sourceClass}(paramsBean);
+[@jdbcCall query=query method="update" binding="named" result="int updatedRowsCount = "/]
+[/#if]
+        checkSingleRowUpdated(updatedRowsCount);
+    }
+[/#if]
+[#if useBatchInserts]
+
+    /**
+     * Executes "${query.name}" query in batch mode
+     *
+     * @param paramsIter parameters iterator
+     * @param batchSize single batch size
+     * @return count of updated rows
+     * @throws DataAccessException on query error
+     */
+    ${modifier}int ${query.name}Batch(Iterator<? extends ${query.name?cap_first}Params> paramsIter, int batchSize[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+        if(batchSize <= 0) throw new QueryException("Provided batchSize must be positive: [" + batchSize + "]");
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsIter);
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        return batchUpdate(jt, [@settingsArg query=query/]sql, paramsIter, batchSize, [#if generateParamsSources]${sourceClass}.FACTORY[#else]BEAN_PROPERTY_SOURCE_FACTORY[/#if]);
+    }
+[@batchVariants query=query/]
+[/#if]
+[#elseif query.params?size == 1]
+[#assign singlpar = query.params[0]]
+
+    /**
+     * Executes "${query.name}" query
+     *
+     * @param ${singlpar.name} query single parameter
+     * @return count of updated rows
+     * @throws DataAccessException on query error
+     */
+    ${modifier}int ${query.name}(final ${singlpar.type} ${singlpar.name}[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+[#if query.preparsed]
+[#if !singlpar.primitive]
+        checkArgs(${singlpar.name});
+[/#if]
+[@singleParamSetter query=query param=singlpar/]
+[@jdbcCall query=query method="update" binding="pss" sql=query.name + "Sql"/]
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", [#if singlpar.primitive]""[#else]${singlpar.name}[/#if]);
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        SqlParameterSource params = new SingleParamSource("${singlpar.name}", "${singlpar.sqlName}", ${singlpar.name}, ${singlpar.sqlType});
+[@jdbcCall query=query method="update" binding="named"/]
+[/#if]
+    }
+[#if useCheckSingleRowUpdates]
+
+    /**
+     * Executes "${query.name}" query and checks that exactly one row was updated
+     *
+     * @param ${singlpar.name} query single parameter
+     * @throws IncorrectResultSizeDataAccessException if not one row was updated
+     * @throws DataAccessException on query error
+     */
+    ${modifier}void ${query.name}Single(final ${singlpar.type} ${singlpar.name}[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+[#if query.preparsed]
+[#if !singlpar.primitive]
+        checkArgs(${singlpar.name});
+[/#if]
+[@singleParamSetter query=query param=singlpar/]
+[@jdbcCall query=query method="update" binding="pss" sql=query.name + "Sql" result="int updatedRowsCount = "/]
+[#else]
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", [#if singlpar.primitive]""[#else]${singlpar.name}[/#if]);
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        SqlParameterSource params = new SingleParamSource("${singlpar.name}", "${singlpar.sqlName}", ${singlpar.name}, ${singlpar.sqlType});
+[@jdbcCall query=query method="update" binding="named" result="int updatedRowsCount = "/]
+[/#if]
+        checkSingleRowUpdated(updatedRowsCount);
+    }
+[/#if]
+[#if useBatchInserts]
+
+    /**
+     * Interface for "${query.name}" query parameters
+     */
+    ${modifier}interface ${query.name?cap_first}Params {
+[#list query.params as param]
+        ${param.type} get${param.name?cap_first}();
+[/#list]
+    }
+[@paramsSource query=query batch=useBatchInserts/]
+
+    /**
+     * Executes "${query.name}" query in batch mode
+     *
+     * @param paramsIter parameters iterator
+     * @param batchSize single batch size
+     * @return count of updated rows
+     * @throws DataAccessException on query error
+     */
+    ${modifier}int ${query.name}Batch(Iterator<? extends ${query.name?cap_first}Params> paramsIter, int batchSize[#if query.template], [@substitutionsType query/] substitutions[/#if]) throws DataAccessException {
+        if(batchSize <= 0) throw new QueryException("Provided batchSize must be positive: [" + batchSize + "]");
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", paramsIter);
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+        return batchUpdate(jt, [@settingsArg query=query/]sql, paramsIter, batchSize, [#if generateParamsSources]${sourceClass}.FACTORY[#else]BEAN_PROPERTY_SOURCE_FACTORY[/#if]);
+    }
+[@batchVariants query=query/]
+[/#if]
+[#else]
+
+    /**
+     * Executes "${query.name}" query
+     *
+     * @return count of updated rows
+     * @throws DataAccessException on query error
+     */
+    ${modifier}int ${query.name}([#if query.template][@substitutionsType query/] substitutions[/#if]) {
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", "");
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+[@jdbcCall query=query method="update" binding="none"/]
+    }
+[#if useCheckSingleRowUpdates]
+
+    /**
+     * Executes "${query.name}" query and checks that exactly one row was updated
+     *
+     * @throws IncorrectResultSizeDataAccessException if not one row was updated
+     * @throws DataAccessException on query error
+     */
+    ${modifier}void ${query.name}Single([#if query.template][@substitutionsType query/] substitutions[/#if]) {
+        String sql[#if query.template]Template[/#if] = checkAndGetSql("${query.name}", "");
+[#if query.template]
+        RenderedSql rendered = substitute(sqlTemplate, substitutions);
+        String sql = rendered.sql;
+[/#if]
+[@jdbcCall query=query method="update" binding="none" result="int updatedRowsCount = "/]
+        checkSingleRowUpdated(updatedRowsCount);
+    }
+[/#if]
+[/#if]
+[#if async]
+
+    /**
+     * Executes "${query.name}" query asynchronously
+     *
+[@paramsDoc query=query/]
+     * @return future of updated rows count
+     * @throws DataAccessException if no executor for async methods was provided
+     */
+    ${modifier}CompletableFuture<Integer> ${query.name}Async([@methodParams query=query/]) throws DataAccessException {
+        return async(() -> ${query.name}([@invokeArgs query=query/]));
+    }
+[#if useCheckSingleRowUpdates]
+
+    /**
+     * Executes "${query.name}" query asynchronously and checks that exactly one row was updated
+     *
+[@paramsDoc query=query/]
+     * @return future completed after update
+     * @throws DataAccessException if no executor for async methods was provided
+     */
+    ${modifier}CompletableFuture<Void> ${query.name}SingleAsync([@methodParams query=query/]) throws DataAccessException {
+        return async(() -> {
+            ${query.name}Single([@invokeArgs query=query/]);
+            return null;
+        });
+    }
+[/#if]
+[/#if]
+[/#list]
+
+    // private helper methods
+[#if tunesStatements]
+
+    /**
+     * Wraps provided setter to apply query directives, returns setter itself if query has no directives
+     *
+     * @param settings statement settings from query directives, may be null
+     * @param setter statement setter
+     * @return statement setter that applies directives
+     */
+    private static PreparedStatementSetter tuned(StatementSettings settings, PreparedStatementSetter setter) {
+        return null != settings && !settings.defaults ? settings.setter(setter) : setter;
+    }
+
+    /**
+     * Wraps provided batch setter to apply query directives, returns setter itself if query has no directives
+     *
+     * @param settings statement settings from query directives, may be null
+     * @param setter batch statement setter
+     * @return batch statement setter that applies directives
+     */
+    private static BatchPreparedStatementSetter tuned(StatementSettings settings, final BatchPreparedStatementSetter setter) {
+        if(null == settings || settings.defaults) return setter;
+        final StatementSettings st = settings;
+        return new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                // the same statement is used for all rows of the batch
+                if(0 == i) st.apply(ps);
+                setter.setValues(ps, i);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return setter.getBatchSize();
+            }
+        };
+    }
+
+    /**
+     * Executes named parameters batch applying query directives,
+     * parameters are bound the same way as in {@code NamedParameterJdbcTemplate}
+     *
+     * @param template jdbc template
+     * @param settings statement settings from query directives, may be null
+     * @param sql query text with named parameters
+     * @param params batch parameters
+     * @return number of updated rows for each batch element
+     * @throws DataAccessException on query error
+     */
+    private int[] namedBatchUpdate(${jtClass} template, StatementSettings settings, String sql,
+                                   final SqlParameterSource[] params) throws DataAccessException {
+        if(null == settings || settings.defaults) return template.batchUpdate(sql, params);
+        final ParsedSql parsed = parsedSql(sql);
+        String sqlToUse = NamedParameterUtils.substituteNamedParameters(parsed, params[0]);
+        return template.getJdbcOperations().batchUpdate(sqlToUse, tuned(settings, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Object[] args = NamedParameterUtils.buildValueArray(parsed, params[i], null);
+                int[] types = NamedParameterUtils.buildSqlTypeArray(parsed, params[i]);
+                for(int j = 0; j < args.length; j++) {
+                    StatementCreatorUtils.setParameterValue(ps, j + 1, types[j], args[j]);
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return params.length;
+            }
+        }));
+    }
+
+    /**
+     * Statement settings from query directives, {@code -1} means that template setting is used.
+     * Settings are applied by statement setters, that are called after template statement settings,
+     * so fetch size and max rows from directives take precedence over template ones. Query timeout
+     * is only lowered, so shorter template timeout or transaction deadline is preserved.
+     */
+    private static final class StatementSettings {
+        private final int fetchSize;
+        private final int queryTimeout;
+        private final int maxRows;
+        // all template settings are used, statement is not touched
+        private final boolean defaults;
+
+        private StatementSettings(int fetchSize, int queryTimeout, int maxRows) {
+            this.fetchSize = fetchSize;
+            this.queryTimeout = queryTimeout;
+            this.maxRows = maxRows;
+            this.defaults = -1 == fetchSize && -1 == queryTimeout && -1 == maxRows;
+        }
+
+        private void apply(PreparedStatement ps) throws SQLException {
+            if(-1 != queryTimeout && (0 == ps.getQueryTimeout() || ps.getQueryTimeout() > queryTimeout)) {
+                ps.setQueryTimeout(queryTimeout);
+            }
+            if(-1 != maxRows) ps.setMaxRows(maxRows);
+            int fetch = -1 != fetchSize ? fetchSize : ps.getFetchSize();
+            // some drivers reject fetch size larger than max rows
+            if(ps.getMaxRows() > 0 && fetch > ps.getMaxRows()) fetch = ps.getMaxRows();
+            if(fetch != ps.getFetchSize()) ps.setFetchSize(fetch);
+        }
+
+        private PreparedStatementSetter setter(PreparedStatementSetter delegate) {
+            return new SettingsSetter(this, null, delegate, null, null);
+        }
+
+        private PreparedStatementSetter setter(Object[] args, int[] types) {
+            return new SettingsSetter(this, null, null, args, types);
+        }
+
+        private SettingsSetter setter(ParsedSql parsed, SqlParameterSource params) {
+            String sqlToUse = NamedParameterUtils.substituteNamedParameters(parsed, params);
+            Object[] args = NamedParameterUtils.buildValueArray(parsed, params, null);
+            int[] types = NamedParameterUtils.buildSqlTypeArray(parsed, params);
+            PreparedStatementSetter pss = new PreparedStatementCreatorFactory(sqlToUse, types).newPreparedStatementSetter(args);
+            return new SettingsSetter(this, sqlToUse, pss, null, null);
+        }
+    }
+
+    /**
+     * Statement setter, that applies query directives to prepared statement
+     * and sets parameters using delegate setter or provided arguments
+     */
+    private static class SettingsSetter implements PreparedStatementSetter, ParameterDisposer {
+        private final StatementSettings settings;
+        private final String sql;
+        private final PreparedStatementSetter delegate;
+        private final Object[] args;
+        private final int[] types;
+
+        private SettingsSetter(StatementSettings settings, String sql, PreparedStatementSetter delegate, Object[] args, int[] types) {
+            this.settings = settings;
+            this.sql = sql;
+            this.delegate = delegate;
+            this.args = args;
+            this.types = types;
+        }
+
+        /**
+         * @return sql with substituted named parameters, {@code null} for positional parameters
+         */
+        private String getSql() {
+            return sql;
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps) throws SQLException {
+            if(!settings.defaults) settings.apply(ps);
+            if(null != delegate) {
+                delegate.setValues(ps);
+            } else if(null != args) {
+                for(int i = 0; i < args.length; i++) {
+                    StatementCreatorUtils.setParameterValue(ps, i + 1, types[i], args[i]);
+                }
+            }
+        }
+
+        @Override
+        public void cleanupParameters() {
+            if(delegate instanceof ParameterDisposer) {
+                ((ParameterDisposer) delegate).cleanupParameters();
+            } else if(null != args) {
+                StatementCreatorUtils.cleanupParameters(args);
+            }
+        }
+    }
+[/#if]
+[#if async]
+
+    /**
+     * Runs query task on async executor, connection is obtained and released on executor thread,
+     * so query doesn't participate in the caller transaction
+     *
+     * @param task query task
+     * @param <T> query result type
+     * @return future of query result
+     */
+    private <T> CompletableFuture<T> async(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, asyncExecutor);
+    }
+[/#if]
+
+    /**
+     * Checks client-provided arguments and returns query sql text
+     *
+     * @param name query name
+     * @param paramsBean query parameters
+     * @param mapper row mapper
+     * @return query sql text
+     * @throws DataAccessException if provided arguments are null or queries are inconsistent
+     */
+    private String checkAndGetSql(String name, Object paramsBean, RowMapper<?> mapper) throws DataAccessException {
+        if(null == paramsBean) throw new QueryException("Provided params object is null");
+        if(null == mapper) throw new QueryException("Provided mapper object is null");
+        String sql = queries.get(name);
+        if(null == sql) throw new QueryException("No query found with name: [" + name + "], queries: [" + queries.keySet() + "]");
+        return sql;
+    }
+
+    /**
+     * Checks client-provided arguments and returns query sql text
+     *
+     * @param name query name
+     * @param paramsBean query parameters
+     * @return query sql text
+     * @throws DataAccessException if provided arguments are null or queries are inconsistent
+     */
+    private String checkAndGetSql(String name, Object paramsBean) throws DataAccessException {
+        if(null == paramsBean) throw new QueryException("Provided params object is null");
+        String sql = queries.get(name);
+        if(null == sql) throw new QueryException("No query found with name: [" + name + "], queries: [" + queries.keySet() + "]");
+        return sql;
+    }
+[#if usePreparsedQueries]
+
+    /**
+     * Checks client-provided arguments for preparsed query
+     *
+     * @param paramsBean query parameters
+     * @param mapper row mapper
+     * @throws DataAccessException if provided arguments are null
+     */
+    private static void checkArgs(Object paramsBean, RowMapper<?> mapper) throws DataAccessException {
+        if(null == paramsBean) throw new QueryException("Provided params object is null");
+        if(null == mapper) throw new QueryException("Provided mapper object is null");
+    }
+
+    /**
+     * Checks client-provided arguments for preparsed query
+     *
+     * @param paramsBean query parameters
+     * @throws DataAccessException if provided arguments are null
+     */
+    private static void checkArgs(Object paramsBean) throws DataAccessException {
+        if(null == paramsBean) throw new QueryException("Provided params object is null");
+    }
+[/#if]
+[#if usePreparsedQueries || columnsBatches]
+
+    /**
+     * Parses named parameters query into JDBC one and checks that its parameters
+     * are consistent with ones known on generation time
+     *
+     * @param name query name
+     * @param paramsNames query parameters names in order of their occurrence known on generation time
+     * @return query text with named parameters replaced with {@code ?} placeholders
+     * @throws DataAccessException if query parameters are not consistent with generated ones
+     */
+    private String preparse(String name, String... paramsNames) throws DataAccessException {
+        ParsedSql parsed = NamedParameterUtils.parseSqlStatement(queryText(name));
+        Object[] parsedNames = NamedParameterUtils.buildValueArray(parsed, PARAMS_NAMES_SOURCE, null);
+        if(!Arrays.equals(paramsNames, parsedNames)) throw new QueryException(
+                "Provided query: [" + name + "] parameters: [" + Arrays.toString(parsedNames) + "] are non consistent " +
+                "with parameters known on generation time: [" + Arrays.toString(paramsNames) + "]");
+        return NamedParameterUtils.substituteNamedParameters(parsed, null);
+    }
+[/#if]
+[#if readsColumns]
+
+    /**
+     * Checks that result set columns are consistent with ones known on generation time
+     *
+     * @param rs result set
+     * @param name query name
+     * @param columns columns names known on generation time
+     * @throws SQLException on result set metadata access error
+     * @throws DataAccessException if result set columns are not consistent with generated ones
+     */
+    private static void checkColumns(ResultSet rs, String name, String... columns) throws SQLException, DataAccessException {
+        ResultSetMetaData meta = rs.getMetaData();
+        List<String> labels = new ArrayList<String>(meta.getColumnCount());
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            labels.add(JdbcUtils.lookupColumnName(meta, i));
+        }
+        boolean consistent = labels.size() == columns.length;
+        for (int i = 0; consistent && i < columns.length; i++) {
+            consistent = columns[i].equalsIgnoreCase(labels.get(i));
+        }
+        if(!consistent) throw new QueryException(
+                "Query: [" + name + "] result columns: [" + labels + "] are non consistent " +
+                "with columns known on generation time: [" + Arrays.toString(columns) + "]");
+    }
+[/#if]
+[#if useCheckSingleRowUpdates]
+
+    /**
+     * Checks whether provided results size equals '1'
+     *
+     * @param updatedRowsCount results size
+     * @throws IncorrectResultSizeDataAccessException
+     */
+    private void checkSingleRowUpdated(int updatedRowsCount) throws IncorrectResultSizeDataAccessException {
+        if(0 == updatedRowsCount) throw new EmptyResultDataAccessException(1);
+        if(updatedRowsCount > 1) throw new IncorrectResultSizeDataAccessException(1, updatedRowsCount);
+    }
+[/#if]
+[#if useBatchInserts]
+
+    /**
+     * Methods for performing batch inserts using provided iterators as parameters
+     *
+     * @param template jdbc template to execute query with
+[#if hasStatementSettings]
+     * @param settings statement settings from query directives, may be null
+[/#if]
+     * @param sql sql query text
+     * @param paramsIter query parameters iterator
+     * @param batchSize size of single batch
+     * @param factory parameters sources factory
+     * @param <T> parameters type
+     * @return number of updated rows reported by JDBC driver,
+     * {@code -1} if such information is not available
+     */
+    private <T> int batchUpdate(${jtClass} template, [#if hasStatementSettings]StatementSettings settings, [/#if]String sql, Iterator<? extends T> paramsIter, int batchSize, ParamsSourceFactory<? super T> factory) {
+        boolean hasInfoFromDb = true;
+        // mutable for lower overhead
+        SqlParameterSource[] params = new SqlParameterSource[batchSize];
+        int updated = 0;
+        int index = 0;
+        // main cycle
+        while(paramsIter.hasNext()) {
+            params[index] = factory.createSource(paramsIter.next());
+            index += 1;
+            if(0 == index % batchSize) {
+                int[] upArr = [#if hasStatementSettings]namedBatchUpdate(template, settings, sql, params)[#else]template.batchUpdate(sql, params)[/#if];
+                if(hasInfoFromDb) {
+                    int up = countUpdatedRows(upArr);
+                    if(-1 == up) hasInfoFromDb = false;
+                    updated += up;
+                }
+                index = 0;
+            }
+        }
+        // tail
+        if(index > 0) {
+            SqlParameterSource[] partParArray = new SqlParameterSource[index];
+            System.arraycopy(params, 0, partParArray, 0, index);
+            int[] upArr = [#if hasStatementSettings]namedBatchUpdate(template, settings, sql, partParArray)[#else]template.batchUpdate(sql, partParArray)[/#if];
+            if(hasInfoFromDb) {
+                int up = countUpdatedRows(upArr);
+                if(-1 == up) hasInfoFromDb = false;
+                updated += up;
+            }
+        }
+        return hasInfoFromDb ? updated : -1;
+    }
+
+[#if pipelined]
+
+    /**
+     * Method for performing pipelined batch inserts: next batch is bound in background task
+     * while the current one is executed on the calling thread (so it stays within the caller transaction).
+     * Background task resolves parameters values and SQL types from parameters objects,
+     * statement setter only copies them into prepared statement.
+     *
+     * @param template jdbc template to execute query with
+[#if hasStatementSettings]
+     * @param settings statement settings from query directives, may be null
+[/#if]
+     * @param sql sql query text
+     * @param paramsIter query parameters iterator
+     * @param minBatchSize minimal (and initial) batch size
+     * @param maxBatchSize maximal batch size
+     * @param targetBatchMillis desired execution time of a single batch
+     * @param executor executor to bind batches with
+     * @param factory parameters sources factory
+     * @param <T> parameters type
+     * @return number of updated rows reported by JDBC driver,
+     * {@code -1} if such information is not available
+     */
+    private <T> long pipelinedBatchUpdate(${jtClass} template, [#if hasStatementSettings]StatementSettings settings, [/#if]String sql,
+                                          Iterator<? extends T> paramsIter, int minBatchSize, int maxBatchSize, long targetBatchMillis, Executor executor, ParamsSourceFactory<? super T> factory) {
+        if(minBatchSize <= 0) throw new QueryException("Provided minBatchSize must be positive: [" + minBatchSize + "]");
+        if(maxBatchSize < minBatchSize) throw new QueryException(
+                "Provided maxBatchSize: [" + maxBatchSize + "] is less than minBatchSize: [" + minBatchSize + "]");
+        if(targetBatchMillis <= 0) throw new QueryException("Provided targetBatchMillis must be positive: [" + targetBatchMillis + "]");
+        if(null == executor) throw new QueryException("Provided executor is null");
+        ParsedSql parsed = parsedSql(sql);
+        boolean hasInfoFromDb = true;
+        long updated = 0;
+        int batchSize = minBatchSize;
+        FutureTask<PipelinedBatch> binding = bindBatch(parsed, paramsIter, batchSize, factory, executor);
+        try {
+            for(PipelinedBatch batch = awaitBatch(binding); batch.getBatchSize() > 0; batch = awaitBatch(binding)) {
+                // bind next batch while this one is executed
+                binding = bindBatch(parsed, paramsIter, batchSize, factory, executor);
+                long start = System.nanoTime();
+                int[] upArr = template.getJdbcOperations().batchUpdate(batch.sql, [#if hasStatementSettings]tuned(settings, batch)[#else]batch[/#if]);
+                long elapsedMillis = (System.nanoTime() - start) / 1000000;
+                if(hasInfoFromDb) {
+                    int up = countUpdatedRows(upArr);
+                    if(-1 == up) hasInfoFromDb = false;
+                    updated += up;
+                }
+                if(elapsedMillis < targetBatchMillis / 2) batchSize = (int) Math.min(maxBatchSize, batchSize * 2L);
+                else if(elapsedMillis > targetBatchMillis) batchSize = Math.max(minBatchSize, batchSize / 2);
+            }
+        } finally {
+            // do not leave iterator in use by background task
+            awaitQuietly(binding);
+        }
+        return hasInfoFromDb ? updated : -1;
+    }
+
+    private static <T> FutureTask<PipelinedBatch> bindBatch(final ParsedSql parsed, final Iterator<? extends T> paramsIter,
+                                                            final int batchSize, final ParamsSourceFactory<? super T> factory,
+                                                            Executor executor) {
+        FutureTask<PipelinedBatch> res = new FutureTask<PipelinedBatch>(new Callable<PipelinedBatch>() {
+            @Override
+            public PipelinedBatch call() {
+                Object[][] values = new Object[batchSize][];
+                int[][] types = new int[batchSize][];
+                String sql = null;
+                int index = 0;
+                while(index < batchSize && paramsIter.hasNext()) {
+                    SqlParameterSource source = factory.createSource(paramsIter.next());
+                    // the same as in NamedParameterJdbcTemplate, collections are expanded using the first row
+                    if(null == sql) sql = NamedParameterUtils.substituteNamedParameters(parsed, source);
+                    values[index] = NamedParameterUtils.buildValueArray(parsed, source, null);
+                    types[index] = NamedParameterUtils.buildSqlTypeArray(parsed, source);
+                    index += 1;
+                }
+                if(index < batchSize) {
+                    values = Arrays.copyOf(values, index);
+                    types = Arrays.copyOf(types, index);
+                }
+                return new PipelinedBatch(sql, values, types);
+            }
+        });
+        executor.execute(res);
+        return res;
+    }
+
+    private static PipelinedBatch awaitBatch(FutureTask<PipelinedBatch> binding) {
+        try {
+            return binding.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryException("Pipelined batch was interrupted", e);
+        } catch(ExecutionException e) {
+            Throwable err = e.getCause();
+            if(err instanceof RuntimeException) throw (RuntimeException) err;
+            if(err instanceof Error) throw (Error) err;
+            throw new QueryException("Pipelined batch binding failed", err);
+        }
+    }
+
+    /**
+     * Batch with parameters values and SQL types resolved in background task
+     */
+    private static final class PipelinedBatch implements BatchPreparedStatementSetter {
+        private final String sql;
+        private final Object[][] values;
+        private final int[][] types;
+
+        private PipelinedBatch(String sql, Object[][] values, int[][] types) {
+            this.sql = sql;
+            this.values = values;
+            this.types = types;
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps, int i) throws SQLException {
+            Object[] rowValues = values[i];
+            int[] rowTypes = types[i];
+            for(int j = 0; j < rowValues.length; j++) {
+                Object value = rowValues[j];
+                if(value instanceof SqlParameterValue) {
+                    SqlParameterValue paramValue = (SqlParameterValue) value;
+                    StatementCreatorUtils.setParameterValue(ps, j + 1, paramValue, paramValue.getValue());
+                } else {
+                    StatementCreatorUtils.setParameterValue(ps, j + 1, rowTypes[j], value);
+                }
+            }
+        }
+
+        @Override
+        public int getBatchSize() {
+            return values.length;
+        }
+    }
+
+    private static void awaitQuietly(FutureTask<?> binding) {
+        boolean interrupted = false;
+        for(;;) {
+            try {
+                binding.get();
+                break;
+            } catch(InterruptedException e) {
+                interrupted = true;
+            } catch(ExecutionException e) {
+                break;
+            }
+        }
+        if(interrupted) Thread.currentThread().interrupt();
+    }
+[/#if]
+[#if writeBehinds]
+
+    /**
+     * Key extractor and batch executor for write-behind buffer
+     *
+     * @param <T> parameters type
+     */
+    private interface WriteBehindTarget<T> {
+        Object key(T paramsBean);
+
+        int execute(Iterator<? extends T> paramsIter, int batchSize);
+    }
+
+    /**
+     * Combines parameters of two updates with the same key into parameters of single update,
+     * that has the same effect as both of them executed in order
+     *
+     * @param <T> parameters type
+     */
+    ${modifier}interface WriteBehindMerger<T> {
+        /**
+         * Combines buffered parameters with the new ones, must not modify provided objects
+         *
+         * @param buffered parameters of the older update
+         * @param update parameters of the newer update
+         * @return parameters of the combined update, must not be null
+         */
+        T merge(T buffered, T update);
+    }
+
+    /**
+     * Write-behind buffer for update query: buffers updates in concurrent map by key parameter, so repeated
+     * updates with the same key are coalesced using provided merger, and executes buffered updates as a single
+     * batch when buffer size reaches the limit (on the calling thread), on schedule, on explicit flush or on close.
+     * Order of updates with different keys is not preserved. If flush fails with {@link TransientDataAccessException},
+     * updates are merged back into buffer before the newer ones to be retried on the next flush, on other errors
+     * updates are dropped from buffer and are available through {@link #getLastFailedParams()}.
+     *
+     * @param <T> parameters type
+     */
+    ${modifier}static final class WriteBehind<T> implements Closeable {
+        private final WriteBehindTarget<T> target;
+        private final int maxSize;
+        private final TransactionTemplate tt;
+        private final WriteBehindMerger<T> merger;
+        private final ConcurrentHashMap<Object, T> pending = new ConcurrentHashMap<Object, T>();
+        private final Object flushLock = new Object();
+        private volatile ScheduledFuture<?> scheduled;
+        private volatile boolean closed = false;
+        private volatile RuntimeException lastFailure;
+        private volatile List<T> lastFailedParams = Collections.emptyList();
+
+        private WriteBehind(WriteBehindTarget<T> target, int maxSize, PlatformTransactionManager txManager,
+                            WriteBehindMerger<T> merger) {
+            this.target = target;
+            this.maxSize = maxSize;
+            this.merger = merger;
+            if(null != txManager) {
+                this.tt = new TransactionTemplate(txManager);
+                this.tt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            } else {
+                this.tt = null;
+            }
+        }
+
+        /**
+         * Merger that keeps parameters of the newer update, may be used only for queries
+         * those assign absolute values, e.g. {@code set name = :name}, but not {@code set cnt = cnt + :delta}
+         *
+         * @param <T> parameters type
+         * @return merger that replaces buffered parameters with the new ones
+         */
+        ${modifier}static <T> WriteBehindMerger<T> replacing() {
+            return new WriteBehindMerger<T>() {
+                @Override
+                public T merge(T buffered, T update) {
+                    return update;
+                }
+            };
+        }
+
+        private static <T> WriteBehind<T> start(WriteBehindTarget<T> target, int maxSize, long flushIntervalMillis,
+                                                ScheduledExecutorService scheduler, PlatformTransactionManager txManager,
+                                                WriteBehindMerger<T> merger) {
+            if(maxSize <= 0) throw new QueryException("Provided maxSize must be positive: [" + maxSize + "]");
+            if(null != scheduler && flushIntervalMillis <= 0) throw new QueryException(
+                    "Provided flushIntervalMillis must be positive: [" + flushIntervalMillis + "]");
+            if(null == merger) throw new QueryException("Provided merger is null");
+            final WriteBehind<T> res = new WriteBehind<T>(target, maxSize, txManager, merger);
+            if(null != scheduler) {
+                res.scheduled = scheduler.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            res.flush();
+                        } catch(RuntimeException e) {
+                            // failure is recorded by flush, exception would cancel the schedule
+                        }
+                    }
+                }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+            return res;
+        }
+
+        /**
+         * Buffers update merging it with previously buffered update with the same key,
+         * flushes buffer on the calling thread if its size reaches the limit
+         *
+         * @param paramsBean query parameters
+         * @throws DataAccessException if buffer is closed or on flush error
+         */
+        ${modifier}void update(T paramsBean) throws DataAccessException {
+            if(null == paramsBean) throw new QueryException("Provided params object is null");
+            if(closed) throw new QueryException("Write-behind buffer is closed");
+            Object key = target.key(paramsBean);
+            if(null == key) throw new QueryException("Provided write-behind key parameter is null");
+            buffer(key, paramsBean, true);
+            // update racing with close is flushed here
+            flush(closed ? 1 : maxSize);
+        }
+
+        /**
+         * Executes all buffered updates as a single batch
+         *
+         * @return number of updated rows reported by JDBC driver,
+         * {@code -1} if such information is not available
+         * @throws DataAccessException on query error
+         */
+        ${modifier}int flush() throws DataAccessException {
+            return flush(1);
+        }
+
+        private int flush(int threshold) {
+            if(pending.size() < threshold) return 0;
+            synchronized(flushLock) {
+                if(pending.size() < threshold) return 0;
+                final List<T> batch = new ArrayList<T>(pending.size());
+                for(Object key : pending.keySet()) {
+                    T paramsBean = pending.remove(key);
+                    if(null != paramsBean) batch.add(paramsBean);
+                }
+                if(batch.isEmpty()) return 0;
+                try {
+                    if(null == tt) return target.execute(batch.iterator(), batch.size());
+                    return tt.execute(new TransactionCallback<Integer>() {
+                        @Override
+                        public Integer doInTransaction(TransactionStatus status) {
+                            return target.execute(batch.iterator(), batch.size());
+                        }
+                    });
+                } catch(TransientDataAccessException e) {
+                    // failed updates are older than the ones buffered meanwhile
+                    for(T paramsBean : batch) buffer(target.key(paramsBean), paramsBean, false);
+                    lastFailure = e;
+                    throw e;
+                } catch(RuntimeException e) {
+                    // updates are dropped, so the batch won't fail again on all subsequent flushes
+                    lastFailedParams = Collections.unmodifiableList(batch);
+                    lastFailure = e;
+                    throw e;
+                }
+            }
+        }
+
+        private void buffer(Object key, T paramsBean, boolean newer) {
+            for(;;) {
+                T existing = pending.putIfAbsent(key, paramsBean);
+                if(null == existing) return;
+                T merged = newer ? merger.merge(existing, paramsBean) : merger.merge(paramsBean, existing);
+                if(null == merged) throw new QueryException("Write-behind merger returned null for key: [" + key + "]");
+                if(pending.replace(key, existing, merged)) return;
+            }
+        }
+
+        /**
+         * Returns number of buffered updates
+         *
+         * @return number of buffered distinct keys
+         */
+        ${modifier}int size() {
+            return pending.size();
+        }
+
+        /**
+         * Returns error of the last failed flush
+         *
+         * @return last flush error, null if there were no errors
+         */
+        ${modifier}RuntimeException getLastFailure() {
+            return lastFailure;
+        }
+
+        /**
+         * Returns parameters of the updates dropped from buffer on the last non-transient flush error
+         *
+         * @return dropped parameters, empty list if there were no such errors
+         */
+        ${modifier}List<T> getLastFailedParams() {
+            return lastFailedParams;
+        }
+
+        /**
+         * Whether this buffer is closed
+         *
+         * @return whether this buffer is closed
+         */
+        ${modifier}boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Stops scheduled flushes and flushes remaining updates, subsequent updates are rejected
+         *
+         * @throws DataAccessException on query error
+         */
+        @Override
+        public void close() throws DataAccessException {
+            if(closed) return;
+            closed = true;
+            ScheduledFuture<?> sf = scheduled;
+            if(null != sf) sf.cancel(false);
+            flush();
+        }
+    }
+[/#if]
+[#if columnsBatches]
+
+    /**
+     * Checks rows range and batch size for batch methods taking parameters as arrays
+     *
+     * @param from index of the first row, inclusive
+     * @param to index of the last row, exclusive
+     * @param batchSize single batch size
+     * @throws DataAccessException on invalid range or batch size
+     */
+    private static void checkRowsRange(int from, int to, int batchSize) throws DataAccessException {
+        if(from < 0 || from > to) throw new QueryException("Invalid rows range, from: [" + from + "], to: [" + to + "]");
+        if(batchSize <= 0) throw new QueryException("Provided batchSize must be positive: [" + batchSize + "]");
+    }
+
+    /**
+     * Method for performing batch inserts binding parameters from arrays,
+     * the same setter is used for all batches moving its offset
+     *
+     * @param template jdbc template to execute query with
+[#if hasStatementSettings]
+     * @param settings statement settings from query directives, may be null
+[/#if]
+     * @param sql query text with positional parameters
+     * @param from index of the first row, inclusive
+     * @param to index of the last row, exclusive
+     * @param batchSize size of single batch
+     * @param setter parameters setter
+     * @return number of updated rows reported by JDBC driver,
+     * {@code -1} if such information is not available
+     */
+    private static long columnsBatchUpdate(${jtClass} template, [#if hasStatementSettings]StatementSettings settings, [/#if]String sql, int from, int to, int batchSize,
+                                           ColumnsBatchSetter setter) {
+        boolean hasInfoFromDb = true;
+        long updated = 0;
+        for(int start = from; start < to; start += setter.size) {
+            setter.offset = start;
+            setter.size = Math.min(batchSize, to - start);
+            int[] upArr = template.getJdbcOperations().batchUpdate(sql, [#if hasStatementSettings]tuned(settings, setter)[#else]setter[/#if]);
+            if(hasInfoFromDb) {
+                int up = countUpdatedRows(upArr);
+                if(-1 == up) hasInfoFromDb = false;
+                updated += up;
+            }
+        }
+        return hasInfoFromDb ? updated : -1;
+    }
+
+    /**
+     * Batch setter for parameters arrays, rows indices are counted from current offset
+     */
+    private abstract static class ColumnsBatchSetter implements BatchPreparedStatementSetter {
+        int offset;
+        int size;
+
+        @Override
+        public int getBatchSize() {
+            return size;
+        }
+    }
+[/#if]
+[#if valuesInserts]
+
+    /**
+     * Method for performing batch inserts using multi-row {@code values} statements,
+     * each batch is sent to database as a single statement
+     *
+     * @param template jdbc template to execute query with
+[#if hasStatementSettings]
+     * @param settings statement settings from query directives, may be null
+[/#if]
+     * @param insert parsed insert query
+     * @param paramsIter query parameters iterator
+     * @param requestedBatchSize number of rows in single statement
+     * @param maxParams max number of bind parameters in single statement
+     * @param factory parameters sources factory
+     * @param <T> parameters type
+     * @return number of inserted rows
+     */
+    private <T> long valuesBatchUpdate(${jtClass} template, [#if hasStatementSettings]StatementSettings settings, [/#if]ValuesInsert insert, Iterator<? extends T> paramsIter,
+                                       int requestedBatchSize, int maxParams, ParamsSourceFactory<? super T> factory) {
+        if(null == paramsIter) throw new QueryException("Provided params object is null");
+        if(requestedBatchSize <= 0) throw new QueryException("Provided batchSize must be positive: [" + requestedBatchSize + "]");
+        int maxRows = maxParams / insert.paramsNames.length;
+        if(maxRows <= 0) throw new QueryException("Provided maxParams: [" + maxParams + "] " +
+                "is less than the number of parameters in single row: [" + insert.paramsNames.length + "]");
+        int batchSize = Math.min(requestedBatchSize, maxRows);
+        // mutable for lower overhead
+        SqlParameterSource[] params = new SqlParameterSource[batchSize];
+        long updated = 0;
+        int index = 0;
+        while(paramsIter.hasNext()) {
+            params[index] = factory.createSource(paramsIter.next());
+            index += 1;
+            if(batchSize == index) {
+                updated += template.getJdbcOperations().update(insert.statement(batchSize, true),
+                        [#if hasStatementSettings]tuned(settings, insert.setter(params, batchSize))[#else]insert.setter(params, batchSize)[/#if]);
+                index = 0;
+            }
+        }
+        // tail
+        if(index > 0) {
+            updated += template.getJdbcOperations().update(insert.statement(index, false),
+                    [#if hasStatementSettings]tuned(settings, insert.setter(params, index))[#else]insert.setter(params, index)[/#if]);
+        }
+        return updated;
+    }
+
+    /**
+     * Simple {@code insert ... values (...)} query split into statement prefix and positional values tuple.
+     * Caches multi-row statement texts for the last used full batch size and tail size.
+     */
+    private static final class ValuesInsert {
+        private final String prefix;
+        private final String tuple;
+        private final String[] paramsNames;
+        private volatile ValuesStatement full = new ValuesStatement(0, "");
+        private volatile ValuesStatement tail = new ValuesStatement(0, "");
+
+        private ValuesInsert(String name, String sql, String... paramsNames) {
+            Matcher matcher = VALUES_INSERT_PATTERN.matcher(sql);
+            if(!matcher.matches()) throw new QueryException(
+                    "Provided query: [" + name + "] is not a simple 'insert ... values (...)' query: [" + sql + "]");
+            ParsedSql parsed = NamedParameterUtils.parseSqlStatement(matcher.group(2));
+            Object[] parsedNames = NamedParameterUtils.buildValueArray(parsed, PARAMS_NAMES_SOURCE, null);
+            if(!Arrays.equals(paramsNames, parsedNames)) throw new QueryException(
+                    "Provided query: [" + name + "] parameters: [" + Arrays.toString(parsedNames) + "] are non consistent " +
+                    "with parameters known on generation time: [" + Arrays.toString(paramsNames) + "]");
+            this.prefix = matcher.group(1);
+            this.tuple = NamedParameterUtils.substituteNamedParameters(parsed, null);
+            this.paramsNames = paramsNames;
+        }
+
+        private String statement(int rows, boolean fullBatch) {
+            ValuesStatement cached = fullBatch ? full : tail;
+            if(rows == cached.rows) return cached.sql;
+            StringBuilder sb = new StringBuilder(prefix.length() + rows * (tuple.length() + 2));
+            sb.append(prefix);
+            for(int i = 0; i < rows; i++) {
+                if(i > 0) sb.append(", ");
+                sb.append(tuple);
+            }
+            ValuesStatement st = new ValuesStatement(rows, sb.toString());
+            if(fullBatch) full = st;
+            else tail = st;
+            return st.sql;
+        }
+
+        private PreparedStatementSetter setter(final SqlParameterSource[] params, final int rows) {
+            return new PreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps) throws SQLException {
+                    int index = 1;
+                    for(int i = 0; i < rows; i++) {
+                        SqlParameterSource source = params[i];
+                        for(String name : paramsNames) {
+                            StatementCreatorUtils.setParameterValue(ps, index, source.getSqlType(name), source.getValue(name));
+                            index += 1;
+                        }
+                    }
+                }
+            };
+        }
+    }
+
+    private static final class ValuesStatement {
+        private final int rows;
+        private final String sql;
+
+        private ValuesStatement(int rows, String sql) {
+            this.rows = rows;
+            this.sql = sql;
+        }
+    }
+[/#if]
+[#if parallel]
+
+    /**
+     * Method for performing batch inserts through multiple connections: batches are bound on the calling thread
+     * and are passed to loading tasks through bounded queues, each batch is executed in separate transaction
+     *
+     * @param sql sql query text
+     * @param paramsIter query parameters iterator
+     * @param batchSize size of single batch
+     * @param parallelism number of loading tasks
+     * @param maxRetries max number of retries for transient errors
+     * @param txManager transaction manager for the data source of the jdbc template
+     * @param executor executor to run loading tasks with
+     * @param partitioner parameters partitioner, may be null
+     * @param factory parameters sources factory
+     * @param <T> parameters type
+     * @return load report
+     */
+    private <T> ParallelBatchReport parallelBatchUpdate(String sql, Iterator<? extends T> paramsIter, int batchSize, int parallelism,
+                                                        int maxRetries, PlatformTransactionManager txManager, Executor executor,
+                                                        ParallelBatchPartitioner<? super T> partitioner,
+                                                        ParamsSourceFactory<? super T> factory) {
+        if(batchSize <= 0) throw new QueryException("Provided batchSize must be positive: [" + batchSize + "]");
+        if(parallelism <= 0) throw new QueryException("Provided parallelism must be positive: [" + parallelism + "]");
+        if(maxRetries < 0) throw new QueryException("Provided maxRetries must be non-negative: [" + maxRetries + "]");
+        if(null == txManager) throw new QueryException("Provided txManager is null");
+        if(null == executor) throw new QueryException("Provided executor is null");
+        TransactionTemplate tt = new TransactionTemplate(txManager);
+        tt.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        ParallelBatchLoad load = new ParallelBatchLoad(jt, tt, sql, parallelism, null != partitioner, maxRetries);
+        load.start(executor);
+        try {
+            SqlParameterSource[][] buffers = new SqlParameterSource[null != partitioner ? parallelism : 1][];
+            int[] sizes = new int[buffers.length];
+            while(paramsIter.hasNext()) {
+                T paramsBean = paramsIter.next();
+                int part = null != partitioner ? (partitioner.partition(paramsBean) & Integer.MAX_VALUE) % parallelism : 0;
+                if(null == buffers[part]) buffers[part] = new SqlParameterSource[batchSize];
+                buffers[part][sizes[part]] = factory.createSource(paramsBean);
+                sizes[part] += 1;
+                if(batchSize == sizes[part]) {
+                    load.submit(part, buffers[part]);
+                    buffers[part] = null;
+                    sizes[part] = 0;
+                }
+            }
+            // tails
+            for(int i = 0; i < buffers.length; i++) {
+                if(sizes[i] > 0) load.submit(i, Arrays.copyOf(buffers[i], sizes[i]));
+            }
+        } finally {
+            load.finish();
+        }
+        return load.report();
+    }
+
+    /**
+     * Assigns parameters to partitions for parallel batch methods, parameters
+     * with the same partition are executed through the same connection in iterator order
+     *
+     * @param <T> parameters type
+     */
+    ${modifier}interface ParallelBatchPartitioner<T> {
+        /**
+         * Returns partition of provided parameters, e.g. hash code of the primary key
+         *
+         * @param paramsBean parameters
+         * @return partition number, may be negative
+         */
+        int partition(T paramsBean);
+    }
+
+    /**
+     * Result of parallel batch method execution
+     */
+    ${modifier}static class ParallelBatchReport {
+        private final long updated;
+        private final long batchesCount;
+        private final List<ParallelBatchFailure> failures;
+
+        private ParallelBatchReport(long updated, long batchesCount, List<ParallelBatchFailure> failures) {
+            this.updated = updated;
+            this.batchesCount = batchesCount;
+            this.failures = failures;
+        }
+
+        /**
+         * Returns count of rows updated by successful batches
+         *
+         * @return number of updated rows reported by JDBC driver,
+         * {@code -1} if such information is not available
+         */
+        public long getUpdated() {
+            return updated;
+        }
+
+        /**
+         * Returns count of executed batches
+         *
+         * @return count of executed batches including failed ones
+         */
+        public long getBatchesCount() {
+            return batchesCount;
+        }
+
+        /**
+         * Returns failed batches ordered by batch index
+         *
+         * @return list of failures, empty on success
+         */
+        public List<ParallelBatchFailure> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Returns whether all batches were executed successfully
+         *
+         * @return whether all batches were executed successfully
+         */
+        public boolean isSuccess() {
+            return failures.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("ParallelBatchReport");
+            sb.append("{updated=").append(updated);
+            sb.append(", batchesCount=").append(batchesCount);
+            sb.append(", failures=").append(failures);
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Failed batch of parallel batch method, whole batch was rolled back
+     */
+    ${modifier}static class ParallelBatchFailure {
+        private final long batchIndex;
+        private final int partition;
+        private final int rowsCount;
+        private final int attempts;
+        private final RuntimeException error;
+
+        private ParallelBatchFailure(long batchIndex, int partition, int rowsCount, int attempts, RuntimeException error) {
+            this.batchIndex = batchIndex;
+            this.partition = partition;
+            this.rowsCount = rowsCount;
+            this.attempts = attempts;
+            this.error = error;
+        }
+
+        /**
+         * Returns zero-based index of the batch in the order batches were bound
+         *
+         * @return batch index
+         */
+        public long getBatchIndex() {
+            return batchIndex;
+        }
+
+        /**
+         * Returns partition of the batch, {@code 0} if partitioner was not used
+         *
+         * @return batch partition
+         */
+        public int getPartition() {
+            return partition;
+        }
+
+        /**
+         * Returns number of rows in the batch
+         *
+         * @return number of rows
+         */
+        public int getRowsCount() {
+            return rowsCount;
+        }
+
+        /**
+         * Returns number of attempts made to execute the batch
+         *
+         * @return number of attempts
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * Returns error of the last attempt
+         *
+         * @return last error
+         */
+        public RuntimeException getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("ParallelBatchFailure");
+            sb.append("{batchIndex=").append(batchIndex);
+            sb.append(", partition=").append(partition);
+            sb.append(", rowsCount=").append(rowsCount);
+            sb.append(", attempts=").append(attempts);
+            sb.append(", error=").append(error);
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Single batch passed to loading task
+     */
+    private static final class ParallelBatch {
+        private static final ParallelBatch END = new ParallelBatch(-1, -1, new SqlParameterSource[0]);
+
+        private final long index;
+        private final int partition;
+        private final SqlParameterSource[] params;
+
+        private ParallelBatch(long index, int partition, SqlParameterSource[] params) {
+            this.index = index;
+            this.partition = partition;
+            this.params = params;
+        }
+    }
+
+    /**
+     * State of single parallel batch load: queues, loading tasks and collected results.
+     * Loading tasks, that failed with unexpected error, keep draining their queues, so caller
+     * never blocks on submitting batches.
+     */
+    private static final class ParallelBatchLoad {
+        private final ${jtClass} template;
+        private final TransactionTemplate tt;
+        private final String sql;
+        private final int maxRetries;
+        private final List<BlockingQueue<ParallelBatch>> queues;
+        private final ParallelBatchWorker[] workers;
+        private final CountDownLatch done;
+        private long batchesCount = 0;
+        private int started = 0;
+
+        private ParallelBatchLoad(${jtClass} template, TransactionTemplate tt, String sql, int parallelism,
+                                  boolean partitioned, int maxRetries) {
+            this.template = template;
+            this.tt = tt;
+            this.sql = sql;
+            this.maxRetries = maxRetries;
+            this.queues = new ArrayList<BlockingQueue<ParallelBatch>>(parallelism);
+            // single shared queue if ordering is not required
+            BlockingQueue<ParallelBatch> shared = partitioned ? null : new ArrayBlockingQueue<ParallelBatch>(parallelism * 2);
+            for(int i = 0; i < parallelism; i++) {
+                queues.add(partitioned ? new ArrayBlockingQueue<ParallelBatch>(2) : shared);
+            }
+            this.workers = new ParallelBatchWorker[parallelism];
+            this.done = new CountDownLatch(parallelism);
+        }
+
+        private void start(Executor executor) {
+            try {
+                for(int i = 0; i < workers.length; i++) {
+                    workers[i] = new ParallelBatchWorker(this, queues.get(i));
+                    executor.execute(workers[i]);
+                    started += 1;
+                }
+            } catch(RuntimeException e) {
+                finish();
+                throw e;
+            }
+        }
+
+        private void submit(int partition, SqlParameterSource[] params) {
+            try {
+                queues.get(partition).put(new ParallelBatch(batchesCount, partition, params));
+                batchesCount += 1;
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryException("Parallel batch was interrupted", e);
+            }
+        }
+
+        private void finish() {
+            boolean interrupted = false;
+            // loading tasks drain their queues, so puts cannot block forever
+            for(int i = 0; i < started;) {
+                try {
+                    queues.get(i).put(ParallelBatch.END);
+                    i += 1;
+                } catch(InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            for(int i = started; i < workers.length; i++) done.countDown();
+            for(;;) {
+                try {
+                    done.await();
+                    break;
+                } catch(InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if(interrupted) Thread.currentThread().interrupt();
+        }
+
+        private ParallelBatchReport report() {
+            boolean hasInfoFromDb = true;
+            long updated = 0;
+            List<ParallelBatchFailure> failures = new ArrayList<ParallelBatchFailure>();
+            for(ParallelBatchWorker worker : workers) {
+                Throwable err = worker.fatal;
+                if(null != err) {
+                    if(err instanceof RuntimeException) throw (RuntimeException) err;
+                    if(err instanceof Error) throw (Error) err;
+                    throw new QueryException("Parallel batch loading task failed", err);
+                }
+                if(worker.updated < 0) hasInfoFromDb = false;
+                updated += worker.updated;
+                failures.addAll(worker.failures);
+            }
+            Collections.sort(failures, new Comparator<ParallelBatchFailure>() {
+                @Override
+                public int compare(ParallelBatchFailure o1, ParallelBatchFailure o2) {
+                    return o1.batchIndex < o2.batchIndex ? -1 : (o1.batchIndex == o2.batchIndex ? 0 : 1);
+                }
+            });
+            return new ParallelBatchReport(hasInfoFromDb ? updated : -1, batchesCount, Collections.unmodifiableList(failures));
+        }
+    }
+
+    /**
+     * Loading task, executes batches from the queue each in separate transaction
+     */
+    private static final class ParallelBatchWorker implements Runnable {
+        private final ParallelBatchLoad load;
+        private final BlockingQueue<ParallelBatch> queue;
+        private final List<ParallelBatchFailure> failures = new ArrayList<ParallelBatchFailure>();
+        // fields are read by caller after latch
+        private long updated = 0;
+        private Throwable fatal;
+
+        private ParallelBatchWorker(ParallelBatchLoad load, BlockingQueue<ParallelBatch> queue) {
+            this.load = load;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for(ParallelBatch batch = queue.take(); ParallelBatch.END != batch; batch = queue.take()) {
+                    if(null != fatal) continue;
+                    try {
+                        execute(batch);
+                    } catch(Throwable e) {
+                        fatal = e;
+                    }
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fatal = e;
+            } finally {
+                load.done.countDown();
+            }
+        }
+
+        private void execute(final ParallelBatch batch) {
+            for(int attempt = 1; ; attempt++) {
+                try {
+                    int[] upArr = load.tt.execute(new TransactionCallback<int[]>() {
+                        @Override
+                        public int[] doInTransaction(TransactionStatus status) {
+                            return load.template.batchUpdate(load.sql, batch.params);
+                        }
+                    });
+                    if(updated >= 0) {
+                        int up = countUpdatedRows(upArr);
+                        updated = -1 == up ? -1 : updated + up;
+                    }
+                    return;
+                } catch(RuntimeException e) {
+                    if(!(e instanceof TransientDataAccessException) || attempt > load.maxRetries) {
+                        failures.add(new ParallelBatchFailure(batch.index, batch.partition, batch.params.length, attempt, e));
+                        return;
+                    }
+                }
+            }
+        }
+    }
+[/#if]
+
+    // returns -1 on no info from db
+    private static int countUpdatedRows(int[] dbReturned) {
+        int res = 0;
+        for(int updated : dbReturned) {
+            if(updated < 0) return -1;
+            res += updated;
+        }
+        return res;
+    }
+
+    /**
+     * Creates parameters sources for batch inserts
+     *
+     * @param <T> parameters type
+     */
+    private interface ParamsSourceFactory<T> {
+        SqlParameterSource createSource(T paramsBean);
+    }
+[/#if]
+[#if parsesSql || useTemplateStringSubstitution]
+
+    /**
+     * Removes arbitrary entry from the cache if it has reached {@code SQL_CACHE_MAX_SIZE} entries,
+     * concurrent updates may exceed the limit by the number of updating threads
+     *
+     * @param cache sql cache
+     */
+    private static void evictIfFull(ConcurrentHashMap<?, ?> cache) {
+        if(cache.size() < SQL_CACHE_MAX_SIZE) return;
+        Iterator<?> it = cache.keySet().iterator();
+        if(it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+[/#if]
+[#if parsesSql]
+
+    /**
+     * Parses query text with named parameters, parsed queries are cached
+     *
+     * @param sql query text with named parameters
+     * @return parsed query
+     */
+    private ParsedSql parsedSql(String sql) {
+        ParsedSql parsed = parsedSqlCache.get(sql);
+        if(null != parsed) return parsed;
+        parsed = NamedParameterUtils.parseSqlStatement(sql);
+        evictIfFull(parsedSqlCache);
+        parsedSqlCache.put(sql, parsed);
+        return parsed;
+    }
+[/#if]
+[#if useTemplateStringSubstitution && useTypedSubstitutions]
+
+    /**
+     * Substitute placeholders in sql query template using typed substitutions
+     *
+     * @param template sql query template
+     * @param substitutions placeholders values
+     * @return rendered query
+     */
+    private RenderedSql substitute(String template, Substitutions substitutions) {
+        if(null == substitutions) throw new QueryException("Provided substitutions object is null");
+        SubstitutionsKey key = new SubstitutionsKey(template, true, substitutions.values.clone());
+        RenderedSql cached = renderedCache.get(key);
+        if(null != cached) return cached;
+        // values are checked by substitutions setters
+        SqlTemplate compiled = templates.get(template);
+        if(null == compiled) compiled = new SqlTemplate(template, substitutions.keys);
+        return cacheRendered(key, compiled.renderSlots(key.substitutions));
+    }
+
+    /**
+     * Splits query template into segments and checks that its placeholders
+     * are consistent with ones known on generation time
+     *
+     * @param name query name
+     * @param placeholders placeholders keys known on generation time
+     * @return query template split into segments
+     * @throws DataAccessException if query placeholders are not consistent with generated ones
+     */
+    private SqlTemplate compileTemplate(String name, String[] placeholders) throws DataAccessException {
+        SqlTemplate compiled = new SqlTemplate(queryText(name), placeholders);
+        Set<String> parsed = new LinkedHashSet<String>(Arrays.asList(compiled.keys));
+        if(!parsed.equals(new LinkedHashSet<String>(Arrays.asList(placeholders)))) throw new QueryException(
+                "Provided query: [" + name + "] placeholders: [" + parsed + "] are non consistent " +
+                "with placeholders known on generation time: [" + Arrays.toString(placeholders) + "]");
+        return compiled;
+    }
+[/#if]
+[#if useTemplateStringSubstitution && !useTypedSubstitutions]
+
+    /**
+     * Substitute placeholders in sql query template
+     *
+     * @param template sql query template
+     * @param substitutions substitutions array {@code [key1, val2, key2, val2,...]}
+     * @return rendered query
+     */
+    private RenderedSql substitute(String template, Object[] substitutions) {
+        if(null == substitutions) throw new QueryException("Provided substitutions array is null");
+        if(0 == substitutions.length) throw new QueryException("Provided substitutions array is empty");
+        if(0 != substitutions.length % 2) throw new QueryException("Placeholders vararg array must have even numbers of elements " +
+                "(they will be represented as [key1, val2, key2, val2,...]), but length was: [" + substitutions.length + "]");
+        String[] strings = new String[substitutions.length];
+        for (int i = 0; i < substitutions.length; i += 2) {
+            Object key = substitutions[i];
+            if(null == key) throw new QueryException("Provided substitutions vararg array element (key) " +
+                    "is null at position: [" + i + "]");
+            strings[i] = key.toString();
+            Object val = substitutions[i+1];
+            if(null == val) throw new QueryException("Provided substitutions vararg array element (value) " +
+                    "is null at position: [" + i + "]");
+            strings[i+1] = val.toString();
+        }
+        SubstitutionsKey key = new SubstitutionsKey(template, false, strings);
+        RenderedSql cached = renderedCache.get(key);
+        if(null != cached) return cached;
+        // checks are done only once for each substitutions tuple
+        for (int i = 0; i < strings.length; i += 2) {
+            String keystr = strings[i];
+            if(!SUBSTITUTE_KEY_RESTRICTION_PATTERN.matcher(keystr).matches()) throw new QueryException(
+                    "Provided substitutions vararg array element (key): [" + keystr + "] does not match " +
+                    "restriction regex: [" + SUBSTITUTE_KEY_RESTRICTION_PATTERN + "] at position: [" + i + "]");
+            String valstr = strings[i+1];
+            if(!SUBSTITUTE_VALUE_PATTERN.matcher(valstr).matches()) throw new QueryException("Provided substitutions vararg array element " +
+                    "(value) does not match SQL injection prevention regex: [" + SUBSTITUTE_VALUE_PATTERN + "] at position: [" + i + "]");
+        }
+        SqlTemplate compiled = templates.get(template);
+        if(null == compiled) compiled = new SqlTemplate(template);
+        return cacheRendered(key, compiled.render(strings));
+    }
+[/#if]
+[#if useTemplateStringSubstitution]
+
+    /**
+     * Puts rendered query into the cache
+     *
+     * @param key template and substitutions
+     * @param sql rendered query text
+     * @return rendered query
+     */
+    private RenderedSql cacheRendered(SubstitutionsKey key, String sql) {
+        RenderedSql rendered = new RenderedSql(sql[#if parsesSql], NamedParameterUtils.parseSqlStatement(sql)[/#if]);
+        evictIfFull(renderedCache);
+        RenderedSql existing = renderedCache.putIfAbsent(key, rendered);
+        return null != existing ? existing : rendered;
+    }
+
+    /**
+     * Query template with substitutions values, used as a rendered queries cache key
+     */
+    private static final class SubstitutionsKey {
+        private final String template;
+        // slot values or key-value pairs
+        private final boolean slots;
+        private final String[] substitutions;
+        private final int hash;
+
+        private SubstitutionsKey(String template, boolean slots, String[] substitutions) {
+            this.template = template;
+            this.slots = slots;
+            this.substitutions = substitutions;
+            this.hash = 31 * template.hashCode() + Arrays.hashCode(substitutions);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof SubstitutionsKey)) return false;
+            SubstitutionsKey other = (SubstitutionsKey) o;
+            return hash == other.hash && slots == other.slots && template.equals(other.template) && Arrays.equals(substitutions, other.substitutions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Query text rendered from template[#if parsesSql] and its parsed form[/#if]
+     */
+    private static final class RenderedSql {
+        private final String sql;
+[#if parsesSql]
+        private final ParsedSql parsed;
+[/#if]
+
+        private RenderedSql(String sql[#if parsesSql], ParsedSql parsed[/#if]) {
+            this.sql = sql;
+[#if parsesSql]
+            this.parsed = parsed;
+[/#if]
+        }
+    }
+[/#if]
+[#if useTemplateStringSubstitution]
+
+[#noparse]    /**
+     * Query template split into literal and placeholder segments,
+     * placeholders have form {@code ${key}} or {@code ${key(any text)}}
+     */
+    private static class SqlTemplate {
+        private final String template;
+        // literals.length == keys.length + 1
+        private final String[] literals;
+        private final String[] keys;
+        private final String[] placeholders;
+        // indices of placeholders values in typed substitutions, -1 for unknown keys
+        private final int[] slots;
+
+        private SqlTemplate(String template, String... slotsKeys) {
+            this.template = template;
+            List<String> literalsList = new ArrayList<String>();
+            List<String> keysList = new ArrayList<String>();
+            List<String> placeholdersList = new ArrayList<String>();
+            int start = 0;
+            int pos = 0;
+            for(;;) {
+                int open = template.indexOf("${", pos);
+                if(-1 == open) break;
+                int keyEnd = open + 2;
+                while(keyEnd < template.length() && isKeyChar(template.charAt(keyEnd))) keyEnd += 1;
+                int end = -1;
+                if(keyEnd > open + 2 && keyEnd < template.length()) {
+                    char ch = template.charAt(keyEnd);
+                    if('}' == ch) end = keyEnd + 1;
+                    else if('(' == ch) {
+                        int close = template.indexOf(")}", keyEnd + 1);
+                        if(-1 != close) end = close + 2;
+                    }
+                }
+                if(-1 == end) {
+                    pos = open + 2;
+                    continue;
+                }
+                literalsList.add(template.substring(start, open));
+                keysList.add(template.substring(open + 2, keyEnd));
+                placeholdersList.add(template.substring(open, end));
+                start = end;
+                pos = end;
+            }
+            literalsList.add(template.substring(start));
+            this.literals = literalsList.toArray(new String[literalsList.size()]);
+            this.keys = keysList.toArray(new String[keysList.size()]);
+            this.placeholders = placeholdersList.toArray(new String[placeholdersList.size()]);
+            this.slots = new int[keys.length];
+            List<String> slotsKeysList = Arrays.asList(slotsKeys);
+            for (int i = 0; i < keys.length; i++) {
+                slots[i] = slotsKeysList.indexOf(keys[i]);
+            }
+        }
+
+        private static boolean isKeyChar(char ch) {
+            return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || '_' == ch;
+        }
+
+        // placeholders without provided values are left as is
+        private String render(String[] substitutions) {
+            for (int i = 0; i < substitutions.length; i += 2) {
+                String key = substitutions[i];
+                boolean found = false;
+                for (String ke : keys) {
+                    if(ke.equals(key)) {
+                        found = true;
+                        break;
+                    }
+                }
+                // repeated key is not found, its placeholders are already substituted
+                for (int j = 0; j < i; j += 2) {
+                    if(substitutions[j].equals(key)) found = false;
+                }
+                if(!found) throw new QueryException("Provided substitutions key: [" + key + "] not found in template: [" + template + "]");
+            }
+            StringBuilder sb = new StringBuilder(template.length() + 16 * keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                sb.append(literals[i]);
+                String value = placeholders[i];
+                for (int j = 0; j < substitutions.length; j += 2) {
+                    if(keys[i].equals(substitutions[j])) {
+                        value = substitutions[j+1];
+                        break;
+                    }
+                }
+                sb.append(value);
+            }
+            sb.append(literals[keys.length]);
+            return sb.toString();
+        }
+
+        // placeholders without provided values are left as is
+        private String renderSlots(String[] slotsValues) {
+            StringBuilder sb = new StringBuilder(template.length() + 16 * keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                sb.append(literals[i]);
+                String value = -1 != slots[i] ? slotsValues[slots[i]] : null;
+                sb.append(null != value ? value : placeholders[i]);
+            }
+            sb.append(literals[keys.length]);
+            return sb.toString();
+        }
+    }
+[/#noparse]
+[/#if]
+[#if useUnderscoredToCamel]
+
+    private static String underscoredToCamel(String underscored) {
+        String known = UNDERSCORED_TO_CAMEL.get(underscored);
+        if(null != known) return known;
+        if(null == underscored || 0 == underscored.length() || !underscored.contains("_")) return underscored;
+        StringBuilder sb = new StringBuilder();
+        boolean usFound = false;
+        for(int i = 0; i< underscored.length(); i++) {
+            char ch = underscored.charAt(i);
+            if('_' == ch) {
+                if(usFound) { // double underscore
+                    sb.append('_');
+                } else {
+                    usFound = true;
+                }
+            } else if (usFound) {
+                sb.append(toUpperCase(ch));
+                usFound = false;
+            } else {
+                sb.append(ch);
+            }
+        }
+        if(usFound) sb.append("_");
+        return sb.toString();
+    }
+
+    private static String camelToUnderscored(String camel) {
+        String known = CAMEL_TO_UNDERSCORED.get(camel);
+        if(null != known) return known;
+        if(null == camel || camel.length() < 2) return camel;
+        boolean hasUpper = false;
+        for (int i = 1; i < camel.length(); i++) {
+            char ch = camel.charAt(i);
+            if(ch == Character.toUpperCase(ch)) {
+                hasUpper = true;
+                break;
+            }
+        }
+        if(!hasUpper) return camel;
+        StringBuilder sb = new StringBuilder();
+        sb.append(camel.charAt(0));
+        for (int i = 1; i < camel.length(); i++) {
+            char ch = camel.charAt(i);
+            char lower = toLowerCase(ch);
+            if(ch == toUpperCase(ch) && ch != lower) {
+                sb.append("_");
+                sb.append(lower);
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * {@code BeanPropertySqlParameterSource} extension that maps camelCase properties to under_scored parameters
+     */
+    private static class UnderscoredBeanPropertySqlParameterSource extends BeanPropertySqlParameterSource {
+        private String[] underscoredNames;
+
+        /**
+         * Create a new BeanPropertySqlParameterSource for the given bean.
+         *
+         * @param object the bean instance to wrap
+         */
+        private UnderscoredBeanPropertySqlParameterSource(Object object) {
+            super(object);
+        }
+
+        /**
+         * Determine whether there is a value for the specified named parameter.
+         * @param paramName the name of the parameter
+         * @return whether there is a value defined
+         */
+        @Override
+        public boolean hasValue(String paramName) {
+            return super.hasValue(underscoredToCamel(paramName));
+        }
+
+        /**
+       	 * Return the parameter value for the requested named parameter.
+       	 * @param paramName the name of the parameter
+       	 * @return the value of the specified parameter
+       	 * @throws IllegalArgumentException if there is no value for the requested parameter
+       	 */
+        @Override
+        public Object getValue(String paramName) throws IllegalArgumentException {
+            return super.getValue(underscoredToCamel(paramName));
+        }
+
+
+        /**
+       	 * Provide access to the property names of the wrapped bean.
+       	 * Uses support provided in the {@link org.springframework.beans.PropertyAccessor} interface.
+       	 * @return an array containing all the known property names
+       	 */
+        @Override
+        public String[] getReadablePropertyNames() {
+            if(null == underscoredNames) {
+                String[] camel = super.getReadablePropertyNames();
+                String[] underscored = new String[camel.length];
+                for (int i = 0; i < camel.length; i++) {
+                    underscored[i] = camelToUnderscored(camel[i]);
+                }
+                underscoredNames = underscored;
+            }
+            return underscoredNames;
+        }
+
+        /**
+       	 * Derives a default SQL type from the corresponding property type.
+       	 * @see org.springframework.jdbc.core.StatementCreatorUtils#javaTypeToSqlParameterType
+       	 */
+        @Override
+        public int getSqlType(String paramName) {
+            return super.getSqlType(underscoredToCamel(paramName));
+        }
+
+        /**
+       	 * Register a SQL type for the given parameter.
+       	 * @param paramName the name of the parameter
+       	 * @param sqlType the SQL type of the parameter
+       	 */
+        @Override
+        public void registerSqlType(String paramName, int sqlType) {
+            super.registerSqlType(underscoredToCamel(paramName), sqlType);
+        }
+
+        /**
+       	 * Register a SQL type for the given parameter.
+       	 * @param paramName the name of the parameter
+       	 * @param typeName the type name of the parameter
+       	 */
+        @Override
+        public void registerTypeName(String paramName, String typeName) {
+            super.registerTypeName(underscoredToCamel(paramName), typeName);
+        }
+
+        /**
+       	 * Return the type name for the given parameter, if registered.
+       	 * @param paramName the name of the parameter
+       	 * @return the type name of the parameter,
+       	 * or <code>null</code> if not registered
+       	 */
+        @Override
+        public String getTypeName(String paramName) {
+            return super.getTypeName(underscoredToCamel(paramName));
+        }
+    }
+[/#if]
+[#if useTemplateStringSubstitution && useTypedSubstitutions]
+
+    /**
+     * Base class for typed substitutions of template queries placeholders
+     */
+    ${modifier}abstract static class Substitutions {
+        private final String[] keys;
+        private final String[] values;
+
+        private Substitutions(String[] keys) {
+            this.keys = keys;
+            this.values = new String[keys.length];
+        }
+
+        /**
+         * Checks and sets placeholder value
+         *
+         * @param slot placeholder index
+         * @param value placeholder value
+         * @throws DataAccessException if value is null or does not match SQL injection prevention regex
+         */
+        void set(int slot, Object value) throws DataAccessException {
+            if(null == value) throw new QueryException("Provided substitution value is null for key: [" + keys[slot] + "]");
+            String valstr = value.toString();
+            if(!SUBSTITUTE_VALUE_PATTERN.matcher(valstr).matches()) throw new QueryException("Provided substitution value: [" + valstr + "] " +
+                    "for key: [" + keys[slot] + "] does not match SQL injection prevention regex: [" + SUBSTITUTE_VALUE_PATTERN + "]");
+            values[slot] = valstr;
+        }
+    }
+[#list selects + updates as query]
+[#if query.template]
+
+    /**
+     * Substitutions for "${query.name}" query placeholders
+     */
+    ${modifier}static class ${query.name?cap_first}Substitutions extends Substitutions {
+        private static final String[] KEYS = {[#list query.placeholders as key]"${key}"[#if key_has_next], [/#if][/#list]};
+
+        ${modifier}${query.name?cap_first}Substitutions() {
+            super(KEYS);
+        }
+[#list query.placeholders as key]
+
+        /**
+         * Sets value for "${key}" placeholder
+         *
+         * @param value placeholder value
+         * @return substitutions itself
+         * @throws DataAccessException if value is null or does not match SQL injection prevention regex
+         */
+        ${modifier}${query.name?cap_first}Substitutions set${key?cap_first}(Object value) throws DataAccessException {
+            set(${key_index}, value);
+            return this;
+        }
+[/#list]
+    }
+[/#if]
+[/#list]
+[/#if]
+[#if prefetch]
+
+    /**
+     * Iterator, that executes query in background task and passes its rows to the caller
+     * through the bounded queue of chunks. Source iterator is opened, accessed and closed only
+     * from background task (so connection is obtained and released on the same thread),
+     * closing this iterator stops reading and waits for the source to be closed.
+     */
+    private abstract static class PrefetchIterator<T> implements CloseableIterator<T>, Runnable {
+        private static final Object[] END = new Object[0];
+
+        private final int chunkSize;
+        private final BlockingQueue<Object[]> queue = new ArrayBlockingQueue<Object[]>(2);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean closed = false;
+        private volatile Throwable failure;
+        private Object[] chunk = END;
+        private int index = 0;
+
+        private PrefetchIterator(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * Executes query, called from background task
+         *
+         * @return query iterator
+         */
+        protected abstract CloseableIterator<T> open();
+
+        @Override
+        public void run() {
+            CloseableIterator<T> source = null;
+            try {
+                if(!closed) source = open();
+                boolean exhausted = null == source;
+                while(!closed && !exhausted) {
+                    Object[] ch = new Object[chunkSize];
+                    int size = 0;
+                    while(size < chunkSize && source.hasNext()) {
+                        ch[size] = source.next();
+                        size += 1;
+                    }
+                    exhausted = size < chunkSize;
+                    if(size > 0) queue.put(exhausted ? Arrays.copyOf(ch, size) : ch);
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = e;
+            } catch(Throwable e) {
+                failure = e;
+            } finally {
+                try {
+                    if(null != source) source.close();
+                } finally {
+                    putEnd();
+                    done.countDown();
+                }
+            }
+        }
+
+        private void putEnd() {
+            // queue is cleared on close, so put cannot block after that
+            boolean interrupted = false;
+            while(!closed) {
+                try {
+                    queue.put(END);
+                    break;
+                } catch(InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if(interrupted) Thread.currentThread().interrupt();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(closed) return false;
+            if(index < chunk.length) return true;
+            try {
+                chunk = queue.take();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new QueryException("Prefetching iterator was interrupted", e);
+            }
+            index = 0;
+            if(chunk.length > 0) return true;
+            close();
+            Throwable err = failure;
+            if(null == err) return false;
+            if(err instanceof RuntimeException) throw (RuntimeException) err;
+            if(err instanceof Error) throw (Error) err;
+            throw new QueryException("Prefetching iterator background task failed", err);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if(!hasNext()) throw new NoSuchElementException();
+            T res = (T) chunk[index];
+            chunk[index] = null;
+            index += 1;
+            return res;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+
+        @Override
+        public void close() {
+            if(closed) return;
+            closed = true;
+            chunk = END;
+            queue.clear();
+            try {
+                done.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+[/#if]
+[#if streams]
+
+    private static <T> Stream<T> stream(final CloseableIterator<T> iter) {
+        return StreamSupport.stream(new ChunkSpliterator<T>(iter), false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                iter.close();
+            }
+        });
+    }
+
+    /**
+     * Spliterator over query cursor, splits by handing off chunks of already fetched rows,
+     * so in parallel streams single thread reads results while other ones process the chunks
+     */
+    private static final class ChunkSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+        private static final int CHUNK_SIZE = 1024;
+
+        private final CloseableIterator<T> iter;
+
+        private ChunkSpliterator(CloseableIterator<T> iter) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED);
+            this.iter = iter;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if(!iter.hasNext()) return false;
+            action.accept(iter.next());
+            return true;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            Object[] chunk = new Object[CHUNK_SIZE];
+            int size = 0;
+            while(size < CHUNK_SIZE && iter.hasNext()) {
+                chunk[size] = iter.next();
+                size += 1;
+            }
+            if(0 == size) return null;
+            return Spliterators.spliterator(chunk, 0, size, Spliterator.ORDERED);
+        }
+    }
+[/#if]
+[#if publishers]
+
+    private static final int PUBLISHER_MIN_FETCH_SIZE = 100;
+    private static final int PUBLISHER_MAX_FETCH_SIZE = 1000;
+
+    /**
+     * Creates statement settings with fetch size following subscriber demand. Fetch size from query directives
+     * is used as is, otherwise demand may only raise jdbc template fetch size (or {@code PUBLISHER_MIN_FETCH_SIZE}
+     * if template doesn't set it) up to {@code PUBLISHER_MAX_FETCH_SIZE}, so small initial requests
+     * don't cause round trip per row. Unbounded demand keeps template fetch size.
+     *
+     * @param demand number of rows requested by subscriber
+     * @param settings statement settings from query directives, may be null
+     * @return statement settings for publisher query
+     */
+    private StatementSettings demandSettings(long demand, StatementSettings settings) {
+        if(null != settings && -1 != settings.fetchSize) return settings;
+        int fetchSize = -1;
+        if(Long.MAX_VALUE != demand) {
+            JdbcOperations ops = jt.getJdbcOperations();
+            int templateFetchSize = ops instanceof JdbcTemplate ? ((JdbcTemplate) ops).getFetchSize() : -1;
+            int floor = templateFetchSize > 0 ? templateFetchSize : PUBLISHER_MIN_FETCH_SIZE;
+            fetchSize = (int) Math.max(floor, Math.min(demand, PUBLISHER_MAX_FETCH_SIZE));
+        }
+        if(null == settings) return new StatementSettings(fetchSize, -1, -1);
+        return new StatementSettings(fetchSize, settings.queryTimeout, settings.maxRows);
+    }
+
+    /**
+     * Publisher, that opens new query iterator for each subscription
+     */
+    private abstract static class IteratorPublisher<T> implements Publisher<T> {
+        private final Executor executor;
+
+        private IteratorPublisher(Executor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Executes query
+         *
+         * @param demand number of rows requested by subscriber before query execution
+         * @return query iterator
+         */
+        protected abstract CloseableIterator<T> open(long demand);
+
+        @Override
+        public void subscribe(Subscriber<? super T> subscriber) {
+            if(null == subscriber) throw new NullPointerException("Provided subscriber is null");
+            IteratorSubscription<T> subscription = new IteratorSubscription<T>(this, subscriber);
+            subscriber.onSubscribe(subscription);
+        }
+    }
+
+    /**
+     * Subscription, that reads rows from query iterator on demand. All subscriber signals are sent
+     * from the tasks run by publisher executor, no more than one task runs at any time.
+     * Query is executed on first request with fetch size set from requested number of rows,
+     * cancellation closes query iterator.
+     */
+    private static final class IteratorSubscription<T> implements Subscription, Runnable {
+        private final IteratorPublisher<T> publisher;
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile IllegalArgumentException invalidRequest;
+        private CloseableIterator<T> iter;
+        private boolean done = false;
+
+        private IteratorSubscription(IteratorPublisher<T> publisher, Subscriber<? super T> subscriber) {
+            this.publisher = publisher;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested number of rows must be positive: [" + n + "]");
+            } else {
+                for(;;) {
+                    long cur = requested.get();
+                    long upd = cur + n;
+                    if(upd < 0) upd = Long.MAX_VALUE;
+                    if(requested.compareAndSet(cur, upd)) break;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if(0 != wip.getAndIncrement()) return;
+            try {
+                publisher.executor.execute(this);
+            } catch(RuntimeException e) {
+                // wip is left non-zero so no other tasks will be scheduled
+                close();
+                if(!cancelled) subscriber.onError(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            for(;;) {
+                if(!done) drain();
+                missed = wip.addAndGet(-missed);
+                if(0 == missed) return;
+            }
+        }
+
+        private void drain() {
+            try {
+                if(cancelled) {
+                    close();
+                    return;
+                }
+                if(null != invalidRequest) {
+                    close();
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+                long req = requested.get();
+                if(null == iter) iter = publisher.open(req);
+                long emitted = 0;
+                while(emitted != req) {
+                    if(cancelled) {
+                        close();
+                        return;
+                    }
+                    if(!iter.hasNext()) {
+                        close();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(iter.next());
+                    emitted += 1;
+                }
+                if(Long.MAX_VALUE != req) requested.addAndGet(-emitted);
+            } catch(Throwable e) {
+                // terminal signal may be already sent if subscriber failed on it
+                boolean terminated = done;
+                close();
+                if(!terminated) subscriber.onError(e);
+            }
+        }
+
+        private void close() {
+            CloseableIterator<T> it = iter;
+            iter = null;
+            if(null != it) it.close();
+            done = true;
+        }
+    }
+[/#if]
+[#if limitsRows]
+
+    /**
+     * Executes named parameters query limiting its max rows and fetch size
+     *
+     * @param template jdbc template
+[#if hasStatementSettings]
+     * @param settings statement settings from query directives, may be null
+[/#if]
+     * @param parsed parsed query text with named parameters
+     * @param params query parameters
+     * @param maxRows max number of rows to read
+     * @param rse result set extractor
+     * @param <T> extractor return type
+     * @return extracted result
+     * @throws DataAccessException on query error
+     */
+    private static <T> T queryLimited(${jtClass} template, [#if hasStatementSettings]StatementSettings settings, [/#if]ParsedSql parsed, SqlParameterSource params, int maxRows,
+                                      ResultSetExtractor<T> rse) throws DataAccessException {
+        String sqlToUse = NamedParameterUtils.substituteNamedParameters(parsed, params);
+        Object[] args = NamedParameterUtils.buildValueArray(parsed, params, null);
+        int[] types = NamedParameterUtils.buildSqlTypeArray(parsed, params);
+        PreparedStatementSetter pss = new PreparedStatementCreatorFactory(sqlToUse, types).newPreparedStatementSetter(args);
+        [#if hasStatementSettings]
+        return template.getJdbcOperations().query(sqlToUse, tuned(settings, new LimitedSetter(maxRows, pss)), rse);
+[#else]
+        return template.getJdbcOperations().query(sqlToUse, new LimitedSetter(maxRows, pss), rse);
+[/#if]
+    }
+
+    /**
+     * Statement setter, that lowers statement max rows and fetch size to the specified limit
+     * and sets parameters using delegate setter or provided arguments. Applied after template
+     * statement settings, so smaller limits from template are preserved.
+     */
+    private static class LimitedSetter implements PreparedStatementSetter, ParameterDisposer {
+        private final int limit;
+        private final PreparedStatementSetter delegate;
+        private final Object[] args;
+        private final int[] types;
+
+        private LimitedSetter(int limit, PreparedStatementSetter delegate) {
+            this.limit = limit;
+            this.delegate = delegate;
+            this.args = null;
+            this.types = null;
+        }
+
+        private LimitedSetter(int limit, Object[] args, int[] types) {
+            this.limit = limit;
+            this.delegate = null;
+            this.args = args;
+            this.types = types;
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps) throws SQLException {
+            if(0 == ps.getMaxRows() || ps.getMaxRows() > limit) ps.setMaxRows(limit);
+            // max rows may be lower than limit, some drivers reject fetch size larger than max rows
+            int maxRows = ps.getMaxRows();
+            if(0 == ps.getFetchSize() || ps.getFetchSize() > maxRows) ps.setFetchSize(maxRows);
+            if(null != delegate) {
+                delegate.setValues(ps);
+            } else if(null != args) {
+                for(int i = 0; i < args.length; i++) {
+                    StatementCreatorUtils.setParameterValue(ps, i + 1, types[i], args[i]);
+                }
+            }
+        }
+
+        @Override
+        public void cleanupParameters() {
+            if(delegate instanceof ParameterDisposer) {
+                ((ParameterDisposer) delegate).cleanupParameters();
+            } else if(null != args) {
+                StatementCreatorUtils.cleanupParameters(args);
+            }
+        }
+    }
+[/#if]
+[#if limited]
+
+    private static final ResultSetExtractor<Boolean> EXISTS_EXTRACTOR = new ResultSetExtractor<Boolean>() {
+        @Override
+        public Boolean extractData(ResultSet rs) throws SQLException {
+            return rs.next();
+        }
+    };
+
+    /**
+     * Extractor, that maps no more than specified number of rows and stops reading result set
+     */
+    private static class FirstRowsExtractor<T> implements ResultSetExtractor<List<T>> {
+        private final int limit;
+        private final RowMapper<T> mapper;
+
+        private FirstRowsExtractor(int limit, RowMapper<T> mapper) {
+            this.limit = limit;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public List<T> extractData(ResultSet rs) throws SQLException {
+            List<T> res = new ArrayList<T>();
+            for(int rowNum = 0; rowNum < limit && rs.next(); rowNum++) {
+                res.add(mapper.mapRow(rs, rowNum));
+            }
+            return res;
+        }
+    }
+[/#if]
+[#if lazyLists]
+
+    /**
+     * Opens query cursor for lazy list, may be called multiple times
+     */
+    private interface CursorSource<T> {
+        CloseableIterator<T> open();
+    }
+
+    /**
+     * Read-only list backed by query cursor. Rows are read from the cursor and mapped by pages on first access,
+     * no more than specified number of pages is kept in memory. List size becomes known only after cursor
+     * is exhausted, so {@code size()} reads all remaining rows. Access to the evicted page re-executes
+     * query and skips preceding rows, so sequential access is expected. List should be closed
+     * to release database resources if it was not read to the end. Not thread-safe.
+     */
+    ${modifier}static final class LazyList<T> extends AbstractList<T> implements Closeable {
+        private final int pageSize;
+        private final CursorSource<T> source;
+        private final Map<Integer, List<T>> pages;
+        private CloseableIterator<T> iter;
+        private int readPages;
+        private int size = -1;
+
+        private LazyList(int pageSize, final int maxPages, CursorSource<T> source) {
+            this.pageSize = pageSize;
+            this.source = source;
+            this.pages = new LinkedHashMap<Integer, List<T>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 2530829127368484372L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+                    return size() > maxPages;
+                }
+            };
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public T get(int index) {
+            List<T> page = pageFor(index);
+            if(null == page) throw new IndexOutOfBoundsException("Index: [" + index + "], size: [" + size() + "]");
+            return page.get(index % pageSize);
+        }
+
+        /**
+         * Returns list size, reads all remaining rows from the cursor on first call
+         *
+         * @return list size
+         */
+        @Override
+        public int size() {
+            if(size < 0) load(Integer.MAX_VALUE);
+            return size;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isEmpty() {
+            return null == pageFor(0);
+        }
+
+        /**
+         * Returns iterator, that reads list elements sequentially without reading all rows in advance
+         *
+         * @return list iterator
+         */
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return null != pageFor(index);
+                }
+
+                @Override
+                public T next() {
+                    if(!hasNext()) throw new NoSuchElementException();
+                    return get(index++);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("remove");
+                }
+            };
+        }
+
+        /**
+         * Closes query cursor, loaded pages remain available
+         */
+        @Override
+        public void close() {
+            if(null != iter) {
+                CloseableIterator<T> it = iter;
+                iter = null;
+                it.close();
+            }
+        }
+
+        private List<T> pageFor(int index) {
+            if(index < 0 || (size >= 0 && index >= size)) return null;
+            int pageNum = index / pageSize;
+            List<T> page = pages.get(pageNum);
+            if(null == page) page = load(pageNum);
+            return index % pageSize < page.size() ? page : null;
+        }
+
+        private List<T> load(int pageNum) {
+            if(null == iter || readPages > pageNum) {
+                close();
+                iter = source.open();
+                readPages = 0;
+            }
+            List<T> page = Collections.emptyList();
+            while(null != iter && readPages <= pageNum) {
+                page = readPage();
+            }
+            return readPages > pageNum ? page : Collections.<T>emptyList();
+        }
+
+        private List<T> readPage() {
+            List<T> page = new ArrayList<T>(pageSize);
+            while(page.size() < pageSize && iter.hasNext()) {
+                page.add(iter.next());
+            }
+            long read = (long) readPages * pageSize + page.size();
+            if(read > Integer.MAX_VALUE) {
+                close();
+                throw new QueryException("Lazy list size exceeds max list size: [" + Integer.MAX_VALUE + "]");
+            }
+            if(page.size() < pageSize) {
+                size = (int) read;
+                close();
+            }
+            if(page.size() > 0) pages.put(readPages, page);
+            readPages += 1;
+            return page;
+        }
+    }
+[/#if]
+[#if hasPageable]
+
+    private static final Pattern ORDER_BY_PATTERN = Pattern.compile("order\\s+by\\b", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Wraps query into keyset pagination query ordered by key column, rows number is limited
+     * with statement max rows, that doesn't depend on database dialect
+     *
+     * @param sql query text
+     * @param keyColumn key column label
+     * @param seek whether to add predicate for rows following the {@code keyset_after_key} parameter
+     * @return keyset pagination query text
+     */
+    private static String keysetSql(String sql, String keyColumn, boolean seek) {
+        StringBuilder sb = new StringBuilder("select * from (").append(pageableSql(sql)).append(") keyset_page");
+        if(seek) sb.append(" where keyset_page.").append(keyColumn).append(" > :keyset_after_key");
+        return sb.append(" order by keyset_page.").append(keyColumn).toString();
+    }
+
+    /**
+     * Removes trailing semicolons and top-level {@code order by} clause from query,
+     * pages are ordered by key column in outer query and some databases
+     * reject {@code order by} in derived tables
+     *
+     * @param sql query text
+     * @return query text suitable for derived table
+     */
+    private static String pageableSql(String sql) {
+        int end = sql.length();
+        while(end > 0 && (';' == sql.charAt(end - 1) || Character.isWhitespace(sql.charAt(end - 1)))) end -= 1;
+        int orderBy = end;
+        int depth = 0;
+        char quote = 0;
+        for(int i = 0; i < end; i++) {
+            char ch = sql.charAt(i);
+            if(0 != quote) {
+                if(quote == ch) quote = 0;
+            } else if('\'' == ch || '"' == ch) {
+                quote = ch;
+            } else if('(' == ch) {
+                depth += 1;
+            } else if(')' == ch) {
+                depth -= 1;
+            } else if(0 == depth && ('o' == ch || 'O' == ch) && i > 0 && Character.isWhitespace(sql.charAt(i - 1)) &&
+                    ORDER_BY_PATTERN.matcher(sql).region(i, end).lookingAt()) {
+                orderBy = i;
+            }
+        }
+        return sql.substring(0, orderBy);
+    }
+
+    /**
+     * Page of query results with the key to request next page
+     */
+    ${modifier}static final class Page<T, K> {
+        private final List<T> rows;
+        private final K nextKey;
+
+        private Page(List<T> rows, K nextKey) {
+            this.rows = rows;
+            this.nextKey = nextKey;
+        }
+
+        /**
+         * Page rows accessor
+         *
+         * @return page rows
+         */
+        ${modifier}List<T> getRows() {
+            return rows;
+        }
+
+        /**
+         * Key to request next page
+         *
+         * @return key of the last row of this page, {@code null} if this page is the last one
+         */
+        ${modifier}K getNextKey() {
+            return nextKey;
+        }
+
+        /**
+         * Whether next page may contain rows
+         *
+         * @return whether next page may contain rows
+         */
+        ${modifier}boolean hasNext() {
+            return null != nextKey;
+        }
+    }
+
+    /**
+     * Parameters source, that adds {@code keyset_after_key} parameter to the query parameters
+     */
+    private static class KeysetParamSource extends AbstractSqlParameterSource {
+        private static final String KEY_PARAM = "keyset_after_key";
+
+        private final SqlParameterSource delegate;
+        private final Object afterKey;
+        private final int keySqlType;
+
+        private KeysetParamSource(SqlParameterSource delegate, Object afterKey, int keySqlType) {
+            this.delegate = delegate;
+            this.afterKey = afterKey;
+            this.keySqlType = keySqlType;
+        }
+
+        @Override
+        public boolean hasValue(String paramName) {
+            return KEY_PARAM.equals(paramName) || (null != delegate && delegate.hasValue(paramName));
+        }
+
+        @Override
+        public Object getValue(String paramName) throws IllegalArgumentException {
+            if(KEY_PARAM.equals(paramName)) return afterKey;
+            if(null == delegate) throw new IllegalArgumentException("No value registered for key '" + paramName + "'");
+            return delegate.getValue(paramName);
+        }
+
+        @Override
+        public int getSqlType(String paramName) {
+            if(KEY_PARAM.equals(paramName)) return keySqlType;
+            return null != delegate ? delegate.getSqlType(paramName) : TYPE_UNKNOWN;
+        }
+    }
+
+    /**
+     * Extractor, that maps no more than specified number of rows and remembers key of the last row,
+     * key values are checked to be not null and unique
+     */
+    private static class PageExtractor<T, K> implements ResultSetExtractor<Page<T, K>> {
+        private final int limit;
+        private final RowMapper<T> mapper;
+        private final String keyColumn;
+        private final Class<K> keyType;
+
+        private PageExtractor(int limit, RowMapper<T> mapper, String keyColumn, Class<K> keyType) {
+            this.limit = limit;
+            this.mapper = mapper;
+            this.keyColumn = keyColumn;
+            this.keyType = keyType;
+        }
+
+        @Override
+        public Page<T, K> extractData(ResultSet rs) throws SQLException {
+            List<T> rows = new ArrayList<T>();
+            K lastKey = null;
+            int keyIndex = -1;
+            for(int rowNum = 0; rowNum < limit && rs.next(); rowNum++) {
+                if(-1 == keyIndex) keyIndex = rs.findColumn(keyColumn);
+                rows.add(mapper.mapRow(rs, rowNum));
+                lastKey = readKey(rs, keyIndex, lastKey);
+            }
+            // one row after the page is read to check key uniqueness on the page boundary
+            if(rows.size() < limit || !rs.next()) return new Page<T, K>(rows, null);
+            readKey(rs, keyIndex, lastKey);
+            return new Page<T, K>(rows, lastKey);
+        }
+
+        // rows are ordered by key, so duplicate keys are adjacent
+        private K readKey(ResultSet rs, int keyIndex, K previous) throws SQLException {
+            K key = keyType.cast(JdbcUtils.getResultSetValue(rs, keyIndex, keyType));
+            if(null == key) throw new QueryException("Null value of page key column: [" + keyColumn + "]");
+            if(key.equals(previous)) throw new QueryException("Duplicate value: [" + key + "] of page key column: " +
+                    "[" + keyColumn + "], page key values must be unique");
+            return key;
+        }
+    }
+
+    /**
+     * Iterator, that reads query results by pages, each page is requested using key
+     * of the last row of previous page
+     */
+    private abstract static class KeysetIterator<T, K> implements Iterator<T> {
+        private Iterator<T> page = Collections.<T>emptyList().iterator();
+        private K nextKey;
+        private boolean finished;
+
+        /**
+         * Reads page following the specified key
+         *
+         * @param afterKey key of the last row of previous page, {@code null} for the first page
+         * @return page of results
+         */
+        protected abstract Page<T, K> fetch(K afterKey);
+
+        @Override
+        public boolean hasNext() {
+            while(!page.hasNext() && !finished) {
+                Page<T, K> pg = fetch(nextKey);
+                page = pg.getRows().iterator();
+                nextKey = pg.getNextKey();
+                finished = !pg.hasNext();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if(!hasNext()) throw new NoSuchElementException();
+            return page.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+[/#if]
+[#if spills]
+
+    private static final int SPILL_SEGMENT_MAX_SIZE = 1 << 30;
+    private static final Charset SPILL_CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Writes and reads query result rows in compact binary form
+     */
+    private interface RowCodec<T> {
+        void write(T row, DataOutput out) throws IOException;
+
+        T read(ByteBuffer in);
+    }
+
+    /**
+     * Buffer of query result rows in compact binary form. Rows are kept in memory until memory budget
+     * is exceeded, then all rows are spilled to temporary file. Temporary file is split into segments
+     * of no more than 1GB at row boundaries, segments are memory-mapped and shared by all iterators.
+     * Must be closed to delete temporary file, mapped memory is released on garbage collection.
+     * Not thread-safe on filling, may be iterated concurrently after it was returned to caller.
+     */
+    ${modifier}static final class SpillBuffer<T> implements Iterable<T>, Closeable {
+        private final RowCodec<T> codec;
+        private final int memoryBudget;
+        private final File spillDir;
+        private final int segmentMaxSize;
+        private final ByteArrayOutputStream scratchBytes = new ByteArrayOutputStream();
+        private final DataOutputStream scratch = new DataOutputStream(scratchBytes);
+        private SpillBytes memory = new SpillBytes();
+        private File file;
+        private OutputStream fileOut;
+        private long fileSize;
+        private long segmentStart;
+        private final List<Long> segmentStarts = new ArrayList<Long>();
+        private ByteBuffer[] segments;
+        private long size;
+        private volatile boolean closed;
+
+        private SpillBuffer(RowCodec<T> codec, int memoryBudget, File spillDir, int segmentMaxSize) {
+            this.codec = codec;
+            this.memoryBudget = memoryBudget;
+            this.spillDir = spillDir;
+            this.segmentMaxSize = segmentMaxSize;
+        }
+
+        /**
+         * Number of buffered rows
+         *
+         * @return number of buffered rows
+         */
+        ${modifier}long size() {
+            return size;
+        }
+
+        /**
+         * Whether rows were spilled to temporary file
+         *
+         * @return whether rows were spilled to temporary file
+         */
+        ${modifier}boolean isSpilled() {
+            return null != file;
+        }
+
+        /**
+         * Returns iterator over buffered rows, each call starts from the first row
+         *
+         * @return iterator over buffered rows
+         */
+        @Override
+        public Iterator<T> iterator() {
+            if(closed) throw new QueryException("Spill buffer is closed");
+            final ByteBuffer[] segs = segments;
+            return new Iterator<T>() {
+                private int index = 0;
+                private ByteBuffer current = segs[0].duplicate();
+
+                @Override
+                public boolean hasNext() {
+                    if(closed) throw new QueryException("Spill buffer is closed");
+                    while(!current.hasRemaining() && index + 1 < segs.length) {
+                        index += 1;
+                        current = segs[index].duplicate();
+                    }
+                    return current.hasRemaining();
+                }
+
+                @Override
+                public T next() {
+                    if(!hasNext()) throw new NoSuchElementException();
+                    return codec.read(current);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("remove");
+                }
+            };
+        }
+
+        /**
+         * Releases buffered rows and deletes temporary file
+         */
+        @Override
+        public void close() {
+            if(closed) return;
+            closed = true;
+            segments = null;
+            memory = null;
+            if(null != fileOut) {
+                try {
+                    fileOut.close();
+                } catch(IOException e) {
+                    // ignore, file is deleted anyway
+                }
+            }
+            if(null != file && !file.delete()) file.deleteOnExit();
+        }
+
+        private void add(T row) throws IOException {
+            scratchBytes.reset();
+            codec.write(row, scratch);
+            scratch.flush();
+            int len = scratchBytes.size();
+            if(null == fileOut && memory.size() + (long) len > memoryBudget) spill();
+            if(null == fileOut) {
+                scratchBytes.writeTo(memory);
+            } else {
+                if(len > segmentMaxSize) throw new QueryException(
+                        "Row size: [" + len + "] exceeds max segment size: [" + segmentMaxSize + "]");
+                if(fileSize - segmentStart + len > segmentMaxSize) {
+                    segmentStart = fileSize;
+                    segmentStarts.add(segmentStart);
+                }
+                scratchBytes.writeTo(fileOut);
+                fileSize += len;
+            }
+            size += 1;
+        }
+
+        private void spill() throws IOException {
+            file = File.createTempFile("spill", ".rows", spillDir);
+            fileOut = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+            memory.writeTo(fileOut);
+            fileSize = memory.size();
+            segmentStart = 0;
+            segmentStarts.add(segmentStart);
+            memory = null;
+        }
+
+        private void finish() throws IOException {
+            if(null == fileOut) {
+                segments = new ByteBuffer[]{memory.buffer()};
+                return;
+            }
+            fileOut.close();
+            fileOut = null;
+            segments = new ByteBuffer[segmentStarts.size()];
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                for(int i = 0; i < segments.length; i++) {
+                    long start = segmentStarts.get(i);
+                    long end = i + 1 < segments.length ? segmentStarts.get(i + 1) : fileSize;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                }
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * Byte array stream, that exposes its contents without copying
+     */
+    private static class SpillBytes extends ByteArrayOutputStream {
+        private ByteBuffer buffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     * Extractor, that maps result rows and writes them into spill buffer
+     */
+    private static class SpillExtractor<T> implements ResultSetExtractor<SpillBuffer<T>> {
+        private final RowMapper<T> mapper;
+        private final RowCodec<T> codec;
+        private final int memoryBudget;
+        private final File spillDir;
+
+        private SpillExtractor(RowMapper<T> mapper, RowCodec<T> codec, int memoryBudget, File spillDir) {
+            this.mapper = mapper;
+            this.codec = codec;
+            this.memoryBudget = memoryBudget;
+            this.spillDir = spillDir;
+        }
+
+        @Override
+        public SpillBuffer<T> extractData(ResultSet rs) throws SQLException {
+            SpillBuffer<T> buffer = new SpillBuffer<T>(codec, memoryBudget, spillDir, SPILL_SEGMENT_MAX_SIZE);
+            boolean success = false;
+            try {
+                for(int rowNum = 0; rs.next(); rowNum++) {
+                    buffer.add(mapper.mapRow(rs, rowNum));
+                }
+                buffer.finish();
+                success = true;
+                return buffer;
+            } catch(IOException e) {
+                throw new QueryException("Error spilling query results to temporary file: [" + buffer.file + "]", e);
+            } finally {
+                if(!success) buffer.close();
+            }
+        }
+    }
+
+    private static void writeSpilled(DataOutput out, String value) throws IOException {
+        writeSpilled(out, null != value ? value.getBytes(SPILL_CHARSET) : null);
+    }
+
+    private static void writeSpilled(DataOutput out, byte[] value) throws IOException {
+        if(null == value) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    private static void writeSpilled(DataOutput out, BigDecimal value) throws IOException {
+        if(null == value) {
+            out.writeInt(-1);
+        } else {
+            writeSpilled(out, value.unscaledValue().toByteArray());
+            out.writeInt(value.scale());
+        }
+    }
+
+    private static void writeSpilled(DataOutput out, Date value) throws IOException {
+        out.writeBoolean(null != value);
+        if(null != value) out.writeLong(value.getTime());
     }
-[#if useCheckSingleRowUpdates]
+
+    private static byte[] readSpilledBytes(ByteBuffer in) {
+        int len = in.getInt();
+        if(-1 == len) return null;
+        byte[] res = new byte[len];
+        in.get(res);
+        return res;
+    }
+
+    private static String readSpilledString(ByteBuffer in) {
+        byte[] bytes = readSpilledBytes(in);
+        return null != bytes ? new String(bytes, SPILL_CHARSET) : null;
+    }
+
+    private static BigDecimal readSpilledDecimal(ByteBuffer in) {
+        byte[] unscaled = readSpilledBytes(in);
+        return null != unscaled ? new BigDecimal(new BigInteger(unscaled), in.getInt()) : null;
+    }
+
+    private static Date readSpilledDate(ByteBuffer in) {
+        return 0 != in.get() ? new Date(in.getLong()) : null;
+    }
+[/#if]
+[#if exports]
 
     /**
-     * Checks whether provided results size equals '1'
-     *
-     * @param updatedRowsCount results size
-     * @throws IncorrectResultSizeDataAccessException
+     * Format of exported query results
      */
-    private void checkSingleRowUpdated(int updatedRowsCount) throws IncorrectResultSizeDataAccessException {
-        if(0 == updatedRowsCount) throw new EmptyResultDataAccessException(1);
-        if(updatedRowsCount > 1) throw new IncorrectResultSizeDataAccessException(1, updatedRowsCount);
+    ${modifier}enum ExportFormat {
+        /**
+         * Comma-separated values (RFC 4180) in UTF-8 with header row of column names,
+         * {@code NULL} values are written as empty fields, binary values as hex strings
+         */
+        CSV,
+        /**
+         * Binary rows without header, each row starts with 4-byte number of columns, each column value
+         * starts with 4-byte length of value bytes ({@code -1} for {@code NULL}), numbers are big-endian,
+         * strings and decimals are UTF-8 text, dates are 8-byte epoch milliseconds
+         */
+        BINARY
     }
-[/#if]
-[#if useBatchInserts]
+
+    private static final int EXPORT_BUFFER_SIZE = 1 << 16;
+    private static final Charset EXPORT_CHARSET = Charset.forName("UTF-8");
+    private static final byte[] EXPORT_HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
 
     /**
-     * Methods for performing batch inserts using provided iterators as parameters
-     *
-     * @param sql sql query text
-     * @param paramsIter query parameters iterator
-     * @param batchSize size of single batch
-     * @return number of updated rows reported by JDBC driver,
-     * {@code -1} if such information is not available
+     * Encodes result values into byte buffer and writes it to channel when buffer is full,
+     * heap buffer is used as channels copy it through their own cached direct buffers
      */
-    private int batchUpdate(String sql, Iterator<? extends Object> paramsIter, int batchSize) {
-        boolean hasInfoFromDb = true;
-        // mutable for lower overhead
-        ${bpspsClass}[] params = new ${bpspsClass}[batchSize];
-        int updated = 0;
-        int index = 0;
-        // main cycle
-        while(paramsIter.hasNext()) {
-            params[index] = new ${bpspsClass}(paramsIter.next());
-            index += 1;
-            if(0 == index % batchSize) {
-                int[] upArr = jt.batchUpdate(sql, params);
-                if(hasInfoFromDb) {
-                    int up = countUpdatedRows(upArr);
-                    if(-1 == up) hasInfoFromDb = false;
-                    updated += up;
-                }
-                index = 0;
+    private static final class ExportWriter {
+        private final WritableByteChannel channel;
+        private final boolean csv;
+        private final ByteBuffer buf = ByteBuffer.allocate(EXPORT_BUFFER_SIZE);
+        private final CharsetEncoder encoder = EXPORT_CHARSET.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private boolean firstField;
+
+        private ExportWriter(WritableByteChannel channel, ExportFormat format) {
+            this.channel = channel;
+            this.csv = ExportFormat.CSV == format;
+        }
+
+        private void writeHeader(String... columns) throws IOException {
+            if(!csv) return;
+            startRow(columns.length);
+            for(String col : columns) {
+                writeString(col);
             }
+            endRow();
         }
-        // tail
-        if(index > 0) {
-            ${bpspsClass}[] partParArray = new ${bpspsClass}[index];
-            System.arraycopy(params, 0, partParArray, 0, index);
-            int[] upArr = jt.batchUpdate(sql, partParArray);
-            if(hasInfoFromDb) {
-                int up = countUpdatedRows(upArr);
-                if(-1 == up) hasInfoFromDb = false;
-                updated += up;
+
+        private void startRow(int columnsCount) throws IOException {
+            if(csv) {
+                firstField = true;
+            } else {
+                ensure(4);
+                buf.putInt(columnsCount);
             }
         }
-        return hasInfoFromDb ? updated : -1;
-    }
 
-    // returns -1 on no info from db
-    private static int countUpdatedRows(int[] dbReturned) {
-        int res = 0;
-        for(int updated : dbReturned) {
-            if(updated < 0) return -1;
-            res += updated;
+        private void endRow() throws IOException {
+            if(csv) {
+                ensure(2);
+                buf.put((byte) '\r').put((byte) '\n');
+            }
         }
-        return res;
-    }
-[/#if]
-[#if useTemplateStringSubstitution]
 
-    /**
-     * Substitute placeholders in sql query template
-     *
-     * @param template sql query template
-     * @param substitutions substitutions array {@code [key1, val2, key2, val2,...]}
-     * @return sql query string
-     */
-    private String substitute(String template, Object[] substitutions) {
-        if(null == substitutions) throw new QueryException("Provided substitutions array is null");
-        if(0 == substitutions.length) throw new QueryException("Provided substitutions array is empty");
-        if(0 != substitutions.length % 2) throw new QueryException("Placeholders vararg array must have even numbers of elements " +
-                "(they will be represented as [key1, val2, key2, val2,...]), but length was: [" + substitutions.length + "]");
-        String sql = template;
-        for (int i = 0; i < substitutions.length; i += 2) {
-            Object key = substitutions[i];
-            if(null == key) throw new QueryException("Provided substitutions vararg array element (key) " +
-                    "is null at position: [" + i + "]");
-            String keystr = key.toString();
-            if(!SUBSTITUTE_KEY_RESTRICTION_PATTERN.matcher(keystr).matches()) throw new QueryException(
-                    "Provided substitutions vararg array element (key): [" + keystr + "] does not match " +
-                    "restriction regex: [" + SUBSTITUTE_KEY_RESTRICTION_PATTERN + "] at position: [" + i + "]");
-            Object val = substitutions[i+1];
-            if(null == val) throw new QueryException("Provided substitutions vararg array element (value) " +
-                    "is null at position: [" + i + "]");
-            String valstr = val.toString();
-            if(!SUBSTITUTE_VALUE_PATTERN.matcher(valstr).matches()) throw new QueryException("Provided substitutions vararg array element " +
-                    "(value) does not match SQL injection prevention regex: [" + SUBSTITUTE_VALUE_PATTERN + "] at position: [" + i + "]");
-            Pattern existed = substituteMap.get(keystr);
-            final Pattern regex;
-            if(null == existed) {
-                regex = Pattern.compile(SUBSTITUTE_KEY_PATTERN_PREFIX + keystr + SUBSTITUTE_KEY_PATTERN_POSTFIX, Pattern.DOTALL);
-                substituteMap.put(keystr, regex);
-            } else regex = existed;
-            Matcher ma = regex.matcher(sql);
-            String replaced = ma.replaceAll(valstr);
-            if(sql.equals(replaced)) throw new QueryException("Provided substitutions key: [" + key + "] not found in template: [" + sql + "]");
-            sql = replaced;
+        private void writeLong(long value, boolean isNull) throws IOException {
+            if(csv) {
+                separator();
+                if(!isNull) putDigits(value);
+            } else if(isNull) {
+                putNull();
+            } else {
+                ensure(12);
+                buf.putInt(8).putLong(value);
+            }
         }
-        return sql;
-    }
-[/#if]
-[#if useUnderscoredToCamel]
 
-    private static String underscoredToCamel(String underscored) {
-        if(null == underscored || 0 == underscored.length() || !underscored.contains("_")) return underscored;
-        StringBuilder sb = new StringBuilder();
-        boolean usFound = false;
-        for(int i = 0; i< underscored.length(); i++) {
-            char ch = underscored.charAt(i);
-            if('_' == ch) {
-                if(usFound) { // double underscore
-                    sb.append('_');
+        private void writeInt(int value, boolean isNull) throws IOException {
+            if(csv || isNull) {
+                writeLong(value, isNull);
+            } else {
+                ensure(8);
+                buf.putInt(4).putInt(value);
+            }
+        }
+
+        private void writeShort(short value, boolean isNull) throws IOException {
+            if(csv || isNull) {
+                writeLong(value, isNull);
+            } else {
+                ensure(6);
+                buf.putInt(2).putShort(value);
+            }
+        }
+
+        private void writeDouble(double value, boolean isNull) throws IOException {
+            if(csv) {
+                separator();
+                if(!isNull) putAscii(Double.toString(value));
+            } else if(isNull) {
+                putNull();
+            } else {
+                ensure(12);
+                buf.putInt(8).putDouble(value);
+            }
+        }
+
+        private void writeFloat(float value, boolean isNull) throws IOException {
+            if(csv) {
+                separator();
+                if(!isNull) putAscii(Float.toString(value));
+            } else if(isNull) {
+                putNull();
+            } else {
+                ensure(8);
+                buf.putInt(4).putFloat(value);
+            }
+        }
+
+        private void writeBoolean(boolean value, boolean isNull) throws IOException {
+            if(csv) {
+                separator();
+                if(!isNull) putAscii(value ? "true" : "false");
+            } else if(isNull) {
+                putNull();
+            } else {
+                ensure(5);
+                buf.putInt(1).put((byte) (value ? 1 : 0));
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            if(csv) {
+                separator();
+                if(null == value) return;
+                if(needsQuotes(value)) {
+                    ensure(1);
+                    buf.put((byte) '"');
+                    putChars(value.replace("\"", "\"\""));
+                    ensure(1);
+                    buf.put((byte) '"');
                 } else {
-                    usFound = true;
+                    putChars(value);
                 }
-            } else if (usFound) {
-                sb.append(toUpperCase(ch));
-                usFound = false;
+            } else if(null == value) {
+                putNull();
+            } else if(4 + value.length() * 3 <= EXPORT_BUFFER_SIZE) {
+                // UTF-8 length is not known in advance, it is written after encoding
+                ensure(4 + value.length() * 3);
+                int lengthPos = buf.position();
+                buf.putInt(0);
+                putChars(value);
+                buf.putInt(lengthPos, buf.position() - lengthPos - 4);
             } else {
-                sb.append(ch);
+                writeBytes(value.getBytes(EXPORT_CHARSET));
             }
         }
-        if(usFound) sb.append("_");
-        return sb.toString();
-    }
 
-    private static String camelToUnderscored(String camel) {
-        if(null == camel || camel.length() < 2) return camel;
-        boolean hasUpper = false;
-        for (int i = 1; i < camel.length(); i++) {
-            char ch = camel.charAt(i);
-            if(ch == Character.toUpperCase(ch)) {
-                hasUpper = true;
-                break;
+        private void writeDecimal(BigDecimal value) throws IOException {
+            if(csv && null != value) {
+                separator();
+                putAscii(value.toString());
+            } else {
+                writeString(null != value ? value.toString() : null);
             }
         }
-        if(!hasUpper) return camel;
-        StringBuilder sb = new StringBuilder();
-        sb.append(camel.charAt(0));
-        for (int i = 1; i < camel.length(); i++) {
-            char ch = camel.charAt(i);
-            char lower = toLowerCase(ch);
-            if(ch == toUpperCase(ch) && ch != lower) {
-                sb.append("_");
-                sb.append(lower);
+
+        private void writeDate(Date value) throws IOException {
+            if(csv) {
+                separator();
+                if(null != value) putAscii(value.toString());
+            } else if(null == value) {
+                putNull();
             } else {
-                sb.append(ch);
+                ensure(12);
+                buf.putInt(8).putLong(value.getTime());
             }
         }
-        return sb.toString();
-    }
 
-    /**
-     * {@code BeanPropertySqlParameterSource} extension that maps camelCase properties to under_scored parameters
-     */
-    private static class UnderscoredBeanPropertySqlParameterSource extends BeanPropertySqlParameterSource {
+        private void writeBytes(byte[] value) throws IOException {
+            if(csv) {
+                separator();
+                if(null == value) return;
+                for(byte b : value) {
+                    ensure(2);
+                    buf.put(EXPORT_HEX_DIGITS[(b >> 4) & 0xf]).put(EXPORT_HEX_DIGITS[b & 0xf]);
+                }
+            } else if(null == value) {
+                putNull();
+            } else {
+                ensure(4);
+                buf.putInt(value.length);
+                int offset = 0;
+                while(offset < value.length) {
+                    if(!buf.hasRemaining()) flush();
+                    int len = Math.min(buf.remaining(), value.length - offset);
+                    buf.put(value, offset, len);
+                    offset += len;
+                }
+            }
+        }
 
-        /**
-         * Create a new BeanPropertySqlParameterSource for the given bean.
-         *
-         * @param object the bean instance to wrap
-         */
-        private UnderscoredBeanPropertySqlParameterSource(Object object) {
-            super(object);
+        private void writeObject(Object value) throws IOException {
+            writeString(null != value ? value.toString() : null);
         }
 
-        /**
-         * Determine whether there is a value for the specified named parameter.
-         * @param paramName the name of the parameter
-         * @return whether there is a value defined
-         */
-        @Override
-        public boolean hasValue(String paramName) {
-            return super.hasValue(underscoredToCamel(paramName));
+        private void flush() throws IOException {
+            buf.flip();
+            while(buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            buf.clear();
         }
 
-        /**
-       	 * Return the parameter value for the requested named parameter.
-       	 * @param paramName the name of the parameter
-       	 * @return the value of the specified parameter
-       	 * @throws IllegalArgumentException if there is no value for the requested parameter
-       	 */
-        @Override
-        public Object getValue(String paramName) throws IllegalArgumentException {
-            return super.getValue(underscoredToCamel(paramName));
+        private void ensure(int bytes) throws IOException {
+            if(buf.remaining() < bytes) flush();
         }
 
+        private void separator() throws IOException {
+            if(firstField) {
+                firstField = false;
+            } else {
+                ensure(1);
+                buf.put((byte) ',');
+            }
+        }
 
-        /**
-       	 * Provide access to the property names of the wrapped bean.
-       	 * Uses support provided in the {@link org.springframework.beans.PropertyAccessor} interface.
-       	 * @return an array containing all the known property names
-       	 */
-        @Override
-        public String[] getReadablePropertyNames() {
-            String[] camel = super.getReadablePropertyNames();
-            String[] underscored = new String[camel.length];
-            for (int i = 0; i < camel.length; i++) {
-                underscored[i] = camelToUnderscored(camel[i]);
+        private void putNull() throws IOException {
+            ensure(4);
+            buf.putInt(-1);
+        }
+
+        private void putDigits(long value) throws IOException {
+            if(Long.MIN_VALUE == value) {
+                putAscii(Long.toString(value));
+                return;
+            }
+            ensure(20);
+            long val = value;
+            if(val < 0) {
+                buf.put((byte) '-');
+                val = -val;
+            }
+            int start = buf.position();
+            do {
+                buf.put((byte) ('0' + val % 10));
+                val /= 10;
+            } while(val > 0);
+            for(int i = start, j = buf.position() - 1; i < j; i++, j--) {
+                byte tmp = buf.get(i);
+                buf.put(i, buf.get(j));
+                buf.put(j, tmp);
             }
-            return underscored;
         }
 
-        /**
-       	 * Derives a default SQL type from the corresponding property type.
-       	 * @see org.springframework.jdbc.core.StatementCreatorUtils#javaTypeToSqlParameterType
-       	 */
-        @Override
-        public int getSqlType(String paramName) {
-            return super.getSqlType(underscoredToCamel(paramName));
+        private void putAscii(String value) throws IOException {
+            ensure(value.length());
+            for(int i = 0; i < value.length(); i++) {
+                buf.put((byte) value.charAt(i));
+            }
+        }
+
+        private void putChars(String value) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(value);
+            encoder.reset();
+            while(encoder.encode(chars, buf, true).isOverflow()) {
+                flush();
+            }
+            while(encoder.flush(buf).isOverflow()) {
+                flush();
+            }
+        }
+
+        private static boolean needsQuotes(String value) {
+            for(int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                if(',' == ch || '"' == ch || '\r' == ch || '\n' == ch) return true;
+            }
+            return false;
+        }
+    }
+[/#if]
+[#if hasNamedSingleParam]
+
+    /**
+     * Parameters source for queries with single parameter, parameter names are resolved on generation time
+     */
+    private static class SingleParamSource extends AbstractSqlParameterSource {
+        private final String name;
+        private final String sqlName;
+        private final Object value;
+        private final int sqlType;
+
+        private SingleParamSource(String name, String sqlName, Object value, int sqlType) {
+            this.name = name;
+            this.sqlName = sqlName;
+            this.value = value;
+            this.sqlType = sqlType;
         }
 
-        /**
-       	 * Register a SQL type for the given parameter.
-       	 * @param paramName the name of the parameter
-       	 * @param sqlType the SQL type of the parameter
-       	 */
         @Override
-        public void registerSqlType(String paramName, int sqlType) {
-            super.registerSqlType(underscoredToCamel(paramName), sqlType);
+        public boolean hasValue(String paramName) {
+            return name.equals(paramName) || sqlName.equals(paramName);
         }
 
-        /**
-       	 * Register a SQL type for the given parameter.
-       	 * @param paramName the name of the parameter
-       	 * @param typeName the type name of the parameter
-       	 */
         @Override
-        public void registerTypeName(String paramName, String typeName) {
-            super.registerTypeName(underscoredToCamel(paramName), typeName);
+        public Object getValue(String paramName) throws IllegalArgumentException {
+            if(!hasValue(paramName)) throw new IllegalArgumentException("No value registered for key '" + paramName + "'");
+            return value;
         }
 
-        /**
-       	 * Return the type name for the given parameter, if registered.
-       	 * @param paramName the name of the parameter
-       	 * @return the type name of the parameter,
-       	 * or <code>null</code> if not registered
-       	 */
         @Override
-        public String getTypeName(String paramName) {
-            return super.getTypeName(underscoredToCamel(paramName));
+        public int getSqlType(String paramName) {
+            return hasValue(paramName) ? sqlType : TYPE_UNKNOWN;
         }
     }
 [/#if]
@@ -876,5 +5156,9 @@ ${modifier}class ${className} {
         ${modifier}QueryException(String msg) {
             super(msg);
         }
+
+        ${modifier}QueryException(String msg, Throwable cause) {
+            super(msg, cause);
+        }
     }
 }
\ No newline at end of file
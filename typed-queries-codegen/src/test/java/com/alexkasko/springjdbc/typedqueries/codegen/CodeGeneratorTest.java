@@ -4,13 +4,20 @@ import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.lang.reflect.Method;
 import java.util.*;
 
 import static com.alexkasko.springjdbc.typedqueries.codegen.CodeGenerator.camelToUnderscored;
 import static com.alexkasko.springjdbc.typedqueries.codegen.CodeGenerator.parseColumnNames;
+import static com.alexkasko.springjdbc.typedqueries.codegen.CodeGenerator.parsePlaceholders;
+import static com.alexkasko.springjdbc.typedqueries.codegen.CodeGenerator.sqlTypeConstant;
 import static com.alexkasko.springjdbc.typedqueries.codegen.CodeGenerator.underscoredToCamel;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 /**
  * User: alexkasko
@@ -30,6 +37,500 @@ public class CodeGeneratorTest {
         CodeGenerator.builder().build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
     }
 
+    @Test
+    public void testPreparsed() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo from bar where baz = :baz_id or boo = :boo_name or baz = :baz_id");
+        queries.put("selectBar", "select foo from bar where baz in (:baz_list)");
+        queries.put("updateFoo", "update bar set foo = 42 where baz = :baz_id");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUsePreparsedQueries(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Preparse fail", code.contains("this.selectFooSql = preparse(\"selectFoo\", \"baz_id\", \"boo_name\", \"baz_id\");"));
+        assertTrue("Preparse fail", code.contains("this.updateFooSql = preparse(\"updateFoo\", \"baz_id\");"));
+        assertFalse("Collection fail", code.contains("selectBarSql"));
+        assertTrue("Types fail", code.contains("SELECT_FOO_TYPES = {Types.BIGINT, Types.VARCHAR, Types.BIGINT};"));
+        assertTrue("Types fail", code.contains("query(selectFooSql, args, SELECT_FOO_TYPES, mapper)"));
+        assertTrue("Single fail", code.contains("ps.setLong(1, bazId);"));
+        assertFalse("Single fail", code.contains("UPDATE_FOO_TYPES"));
+    }
+
+    @Test
+    public void testSingleParam() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo from bar where baz = :baz_id");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseUnderscoredToCamel(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Single fail", code.contains("new SingleParamSource(\"bazId\", \"baz_id\", bazId, Types.BIGINT)"));
+        assertFalse("Single fail", code.contains("HashMap<String, Object>(1)"));
+    }
+
+    @Test
+    public void testTemplates() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFooTemplate", "select foo from bar_${suffix} where baz = :baz_id");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseTemplateStringSubstitution(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Template fail", code.contains("templatesMap.put(queryText(\"selectFooTemplate\"), new SqlTemplate(queryText(\"selectFooTemplate\")));"));
+        assertTrue("Template fail", code.contains("int open = template.indexOf(\"${\", pos);"));
+        assertFalse("Template fail", code.contains("replaceAll"));
+        assertTrue("Template fail", code.contains("RenderedSql rendered = substitute(sqlTemplate, substitutions);"));
+        assertTrue("Template fail", code.contains("RenderedSql existing = renderedCache.putIfAbsent(key, rendered);"));
+        assertFalse("Template fail", code.contains("synchronized (parsedSqlCache)"));
+        assertFalse("Template fail", code.contains("SettingsSetter"));
+        GeneratedCodeCompiler.compile("foo.bar.baz.FooBar", code, "1.6", true);
+    }
+
+    @Test
+    public void testTypedSubstitutions() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFooTemplate", "select foo from bar_${suffix} ${where(:baz_id)} order by ${suffix}");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseTemplateStringSubstitution(true).setUseTypedSubstitutions(true).build()
+                .generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Typed fail", code.contains("KEYS = {\"suffix\", \"where\"};"));
+        assertTrue("Typed fail", code.contains("SelectFooTemplateSubstitutions setWhere(Object value)"));
+        assertTrue("Typed fail", code.contains("RowMapper<T> mapper, SelectFooTemplateSubstitutions substitutions)"));
+        assertFalse("Typed fail", code.contains("Object... substitutions"));
+    }
+
+    @Test
+    public void testRowClasses() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name as baz_name, created_date from bar where baz = :baz_id");
+        queries.put("selectBar", "select t.foo_id, bar_name from bar t");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setGenerateRowClasses(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Row fail", code.contains("class SelectFooRow {"));
+        assertTrue("Row fail", code.contains("RowMapper<SelectFooRow> SELECT_FOO_ROW_MAPPER"));
+        assertTrue("Row fail", code.contains("checkColumns(rs, \"selectFoo\", \"foo_id\", \"baz_name\", \"created_date\");"));
+        assertTrue("Row fail", code.contains("rs.getLong(1),"));
+        assertTrue("Row fail", code.contains("rs.getTimestamp(3));"));
+        assertFalse("Row fail", code.contains("SelectBarRow"));
+    }
+
+    @Test
+    public void testColumnArrays() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, score_double from bar where baz = :baz_id");
+        queries.put("selectBar", "select foo_id, bar_name from bar");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setGenerateColumnArrays(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Arrays fail", code.contains("class SelectFooColumnArrays {"));
+        assertTrue("Arrays fail", code.contains("private double[] scoreDouble = new double[64];"));
+        assertTrue("Arrays fail", code.contains("SelectFooColumnArrays selectFooColumns(final long bazId)"));
+        assertTrue("Arrays fail", code.contains("checkColumns(rs, \"selectFoo\", \"foo_id\", \"score_double\");"));
+        assertFalse("Arrays fail", code.contains("SelectBarColumnArrays"));
+    }
+
+    @Test
+    public void testRowCallbacks() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name from bar where baz = :baz_id");
+        queries.put("selectBar", "select count(*) from bar");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setGenerateRowCallbacks(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Callback fail", code.contains("class SelectFooRowView {"));
+        assertTrue("Callback fail", code.contains("void processRow(SelectFooRowView row) throws SQLException;"));
+        assertTrue("Callback fail", code.contains("long selectFooForEach(final long bazId, SelectFooRowCallback callback)"));
+        assertTrue("Callback fail", code.contains("return rs.getString(2);"));
+        assertFalse("Callback fail", code.contains("SelectBarRowView"));
+    }
+
+    @Test
+    public void testRowCallbacksCompile() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name from bar where baz = :baz_id");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setGenerateRowCallbacks(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        GeneratedCodeCompiler.compile("foo.bar.baz.FooBar", out.toString(), "1.6");
+    }
+
+    @Test
+    public void testSpillBuffers() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name, created_date from bar where baz = :baz_id");
+        queries.put("selectBar", "select foo_id, bar from bar");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setGenerateRowClasses(true).setUseSpillBuffers(true).build()
+                .generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Spill fail", code.contains("SpillBuffer<SelectFooRow> selectFooSpilled(final long bazId, long memoryBudget, File spillDir)"));
+        assertTrue("Spill fail", code.contains("out.writeLong(row.getFooId());"));
+        assertTrue("Spill fail", code.contains("writeSpilled(out, row.getCreatedDate());"));
+        assertTrue("Spill fail", code.contains("readSpilledString(in),"));
+        assertFalse("Spill fail", code.contains("selectBarSpilled"));
+    }
+
+    @Test
+    public void testExports() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name, bar from bar where baz = :baz_id");
+        queries.put("selectBar", "select count(*) from bar");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setGenerateExports(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Export fail", code.contains("long selectFooExport(final long bazId, WritableByteChannel channel, ExportFormat format)"));
+        assertTrue("Export fail", code.contains("writer.writeHeader(\"foo_id\", \"bar_name\", \"bar\");"));
+        assertTrue("Export fail", code.contains("writer.writeLong(rs.getLong(1), rs.wasNull());"));
+        assertTrue("Export fail", code.contains("writer.writeString(rs.getString(2));"));
+        assertTrue("Export fail", code.contains("writer.writeObject(rs.getObject(3));"));
+        assertFalse("Export fail", code.contains("selectBarExport"));
+    }
+
+    @Test
+    public void testExportsCompile() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name, bar from bar where baz = :baz_id");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setGenerateExports(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        GeneratedCodeCompiler.compile("foo.bar.baz.FooBar", out.toString(), "1.6");
+    }
+
+    @Test
+    public void testPipelinedBatches() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("insertFoo", "insert into foo(bar_id, baz) values(:bar_id, :baz)");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUsePipelinedBatches(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        assertFalse("Pipelined fail", out.toString().contains("BatchPipelined"));
+        out = new StringWriter();
+        CodeGenerator.builder().setUseBatchInserts(true).setUsePipelinedBatches(true).build()
+                .generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Pipelined fail", code.contains("long insertFooBatchPipelined(Iterator<? extends InsertFooParams> paramsIter, " +
+                "int minBatchSize, int maxBatchSize, long targetBatchMillis, Executor executor)"));
+        assertTrue("Pipelined fail", code.contains("private <T> long pipelinedBatchUpdate("));
+        assertTrue("Pipelined fail", code.contains("values[index] = NamedParameterUtils.buildValueArray(parsed, source, null);"));
+        assertTrue("Pipelined fail", code.contains("batchUpdate(batch.sql, batch);"));
+        assertTrue("Pipelined fail", code.contains("ParsedSql parsed = parsedSql(sql);"));
+        out = new StringWriter();
+        CodeGenerator.builder().setUseBatchInserts(true).build().generate(queries,
+                Collections.singletonMap("insertFoo", Collections.singletonMap("timeout", "10")), "foo.bar.baz.FooBar", "nope.sql", out);
+        code = out.toString();
+        assertTrue("Pipelined fail", code.contains("private int[] namedBatchUpdate("));
+        assertTrue("Pipelined fail", code.contains("final ParsedSql parsed = parsedSql(sql);"));
+        assertTrue("Pipelined fail", code.contains("if(!settings.defaults) settings.apply(ps);"));
+        GeneratedCodeCompiler.compile("foo.bar.baz.FooBar", code, "1.6");
+    }
+
+    @Test
+    public void testParallelBatches() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("insertFoo", "insert into foo(bar_id, baz) values(:bar_id, :baz)");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseBatchInserts(true).setUseParallelBatches(true).build()
+                .generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Parallel fail", code.contains("ParallelBatchReport insertFooParallelBatch(Iterator<? extends InsertFooParams> paramsIter, " +
+                "int batchSize, int parallelism, int maxRetries, PlatformTransactionManager txManager, Executor executor, " +
+                "ParallelBatchPartitioner<? super InsertFooParams> partitioner)"));
+        assertFalse("Parallel fail", code.contains("DataSourceTransactionManager"));
+        GeneratedCodeCompiler.compile("foo.bar.baz.FooBar", code, "1.6", true);
+        assertFalse("Parallel fail", code.contains("pipelinedBatchUpdate"));
+    }
+
+    @Test
+    public void testMultiValuesInserts() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("insertFoo", "insert into foo(bar_id, baz) values(:bar_id, :baz)");
+        queries.put("insertBar", "insert into bar(bar_id, baz) values (:bar_id, coalesce(:baz, 0));");
+        queries.put("insertBaz", "insert into baz(bar_id) select bar_id from bar where baz = :baz");
+        queries.put("insertBoo", "insert into boo(bar_id) values (:bar_id), (:baz)");
+        queries.put("insertQux", "insert into qux(bar_id, baz) values (:bar_id, 'a)')");
+        queries.put("updateFoo", "update foo set baz = :baz where bar_id = :bar_id");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseBatchInserts(true).setUseMultiValuesInserts(true).build()
+                .generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Values fail", code.contains("long insertFooValuesBatch(Iterator<? extends InsertFooParams> paramsIter, int batchSize)"));
+        assertTrue("Values fail", code.contains("static final int VALUES_MAX_PARAMS = 999;"));
+        assertTrue("Values fail", code.contains("this.insertBarValues = new ValuesInsert(\"insertBar\", queryText(\"insertBar\"), \"bar_id\", \"baz\");"));
+        assertFalse("Values fail", code.contains("insertBazValuesBatch"));
+        assertFalse("Values fail", code.contains("insertBooValuesBatch"));
+        assertFalse("Values fail", code.contains("insertQuxValuesBatch"));
+        assertFalse("Values fail", code.contains("updateFooValuesBatch"));
+        assertTrue("Values fail", code.contains("int maxRows = maxParams / insert.paramsNames.length;"));
+    }
+
+    @Test
+    public void testMultiValuesInsertsCompile() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("insertFoo", "insert into foo(bar_id, baz) values(:bar_id, :baz)");
+        queries.put("insertBar", "insert into bar(bar_id) values(:bar_id)");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseBatchInserts(true).setUseMultiValuesInserts(true).build()
+                .generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        GeneratedCodeCompiler.compile("foo.bar.baz.FooBar", out.toString(), "1.6");
+    }
+
+    @Test
+    public void testColumnsBatches() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("insertFoo", "insert into foo(bar_id, baz_name, baz_id) values(:bar_id, :baz_name, :bar_id)");
+        queries.put("deleteFoo", "delete from foo where bar = :bar");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseBatchInserts(true).setUseColumnsBatches(true).build()
+                .generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Columns fail", code.contains("long insertFooBatchColumns(final long[] barId, final String[] bazName, " +
+                "int from, int to, int batchSize)"));
+        assertTrue("Columns fail", code.contains("this.insertFooColumnsSql = preparse(\"insertFoo\", \"bar_id\", \"baz_name\", \"bar_id\");"));
+        assertTrue("Columns fail", code.contains("ps.setLong(3, barId[row]);"));
+        assertFalse("Columns fail", code.contains("deleteFooBatchColumns"));
+    }
+
+    @Test
+    public void testPrefetchIterators() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name from bar where baz = :baz_id");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUsePrefetchIterators(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        assertFalse("Prefetch fail", out.toString().contains("PrefetchIterator"));
+        out = new StringWriter();
+        CodeGenerator.builder().setUseIterableJdbcTemplate(true).setUsePrefetchIterators(true).build()
+                .generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Prefetch fail", code.contains("CloseableIterator<T> selectFooPrefetchIterator(final long bazId, final RowMapper<T> mapper, Executor executor, int chunkSize)"));
+        assertTrue("Prefetch fail", code.contains("return selectFooIterator(bazId, mapper);"));
+        assertTrue("Prefetch fail", code.contains("executor.execute(iter);"));
+        assertTrue("Prefetch fail", code.contains("abstract static class PrefetchIterator<T> implements CloseableIterator<T>, Runnable {"));
+    }
+
+    @Test
+    public void testStreams() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name from bar where baz = :baz_id and boo = :boo_name");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseIterableJdbcTemplate(true).setUseStreams(true).build()
+                .generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Streams fail", code.contains("Stream<T> selectFooStream(final SelectFooParams paramsBean, RowMapper<T> mapper)"));
+        assertTrue("Streams fail", code.contains("CloseableIterator<T> iter = selectFooIterator(paramsBean, mapper);"));
+        assertTrue("Streams fail", code.contains("import java.util.stream.Stream;"));
+    }
+
+    @Test
+    public void testPublishers() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name from bar");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseIterableJdbcTemplate(true).setUseReactivePublishers(true).build()
+                .generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Publishers fail", code.contains("Publisher<T> selectFooPublisher(final RowMapper<T> mapper, Executor executor)"));
+        assertTrue("Publishers fail", code.contains("StatementSettings settings = demandSettings(demand, null);"));
+        assertTrue("Publishers fail", code.contains("return selectFooIterator(settings, mapper);"));
+        assertTrue("Publishers fail", code.contains("return jt.getIterableJdbcOperations().queryForIter(sql, statementSettings.setter(null), mapper);"));
+        assertTrue("Publishers fail", code.contains("import org.reactivestreams.Publisher;"));
+    }
+
+    @Test
+    public void testAsyncMethods() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name from bar where baz = :baz_id");
+        queries.put("updateFoo", "update bar set foo = 42");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseAsyncMethods(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Async fail", code.contains("FooBar(Map<String, String> queries, NamedParameterJdbcTemplate jt, Executor asyncExecutor)"));
+        assertFalse("Async fail", code.contains("FooBar(Map<String, String> queries, NamedParameterJdbcTemplate jt)"));
+        assertTrue("Async fail", code.contains("if(null == asyncExecutor) throw new QueryException(\"Provided async executor is null\");"));
+        assertTrue("Async fail", code.contains("CompletableFuture<List<T>> selectFooAsync(final long bazId, final RowMapper<T> mapper)"));
+        assertTrue("Async fail", code.contains("return async(() -> selectFooSingle(bazId, mapper));"));
+        assertTrue("Async fail", code.contains("CompletableFuture<Integer> updateFooAsync()"));
+    }
+
+    @Test
+    public void testLazyLists() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name from bar where baz = :baz_id");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseIterableJdbcTemplate(true).setUseLazyLists(true).build()
+                .generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Lazy list fail", code.contains("LazyList<T> selectFooLazyList(final long bazId, final RowMapper<T> mapper, int pageSize, int maxPages)"));
+        assertTrue("Lazy list fail", code.contains("return selectFooIterator(bazId, mapper);"));
+        assertTrue("Lazy list fail", code.contains("static final class LazyList<T> extends AbstractList<T> implements Closeable"));
+        StringWriter plain = new StringWriter();
+        CodeGenerator.builder().setUseLazyLists(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", plain);
+        assertFalse("Lazy list fail", plain.toString().contains("LazyList"));
+    }
+
+    @Test
+    public void testLimitedSelects() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name from bar where baz = :baz_id");
+        queries.put("selectBar", "select foo_id from bar where baz = :baz_id and boo = :boo_name");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setGenerateLimitedSelects(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Limited fail", code.contains("boolean selectFooExists(final long bazId)"));
+        assertTrue("Limited fail", code.contains("List<T> selectFooFirst(final long bazId, int limit, RowMapper<T> mapper)"));
+        assertTrue("Limited fail", code.contains("return queryLimited(jt, parsedSql(sql), params, 1, EXISTS_EXTRACTOR);"));
+        assertTrue("Limited fail", code.contains("return queryLimited(jt, parsedSql(sql), params, limit, new FirstRowsExtractor<T>(limit, mapper));"));
+        assertTrue("Limited fail", code.contains("boolean selectBarExists(final SelectBarParams paramsBean)"));
+        assertTrue("Limited fail", code.contains("if(0 == ps.getFetchSize() || ps.getFetchSize() > maxRows) ps.setFetchSize(maxRows);"));
+    }
+
+    @Test
+    public void testDirectives() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id, bar_name from bar where baz = :baz_id");
+        queries.put("updateFoo", "update bar set foo = 42");
+        Map<String, Map<String, String>> directives = new LinkedHashMap<String, Map<String, String>>();
+        Map<String, String> dirs = new LinkedHashMap<String, String>();
+        dirs.put("fetchSize", "5000");
+        dirs.put("maxRows", "100");
+        directives.put("selectFoo", dirs);
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().build().generate(queries, directives, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Directives fail", code.contains("SELECT_FOO_SETTINGS = new StatementSettings(5000, -1, 100);"));
+        assertTrue("Directives fail", code.contains("SettingsSetter settingsSetter = SELECT_FOO_SETTINGS.setter(parsedSql(sql), params);"));
+        assertTrue("Directives fail", code.contains("return jt.getJdbcOperations().query(settingsSetter.getSql(), settingsSetter, mapper);"));
+        assertTrue("Directives fail", code.contains("return jt.getJdbcOperations().update(sql);"));
+        assertFalse("Directives fail", code.contains("UPDATE_FOO_SETTINGS"));
+        assertFalse("Directives fail", code.contains("new IterableNamedParameterJdbcTemplate("));
+        GeneratedCodeCompiler.compile("foo.bar.baz.FooBar", code, "1.6");
+        dirs.put("fetchSize", "many");
+        try {
+            CodeGenerator.builder().build().generate(queries, directives, "foo.bar.baz.FooBar", "nope.sql", new StringWriter());
+            fail("Directives fail");
+        } catch (CodeGeneratorException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testPageKey() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select id as foo_id, bar_name from bar where baz = :baz_id");
+        queries.put("updateFoo", "update bar set foo = 42");
+        Map<String, Map<String, String>> directives = new LinkedHashMap<String, Map<String, String>>();
+        directives.put("selectFoo", Collections.singletonMap("pageKey", "foo_id"));
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().build().generate(queries, directives, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Page key fail", code.contains("Page<T, Long> selectFooPage(final long bazId, Long afterKey, int limit, RowMapper<T> mapper)"));
+        assertTrue("Page key fail", code.contains("String pageSql = keysetSql(sql, \"foo_id\", null != afterKey);"));
+        assertTrue("Page key fail", code.contains("Iterator<T> selectFooAllPages(final long bazId, final int pageSize, final RowMapper<T> mapper)"));
+        assertTrue("Page key fail", code.contains("return selectFooPage(bazId, afterKey, pageSize, mapper);"));
+        assertTrue("Page key fail", code.contains("parsedSql(pageSql), params, Integer.MAX_VALUE == limit ? limit : limit + 1,"));
+        assertTrue("Page key fail", code.contains("new StringBuilder(\"select * from (\").append(pageableSql(sql))"));
+        GeneratedCodeCompiler.compile("foo.bar.baz.FooBar", code, "1.6");
+        queries.put("selectFoo", "select id as foo_id, bar_name from bar where baz = :baz_id order by id limit 10");
+        try {
+            CodeGenerator.builder().build().generate(queries, directives, "foo.bar.baz.FooBar", "nope.sql", new StringWriter());
+            fail("Page key fail");
+        } catch (CodeGeneratorException e) {
+            // expected
+        }
+        queries.put("selectFoo", "select id as foo_id, bar_name from bar where baz = :baz_id");
+        directives.put("selectFoo", Collections.singletonMap("pageKey", "bar_id"));
+        try {
+            CodeGenerator.builder().build().generate(queries, directives, "foo.bar.baz.FooBar", "nope.sql", new StringWriter());
+            fail("Page key fail");
+        } catch (CodeGeneratorException e) {
+            // expected
+        }
+        directives.clear();
+        directives.put("updateFoo", Collections.singletonMap("pageKey", "foo"));
+        try {
+            CodeGenerator.builder().build().generate(queries, directives, "foo.bar.baz.FooBar", "nope.sql", new StringWriter());
+            fail("Page key fail");
+        } catch (CodeGeneratorException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWriteBehindKey() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo_id from bar where baz = :baz_id");
+        queries.put("updateFoo", "update bar set seen_date = :seen_date where id = :bar_id");
+        Map<String, Map<String, String>> directives = new LinkedHashMap<String, Map<String, String>>();
+        directives.put("updateFoo", Collections.singletonMap("writeBehindKey", "bar_id"));
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseBatchInserts(true).build().generate(queries, directives, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Write-behind fail", code.contains("WriteBehind<UpdateFooParams> updateFooWriteBehind(int maxSize, long flushIntervalMillis, " +
+                "ScheduledExecutorService scheduler, PlatformTransactionManager txManager, WriteBehindMerger<UpdateFooParams> merger)"));
+        assertTrue("Write-behind fail", code.contains("return paramsBean.getBarId();"));
+        assertTrue("Write-behind fail", code.contains("return updateFooBatch(paramsIter, batchSize);"));
+        try {
+            CodeGenerator.builder().build().generate(queries, directives, "foo.bar.baz.FooBar", "nope.sql", new StringWriter());
+            fail("Write-behind fail");
+        } catch (CodeGeneratorException e) {
+            // expected
+        }
+        directives.put("updateFoo", Collections.singletonMap("writeBehindKey", "baz_id"));
+        try {
+            CodeGenerator.builder().setUseBatchInserts(true).build().generate(queries, directives, "foo.bar.baz.FooBar", "nope.sql", new StringWriter());
+            fail("Write-behind fail");
+        } catch (CodeGeneratorException e) {
+            // expected
+        }
+        directives.clear();
+        directives.put("selectFoo", Collections.singletonMap("writeBehindKey", "baz_id"));
+        try {
+            CodeGenerator.builder().setUseBatchInserts(true).build().generate(queries, directives, "foo.bar.baz.FooBar", "nope.sql", new StringWriter());
+            fail("Write-behind fail");
+        } catch (CodeGeneratorException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testPlaceholders() {
+        assertEquals(Arrays.asList("suffix", "where"), parsePlaceholders("select foo from bar_${suffix} ${where(:a, :b)} ${suffix}"));
+        assertEquals(Arrays.asList("a"), parsePlaceholders("select ${a(\n:b)} ${not a key} $foo"));
+    }
+
+    @Test
+    public void testNamesTables() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo from bar where baz = :baz_id or boo = :boo_name");
+        queries.put("updateFoo", "update bar set foo = 42 where baz = :baz_id");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setUseUnderscoredToCamel(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Table fail", code.contains("utc.put(\"baz_id\", \"bazId\");"));
+        assertTrue("Table fail", code.contains("ctu.put(\"booName\", \"boo_name\");"));
+        assertEquals("Table fail", code.indexOf("utc.put(\"baz_id\""), code.lastIndexOf("utc.put(\"baz_id\""));
+    }
+
+    @Test
+    public void testParamsSources() {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select foo from bar where baz = :baz_id or boo = :boo_name");
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder().setGenerateParamsSources(true).build().generate(queries, "foo.bar.baz.FooBar", "nope.sql", out);
+        String code = out.toString();
+        assertTrue("Source fail", code.contains("class SelectFooParamsSource extends AbstractSqlParameterSource"));
+        assertTrue("Source fail", code.contains("PARAMS_INDEX.put(\"baz_id\", 0);"));
+        assertTrue("Source fail", code.contains("case 1: return paramsBean.getBooName();"));
+        assertTrue("Source fail", code.contains("new SelectFooParamsSource(paramsBean)"));
+        assertTrue("Source fail", code.contains("SQL_TYPES = {Types.BIGINT, Types.VARCHAR};"));
+    }
+
+    @Test
+    public void testSqlTypes() {
+        assertEquals("Types.BIGINT", sqlTypeConstant(long.class));
+        assertEquals("Types.INTEGER", sqlTypeConstant(int.class));
+        assertEquals("Types.VARCHAR", sqlTypeConstant(String.class));
+        assertEquals("Types.DECIMAL", sqlTypeConstant(java.math.BigDecimal.class));
+        assertEquals("Types.TIMESTAMP", sqlTypeConstant(Date.class));
+        assertEquals("Types.VARBINARY", sqlTypeConstant(byte[].class));
+        assertEquals("SqlTypeValue.TYPE_UNKNOWN", sqlTypeConstant(Object.class));
+    }
+
     @Test
     public void testColumns() {
         List<String> cols = parseColumnNames("select" +
@@ -48,6 +549,76 @@ public class CodeGeneratorTest {
         System.out.println(c1);
     }
 
+    @Test
+    public void testFlagsCombinations() throws Exception {
+        Map<String, String> queries = new LinkedHashMap<String, String>();
+        queries.put("selectFoo", "select id as foo_id, foo_name, score_double from foo where id > :min_id order by id");
+        queries.put("selectFooByNameOrId", "select id, foo_name from foo where foo_name = :foo_name or id = :foo_id");
+        queries.put("selectAllFoo", "select id, foo_name, created_date from foo");
+        queries.put("selectFooTemplate", "select id, foo_name from foo_${suffix} where id > :min_id order by id");
+        queries.put("insertFoo", "insert into foo(id, foo_name, score_double) values(:foo_id, :foo_name, :score_double)");
+        queries.put("insertFooTemplate", "insert into foo_${suffix}(id, foo_name) values(:foo_id, :foo_name)");
+        queries.put("updateFooName", "update foo set foo_name = :foo_name where id = :foo_id");
+        queries.put("deleteFoo", "delete from foo where id = :foo_id");
+        queries.put("deleteAllFoo", "delete from foo");
+        Map<String, Map<String, String>> directives = new LinkedHashMap<String, Map<String, String>>();
+        Map<String, String> selectDirs = new LinkedHashMap<String, String>();
+        selectDirs.put("fetchSize", "100");
+        selectDirs.put("maxRows", "1000");
+        selectDirs.put("pageKey", "foo_id");
+        directives.put("selectFoo", selectDirs);
+        directives.put("selectFooTemplate", Collections.singletonMap("pageKey", "id"));
+        Map<String, String> updateDirs = new LinkedHashMap<String, String>();
+        updateDirs.put("timeout", "10");
+        updateDirs.put("writeBehindKey", "foo_id");
+        directives.put("updateFooName", updateDirs);
+        List<Method> flags = new ArrayList<Method>();
+        for (Method me : CodeGenerator.Builder.class.getMethods()) {
+            Class<?>[] types = me.getParameterTypes();
+            if (me.getName().startsWith("set") && 1 == types.length && boolean.class == types[0]) flags.add(me);
+        }
+        assertTrue("Flags fail", flags.size() > 20);
+        // each flag alone and all flags except one, template guards are combinations of flags
+        for (Method fl : flags) {
+            compileWithFlags(queries, directives, Collections.singletonList(fl), true);
+            List<Method> others = new ArrayList<Method>(flags);
+            others.remove(fl);
+            compileWithFlags(queries, directives, others, true);
+        }
+        List<Method> java6Flags = new ArrayList<Method>();
+        for (Method fl : flags) {
+            if (!requiresJava8(fl)) java6Flags.add(fl);
+        }
+        compileWithFlags(queries, directives, java6Flags, true);
+        compileWithFlags(queries, directives, flags, true);
+        // collection parameters are exposed as raw types
+        queries.put("selectFooIdsIn", "select id from foo where id in (:ids_list)");
+        compileWithFlags(queries, directives, java6Flags, false);
+        compileWithFlags(queries, directives, flags, false);
+    }
+
+    private static void compileWithFlags(Map<String, String> queries, Map<String, Map<String, String>> directives,
+                                         List<Method> flags, boolean failOnWarnings) throws Exception {
+        CodeGenerator.Builder builder = CodeGenerator.builder();
+        boolean java8 = false;
+        boolean batches = false;
+        for (Method fl : flags) {
+            fl.invoke(builder, true);
+            java8 |= requiresJava8(fl);
+            batches |= "setUseBatchInserts".equals(fl.getName());
+        }
+        Map<String, Map<String, String>> dirs = new LinkedHashMap<String, Map<String, String>>(directives);
+        // write-behind requires batch inserts
+        if (!batches) dirs.remove("updateFooName");
+        StringWriter out = new StringWriter();
+        builder.build().generate(queries, dirs, "foo.bar.baz.FooBar", "nope.sql", out);
+        GeneratedCodeCompiler.compile("foo.bar.baz.FooBar", out.toString(), java8 ? "1.8" : "1.6", failOnWarnings);
+    }
+
+    private static boolean requiresJava8(Method flag) {
+        return "setUseStreams".equals(flag.getName()) || "setUseAsyncMethods".equals(flag.getName());
+    }
+
     @Test
     public void testUnderscoreToCamel() {
         assertEquals(null, underscoredToCamel(null));
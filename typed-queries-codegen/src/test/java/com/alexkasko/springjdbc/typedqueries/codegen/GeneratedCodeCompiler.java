@@ -0,0 +1,149 @@
+package com.alexkasko.springjdbc.typedqueries.codegen;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.fail;
+
+/**
+ * Compiles generated queries classes with system java compiler, used in tests
+ * to check that generated code compiles and to load it for execution
+ */
+class GeneratedCodeCompiler {
+    // output directories are removed on exit, classes may be loaded until then
+    private static final List<File> OUT_DIRS = new ArrayList<File>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                synchronized (OUT_DIRS) {
+                    for (File dir : OUT_DIRS) deleteRecursively(dir);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compiles provided source without warnings check
+     *
+     * @param fullClassName class name with package prefix
+     * @param code generated source
+     * @param sourceLevel java source level, e.g. "1.6", raised to the lowest level supported by running JDK
+     * @return class loader with compiled classes
+     */
+    static ClassLoader compile(String fullClassName, String code, String sourceLevel) {
+        return compile(fullClassName, code, sourceLevel, false);
+    }
+
+    /**
+     * Compiles provided source and fails on compilation errors
+     *
+     * @param fullClassName class name with package prefix
+     * @param code generated source
+     * @param sourceLevel java source level, e.g. "1.6", raised to the lowest level supported by running JDK
+     * @param failOnWarnings whether to fail on unchecked, rawtypes and other lint warnings
+     * @return class loader with compiled classes
+     */
+    static ClassLoader compile(String fullClassName, String code, String sourceLevel, boolean failOnWarnings) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("System java compiler is not available, tests must be run on JDK", compiler);
+        File outDir = createTempDir();
+        String level = supportedLevel(sourceLevel);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        List<String> options = new ArrayList<String>(Arrays.asList(
+                "-source", level, "-target", level,
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", outDir.getAbsolutePath(), lintOption()));
+        JavaFileObject source = new StringSource(fullClassName, code);
+        boolean success = compiler.getTask(null, null, diagnostics, options, null, Arrays.asList(source)).call();
+        StringBuilder sb = new StringBuilder();
+        for (Diagnostic<? extends JavaFileObject> di : diagnostics.getDiagnostics()) {
+            if (Diagnostic.Kind.ERROR == di.getKind() || (failOnWarnings && isWarning(di))) {
+                sb.append(di.getKind()).append(" line ").append(di.getLineNumber()).append(": ")
+                        .append(di.getMessage(null)).append("\n");
+            }
+        }
+        if (!success || sb.length() > 0) {
+            fail("Generated class: [" + fullClassName + "] compilation failed:\n" + sb);
+        }
+        try {
+            return new URLClassLoader(new URL[]{outDir.toURI().toURL()}, GeneratedCodeCompiler.class.getClassLoader());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean isWarning(Diagnostic<?> di) {
+        return Diagnostic.Kind.WARNING == di.getKind() || Diagnostic.Kind.MANDATORY_WARNING == di.getKind();
+    }
+
+    /**
+     * Raises source level to the lowest one supported by running JDK:
+     * 6 was removed in JDK 12 and 7 was removed in JDK 20
+     *
+     * @param sourceLevel requested source level, e.g. "1.6"
+     * @return source level to compile with
+     */
+    static String supportedLevel(String sourceLevel) {
+        int requested = majorVersion(sourceLevel);
+        int jdk = majorVersion(System.getProperty("java.specification.version"));
+        int lowest = jdk >= 20 ? 8 : jdk >= 12 ? 7 : 6;
+        return requested >= lowest ? sourceLevel : "1." + lowest;
+    }
+
+    // this-escape lint was added in JDK 21, generated classes are not designed for subclassing
+    private static String lintOption() {
+        int jdk = majorVersion(System.getProperty("java.specification.version"));
+        return jdk >= 21 ? "-Xlint:all,-options,-serial,-this-escape" : "-Xlint:all,-options,-serial";
+    }
+
+    private static int majorVersion(String version) {
+        String major = version.startsWith("1.") ? version.substring(2) : version;
+        int dot = major.indexOf('.');
+        return Integer.parseInt(dot > 0 ? major.substring(0, dot) : major);
+    }
+
+    private static File createTempDir() {
+        try {
+            File dir = File.createTempFile("typed-queries-", "");
+            if (!dir.delete() || !dir.mkdir()) throw new IOException("Cannot create directory: [" + dir + "]");
+            synchronized (OUT_DIRS) {
+                OUT_DIRS.add(dir);
+            }
+            return dir;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (null != children) {
+            for (File ch : children) deleteRecursively(ch);
+        }
+        file.delete();
+    }
+
+    private static class StringSource extends SimpleJavaFileObject {
+        private final String code;
+
+        StringSource(String fullClassName, String code) {
+            super(URI.create("string:///" + fullClassName.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+}
@@ -0,0 +1,688 @@
+package com.alexkasko.springjdbc.typedqueries.codegen;
+
+import com.alexkasko.springjdbc.iterable.IterableNamedParameterJdbcTemplate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.channels.Channels;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Compiles generated queries class and executes it against in-memory H2 database,
+ * generated class is accessed through reflection
+ */
+public class GeneratedCodeTest {
+    private static final String CLASS_NAME = "foo.bar.baz.FooQueries";
+    private static final RowMapper<Long> ID_MAPPER = new RowMapper<Long>() {
+        @Override
+        public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return rs.getLong(1);
+        }
+    };
+    private static final RowMapper<String> NAME_MAPPER = new RowMapper<String>() {
+        @Override
+        public String mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return rs.getString(1);
+        }
+    };
+
+    private static Map<String, String> queriesMap;
+    private static Class<?> queriesClass;
+
+    private DriverManagerDataSource ds;
+    private JdbcTemplate jt;
+    private Object queries;
+
+    @BeforeClass
+    public static void generate() {
+        queriesMap = new LinkedHashMap<String, String>();
+        queriesMap.put("createFoo", "create table foo(id bigint primary key, foo_name varchar(255), score_double double)");
+        queriesMap.put("insertFoo", "insert into foo(id, foo_name, score_double) values(:foo_id, :foo_name, :score_double)");
+        queriesMap.put("updateFooName", "update foo set foo_name = :foo_name where id = :foo_id");
+        queriesMap.put("selectFooIds", "select id as foo_id, foo_name from foo where id > :min_id order by id");
+        queriesMap.put("selectFooNames", "select foo_name, id from foo order by foo_name");
+        queriesMap.put("selectAllFoo", "select id, foo_name, score_double from foo order by id");
+        queriesMap.put("selectFooTemplate", "select id from ${table} where id > :min_id order by id");
+        queriesMap.put("deleteAllFoo", "delete from foo");
+        Map<String, Map<String, String>> directives = new LinkedHashMap<String, Map<String, String>>();
+        directives.put("updateFooName", Collections.singletonMap("writeBehindKey", "foo_id"));
+        directives.put("selectFooIds", Collections.singletonMap("pageKey", "foo_id"));
+        directives.put("selectFooNames", Collections.singletonMap("pageKey", "foo_name"));
+        Map<String, String> allDirs = new LinkedHashMap<String, String>();
+        allDirs.put("fetchSize", "100");
+        allDirs.put("maxRows", "3");
+        directives.put("selectAllFoo", allDirs);
+        StringWriter out = new StringWriter();
+        CodeGenerator.builder()
+                .setPublic(true)
+                .setUseIterableJdbcTemplate(true)
+                .setUseBatchInserts(true)
+                .setUseTemplateStringSubstitution(true)
+                .setGenerateParamsSources(true)
+                .setGenerateLimitedSelects(true)
+                .setUseMultiValuesInserts(true)
+                .setUsePipelinedBatches(true)
+                .setUseParallelBatches(true)
+                .setUseReactivePublishers(true)
+                .setGenerateExports(true)
+                .setGenerateRowClasses(true)
+                .setUseSpillBuffers(true)
+                .setUseLazyLists(true)
+                .setUsePrefetchIterators(true)
+                .build().generate(queriesMap, directives, CLASS_NAME, "generated.sql", out);
+        ClassLoader cl = GeneratedCodeCompiler.compile(CLASS_NAME, out.toString(), "1.6", true);
+        try {
+            queriesClass = cl.loadClass(CLASS_NAME);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ds = new DriverManagerDataSource("jdbc:h2:mem:generated;DB_CLOSE_DELAY=-1", "sa", "");
+        jt = new JdbcTemplate(ds);
+        queries = queriesClass.getConstructor(Map.class, IterableNamedParameterJdbcTemplate.class)
+                .newInstance(queriesMap, new IterableNamedParameterJdbcTemplate(ds));
+        call(queries, "createFoo");
+    }
+
+    @After
+    public void tearDown() {
+        jt.execute("drop all objects");
+    }
+
+    @Test
+    public void testParamsSources() {
+        assertEquals(1, call(queries, "insertFoo", fooParams(1, "foo", 1.5)));
+        assertEquals(1, call(queries, "insertFoo", fooParams(2, null, 0)));
+        assertEquals("foo", jt.queryForObject("select foo_name from foo where id = 1", String.class));
+        assertEquals(1.5, jt.queryForObject("select score_double from foo where id = 1", Double.class));
+        assertNull(jt.queryForObject("select foo_name from foo where id = 2", String.class));
+        assertEquals(1, call(queries, "updateFooName", params("UpdateFooNameParams", "fooId", 2L, "fooName", "bar")));
+        assertEquals("bar", jt.queryForObject("select foo_name from foo where id = 2", String.class));
+    }
+
+    @Test
+    public void testLimits() {
+        insertFoos(1, 5);
+        final List<Integer> maxRows = new ArrayList<Integer>();
+        final List<Integer> fetchSizes = new ArrayList<Integer>();
+        RowMapper<Long> mapper = new RowMapper<Long>() {
+            @Override
+            public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+                maxRows.add(rs.getStatement().getMaxRows());
+                fetchSizes.add(rs.getStatement().getFetchSize());
+                return rs.getLong(1);
+            }
+        };
+        assertEquals(Arrays.asList(1L, 2L), call(queries, "selectAllFooFirst", 2, mapper));
+        assertEquals(Arrays.asList(2, 2), maxRows);
+        assertEquals(Arrays.asList(2, 2), fetchSizes);
+        maxRows.clear();
+        fetchSizes.clear();
+        // max rows directive is lower than limit, fetch size directive is clamped to it
+        assertEquals(Arrays.asList(1L, 2L, 3L), call(queries, "selectAllFooFirst", 5, mapper));
+        assertEquals(Arrays.asList(3, 3, 3), maxRows);
+        assertEquals(Arrays.asList(3, 3, 3), fetchSizes);
+        assertEquals(3, ((List<?>) call(queries, "selectAllFoo", ID_MAPPER)).size());
+        assertEquals(Arrays.asList(3L, 4L), call(queries, "selectFooIdsFirst", 2L, 2, ID_MAPPER));
+        assertEquals(true, call(queries, "selectFooIdsExists", 4L));
+        assertEquals(false, call(queries, "selectFooIdsExists", 5L));
+        try {
+            call(queries, "selectAllFooFirst", 0, ID_MAPPER);
+            fail("Limits fail");
+        } catch (DataAccessException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testKeysetPaging() {
+        insertFoos(1, 7);
+        Object page = call(queries, "selectFooIdsPage", 0L, null, 3, ID_MAPPER);
+        assertEquals(Arrays.asList(1L, 2L, 3L), call(page, "getRows"));
+        assertEquals(3L, call(page, "getNextKey"));
+        page = call(queries, "selectFooIdsPage", 0L, call(page, "getNextKey"), 3, ID_MAPPER);
+        assertEquals(Arrays.asList(4L, 5L, 6L), call(page, "getRows"));
+        assertEquals(true, call(page, "hasNext"));
+        page = call(queries, "selectFooIdsPage", 0L, call(page, "getNextKey"), 3, ID_MAPPER);
+        assertEquals(Arrays.asList(7L), call(page, "getRows"));
+        assertEquals(false, call(page, "hasNext"));
+        // exact page boundary
+        page = call(queries, "selectFooIdsPage", 4L, null, 3, ID_MAPPER);
+        assertEquals(Arrays.asList(5L, 6L, 7L), call(page, "getRows"));
+        assertEquals(false, call(page, "hasNext"));
+        List<Object> all = new ArrayList<Object>();
+        Iterator<?> iter = (Iterator<?>) call(queries, "selectFooIdsAllPages", 1L, 2, ID_MAPPER);
+        while (iter.hasNext()) all.add(iter.next());
+        assertEquals(Arrays.<Object>asList(2L, 3L, 4L, 5L, 6L, 7L), all);
+        page = call(queries, "selectFooNamesPage", null, 3, NAME_MAPPER);
+        assertEquals(Arrays.asList("foo1", "foo2", "foo3"), call(page, "getRows"));
+        call(queries, "updateFooName", params("UpdateFooNameParams", "fooId", 4L, "fooName", "foo3"));
+        try {
+            call(queries, "selectFooNamesPage", null, 3, NAME_MAPPER);
+            fail("Keyset fail");
+        } catch (DataAccessException e) {
+            // expected, duplicate key on page boundary
+        }
+    }
+
+    @Test
+    public void testWriteBehind() throws Exception {
+        insertFoos(1, 5);
+        Object merger = queriesClass.getClassLoader().loadClass(CLASS_NAME + "$WriteBehind")
+                .getMethod("replacing").invoke(null);
+        Object wb = call(queries, "updateFooNameWriteBehind", 3, 3600000L, null, new DataSourceTransactionManager(ds), merger);
+        call(wb, "update", params("UpdateFooNameParams", "fooId", 1L, "fooName", "bar1"));
+        call(wb, "update", params("UpdateFooNameParams", "fooId", 1L, "fooName", "baz1"));
+        call(wb, "update", params("UpdateFooNameParams", "fooId", 2L, "fooName", "baz2"));
+        assertEquals(2, call(wb, "size"));
+        assertEquals("foo1", jt.queryForObject("select foo_name from foo where id = 1", String.class));
+        // max size reached
+        call(wb, "update", params("UpdateFooNameParams", "fooId", 3L, "fooName", "baz3"));
+        assertEquals(0, call(wb, "size"));
+        assertEquals(Arrays.asList("baz1", "baz2", "baz3", "foo4", "foo5"), jt.queryForList("select foo_name from foo order by id", String.class));
+        call(wb, "update", params("UpdateFooNameParams", "fooId", 4L, "fooName", "baz4"));
+        assertEquals(1, call(wb, "flush"));
+        call(wb, "update", params("UpdateFooNameParams", "fooId", 5L, "fooName", "baz5"));
+        call(wb, "close");
+        assertEquals(Arrays.asList("baz1", "baz2", "baz3", "baz4", "baz5"), jt.queryForList("select foo_name from foo order by id", String.class));
+        try {
+            call(wb, "update", params("UpdateFooNameParams", "fooId", 1L, "fooName", "foo"));
+            fail("Write-behind fail");
+        } catch (DataAccessException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWriteBehindFailure() throws Exception {
+        insertFoos(1, 3);
+        Object merger = queriesClass.getClassLoader().loadClass(CLASS_NAME + "$WriteBehind")
+                .getMethod("replacing").invoke(null);
+        Object wb = call(queries, "updateFooNameWriteBehind", 2, 3600000L, null, new DataSourceTransactionManager(ds), merger);
+        char[] tooLong = new char[256];
+        Arrays.fill(tooLong, 'x');
+        Object bad = params("UpdateFooNameParams", "fooId", 1L, "fooName", new String(tooLong));
+        call(wb, "update", bad);
+        try {
+            call(wb, "update", params("UpdateFooNameParams", "fooId", 2L, "fooName", "bar2"));
+            fail("Write-behind fail");
+        } catch (DataAccessException e) {
+            // expected, value too long
+        }
+        // failed batch is dropped and doesn't block subsequent updates
+        assertEquals(0, call(wb, "size"));
+        assertTrue(call(wb, "getLastFailure") instanceof DataAccessException);
+        List<?> failed = (List<?>) call(wb, "getLastFailedParams");
+        assertEquals(2, failed.size());
+        assertTrue(failed.contains(bad));
+        call(wb, "update", params("UpdateFooNameParams", "fooId", 3L, "fooName", "baz3"));
+        call(wb, "close");
+        assertEquals(Arrays.asList("foo1", "foo2", "baz3"), jt.queryForList("select foo_name from foo order by id", String.class));
+    }
+
+    @Test
+    public void testBatches() {
+        assertEquals(10, call(queries, "insertFooBatch", fooParamsList(1, 10).iterator(), 3));
+        assertEquals(100L, call(queries, "insertFooValuesBatch", fooParamsList(11, 110).iterator(), 16));
+        assertEquals(10L, call(queries, "insertFooValuesBatch", fooParamsList(111, 120).iterator(), 16, 9));
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            assertEquals(50L, call(queries, "insertFooBatchPipelined", fooParamsList(121, 170).iterator(), 2, 16, 1000L, executor));
+            Object report = call(queries, "insertFooParallelBatch", fooParamsList(171, 270).iterator(), 7, 3, 1,
+                    new DataSourceTransactionManager(ds), executor, null);
+            assertEquals(true, call(report, "isSuccess"));
+            assertEquals(100L, call(report, "getUpdated"));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(270, jt.queryForInt("select count(*) from foo"));
+        assertEquals(270L * 271 / 2, jt.queryForLong("select sum(id) from foo"));
+        assertEquals("foo170", jt.queryForObject("select foo_name from foo where id = 170", String.class));
+        assertEquals(85.0, jt.queryForObject("select score_double from foo where id = 170", Double.class));
+        List<Object> renames = new ArrayList<Object>();
+        for (long i = 1; i <= 5; i++) renames.add(params("UpdateFooNameParams", "fooId", i, "fooName", "bar"));
+        assertEquals(5, call(queries, "updateFooNameBatch", renames.iterator(), 2));
+        assertEquals(5, jt.queryForInt("select count(*) from foo where foo_name = 'bar'"));
+    }
+
+    @Test
+    public void testTemplates() {
+        insertFoos(1, 3);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(Arrays.asList(2L, 3L), call(queries, "selectFooTemplate", 1L, ID_MAPPER, new Object[]{"table", "foo"}));
+            try {
+                call(queries, "selectFooTemplate", 1L, ID_MAPPER, new Object[]{"table", "foo; drop table foo"});
+                fail("Template fail");
+            } catch (DataAccessException e) {
+                // expected
+            }
+        }
+        assertEquals(Arrays.asList(2L), call(queries, "selectFooTemplateFirst", 1L, 1, ID_MAPPER, new Object[]{"table", "foo"}));
+    }
+
+    @Test
+    public void testPublishers() throws Exception {
+        insertFoos(1, 5);
+        final List<Integer> fetchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        RowMapper<Long> mapper = new RowMapper<Long>() {
+            @Override
+            public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+                fetchSizes.add(rs.getStatement().getFetchSize());
+                return rs.getLong(1);
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // next row is requested from onNext while the drain task is running
+            RecordingSubscriber oneByOne = new RecordingSubscriber(true, -1);
+            publisher("selectFooIdsPublisher", 0L, mapper, executor).subscribe(oneByOne);
+            oneByOne.subscription.request(1);
+            oneByOne.awaitTerminated();
+            assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), oneByOne.rows);
+            assertTrue(oneByOne.completed);
+            assertNull(oneByOne.error);
+            // request(1) doesn't set fetch size to one row
+            assertEquals(Collections.nCopies(5, 100), fetchSizes);
+            // requests after cancel are ignored
+            RecordingSubscriber cancelling = new RecordingSubscriber(false, 2);
+            publisher("selectFooIdsPublisher", 0L, ID_MAPPER, executor).subscribe(cancelling);
+            cancelling.subscription.request(4);
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+            assertEquals(Arrays.asList(1L, 2L), cancelling.rows);
+            assertFalse(cancelling.completed);
+            assertNull(cancelling.error);
+            RecordingSubscriber invalid = new RecordingSubscriber(false, -1);
+            publisher("selectFooIdsPublisher", 0L, ID_MAPPER, executor).subscribe(invalid);
+            invalid.subscription.request(0);
+            invalid.awaitTerminated();
+            assertTrue(invalid.error instanceof IllegalArgumentException);
+            assertTrue(invalid.rows.isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+        RecordingSubscriber rejected = new RecordingSubscriber(false, -1);
+        publisher("selectFooIdsPublisher", 0L, ID_MAPPER, executor).subscribe(rejected);
+        rejected.subscription.request(1);
+        assertTrue(rejected.error instanceof RejectedExecutionException);
+        // no more signals after terminal one
+        rejected.subscription.request(1);
+        assertTrue(rejected.rows.isEmpty());
+    }
+
+    @Test
+    public void testExports() throws Exception {
+        assertEquals(1, call(queries, "insertFoo", fooParams(1, "foo", 1.5)));
+        assertEquals(1, call(queries, "insertFoo", fooParams(2, "a,\"b\"\r\nc", 0)));
+        assertEquals(1, call(queries, "insertFoo", fooParams(3, null, -2)));
+        Class<?> formatClass = queriesClass.getClassLoader().loadClass(CLASS_NAME + "$ExportFormat");
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        assertEquals(3L, call(queries, "selectAllFooExport", Channels.newChannel(csv), formatClass.getField("CSV").get(null)));
+        assertEquals("id,foo_name,score_double\r\n" +
+                "1,foo,1.5\r\n" +
+                "2,\"a,\"\"b\"\"\r\nc\",0.0\r\n" +
+                "3,,-2.0\r\n", new String(csv.toByteArray(), "UTF-8"));
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        assertEquals(3L, call(queries, "selectAllFooExport", Channels.newChannel(binary), formatClass.getField("BINARY").get(null)));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(binary.toByteArray()));
+        // column without type suffix is exported as text
+        for (Object[] row : new Object[][]{{"1", "foo", 1.5}, {"2", "a,\"b\"\r\nc", 0.0}, {"3", null, -2.0}}) {
+            assertEquals(3, in.readInt());
+            assertEquals(row[0], readBinaryString(in));
+            assertEquals(row[1], readBinaryString(in));
+            assertEquals(8, in.readInt());
+            assertEquals(row[2], in.readDouble());
+        }
+        assertEquals(-1, in.read());
+    }
+
+    private static String readBinaryString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (-1 == length) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    @Test
+    public void testPrefetchIterators() throws Exception {
+        insertFoos(1, 100);
+        final AtomicInteger mapped = new AtomicInteger();
+        RowMapper<Long> mapper = new RowMapper<Long>() {
+            @Override
+            public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+                mapped.incrementAndGet();
+                if (42 == rs.getLong(1)) throw new IllegalStateException("Mapper failure");
+                return rs.getLong(1);
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // closed in the middle, background task stops and releases the cursor
+            Iterator<?> iter = (Iterator<?>) call(queries, "selectFooIdsPrefetchIterator", 50L, mapper, executor, 2);
+            assertEquals(51L, iter.next());
+            assertEquals(52L, iter.next());
+            assertEquals(53L, iter.next());
+            call(iter, "close");
+            assertFalse(iter.hasNext());
+            assertEquals(true, call(iter, "isClosed"));
+            // close waits for the background task, so it doesn't read more rows
+            int mappedOnClose = mapped.get();
+            assertTrue(mappedOnClose <= 9);
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertEquals(mappedOnClose, mapped.get());
+            // error of the background task is thrown from hasNext after preceding rows
+            iter = (Iterator<?>) call(queries, "selectFooIdsPrefetchIterator", 36L, mapper, executor, 4);
+            List<Object> read = new ArrayList<Object>();
+            try {
+                while (iter.hasNext()) read.add(iter.next());
+                fail("Prefetch fail");
+            } catch (IllegalStateException e) {
+                assertEquals("Mapper failure", e.getMessage());
+            }
+            assertEquals(Arrays.<Object>asList(37L, 38L, 39L, 40L), read);
+            assertFalse(iter.hasNext());
+            List<Object> all = new ArrayList<Object>();
+            iter = (Iterator<?>) call(queries, "selectFooIdsPrefetchIterator", 90L, ID_MAPPER, executor, 3);
+            while (iter.hasNext()) all.add(iter.next());
+            assertEquals(Arrays.<Object>asList(91L, 92L, 93L, 94L, 95L, 96L, 97L, 98L, 99L, 100L), all);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLazyLists() {
+        insertFoos(1, 10);
+        final int[] mapped = new int[1];
+        RowMapper<Long> mapper = new RowMapper<Long>() {
+            @Override
+            public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+                mapped[0] += 1;
+                return rs.getLong(1);
+            }
+        };
+        List<?> list = (List<?>) call(queries, "selectFooIdsLazyList", 0L, mapper, 3, 1);
+        assertFalse(list.isEmpty());
+        assertEquals(3, mapped[0]);
+        assertEquals(5L, list.get(4));
+        assertEquals(6, mapped[0]);
+        // first page was evicted, query is re-executed
+        assertEquals(1L, list.get(0));
+        assertEquals(9, mapped[0]);
+        // remaining rows are read from the open cursor
+        assertEquals(10, list.size());
+        assertEquals(16, mapped[0]);
+        assertEquals(10L, list.get(9));
+        assertEquals(16, mapped[0]);
+        assertEquals(3L, list.get(2));
+        assertEquals(19, mapped[0]);
+        try {
+            list.get(10);
+            fail("Lazy list fail");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        List<Long> all = new ArrayList<Long>();
+        for (Object id : list) all.add((Long) id);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), all);
+        call(list, "close");
+        // size of page-aligned list
+        List<?> aligned = (List<?>) call(queries, "selectFooIdsLazyList", 1L, ID_MAPPER, 3, 2);
+        assertEquals(9, aligned.size());
+        assertEquals(10L, aligned.get(8));
+        assertEquals(2L, aligned.get(0));
+        List<?> empty = (List<?>) call(queries, "selectFooIdsLazyList", 10L, ID_MAPPER, 3, 1);
+        assertTrue(empty.isEmpty());
+        assertEquals(0, empty.size());
+    }
+
+    @Test
+    public void testSpillBuffers() throws Exception {
+        insertFoos(1, 50);
+        List<Long> expected = new ArrayList<Long>();
+        for (long i = 11; i <= 50; i++) expected.add(i);
+        final Iterable<?> inMemory = (Iterable<?>) call(queries, "selectFooIdsSpilled", 10L, 1L << 20, null);
+        assertEquals(false, call(inMemory, "isSpilled"));
+        assertEquals(expected, spilledIds(inMemory));
+        call(inMemory, "close");
+        File spillDir = createTempDir();
+        try {
+            // rows take more than 100 bytes and are spilled to file
+            final Iterable<?> spilled = (Iterable<?>) call(queries, "selectFooIdsSpilled", 10L, 100L, spillDir);
+            assertEquals(true, call(spilled, "isSpilled"));
+            assertEquals(40L, call(spilled, "size"));
+            assertEquals(1, spillDir.list().length);
+            assertEquals(expected, spilledIds(spilled));
+            // buffer may be iterated concurrently
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<List<Long>>> futures = new ArrayList<Future<List<Long>>>();
+                for (int i = 0; i < 4; i++) {
+                    futures.add(executor.submit(new Callable<List<Long>>() {
+                        @Override
+                        public List<Long> call() throws Exception {
+                            return spilledIds(spilled);
+                        }
+                    }));
+                }
+                for (Future<List<Long>> fu : futures) assertEquals(expected, fu.get());
+            } finally {
+                executor.shutdown();
+            }
+            // small segments, file is split at row boundaries
+            Class<?> bufferClass = queriesClass.getClassLoader().loadClass(CLASS_NAME + "$SpillBuffer");
+            Class<?> codecClass = queriesClass.getClassLoader().loadClass(CLASS_NAME + "$RowCodec");
+            Constructor<?> constructor = bufferClass.getDeclaredConstructor(codecClass, int.class, File.class, int.class);
+            constructor.setAccessible(true);
+            Field codecField = queriesClass.getDeclaredField("SELECT_FOO_IDS_ROW_CODEC");
+            codecField.setAccessible(true);
+            Object segmented = constructor.newInstance(codecField.get(null), 1, spillDir, 64);
+            for (Object row : spilled) invokePrivate(segmented, "add", row);
+            invokePrivate(segmented, "finish");
+            assertTrue(((Object[]) readField(segmented, "segments")).length > 10);
+            assertEquals(expected, spilledIds((Iterable<?>) segmented));
+            call(segmented, "close");
+            call(spilled, "close");
+            assertEquals(0, spillDir.list().length);
+            try {
+                spilled.iterator();
+                fail("Spill fail");
+            } catch (DataAccessException e) {
+                // expected, closed
+            }
+        } finally {
+            for (File fi : spillDir.listFiles()) fi.delete();
+            spillDir.delete();
+        }
+    }
+
+    private static List<Long> spilledIds(Iterable<?> buffer) {
+        List<Long> ids = new ArrayList<Long>();
+        for (Object row : buffer) {
+            ids.add((Long) call(row, "getFooId"));
+            assertEquals("foo" + ids.get(ids.size() - 1), call(row, "getFooName"));
+        }
+        return ids;
+    }
+
+    private static Object invokePrivate(Object target, String methodName, Object... args) throws Exception {
+        for (Method me : target.getClass().getDeclaredMethods()) {
+            if (!me.getName().equals(methodName) || me.getParameterTypes().length != args.length) continue;
+            me.setAccessible(true);
+            return me.invoke(target, args);
+        }
+        throw new IllegalArgumentException("Method: [" + methodName + "] not found");
+    }
+
+    private static Object readField(Object target, String fieldName) throws Exception {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        return field.get(target);
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("spill-test-", "");
+        if (!dir.delete() || !dir.mkdir()) throw new IOException("Cannot create directory: [" + dir + "]");
+        return dir;
+    }
+
+    private void insertFoos(long from, long to) {
+        for (Object params : fooParamsList(from, to)) {
+            assertEquals(1, call(queries, "insertFoo", params));
+        }
+    }
+
+    private static List<Object> fooParamsList(long from, long to) {
+        List<Object> list = new ArrayList<Object>();
+        for (long i = from; i <= to; i++) {
+            list.add(fooParams(i, "foo" + i, i / 2.0));
+        }
+        return list;
+    }
+
+    private static Object fooParams(long id, String name, double score) {
+        return params("InsertFooParams", "fooId", id, "fooName", name, "scoreDouble", score);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Publisher<Long> publisher(String methodName, Object... args) {
+        return (Publisher<Long>) call(queries, methodName, args);
+    }
+
+    // implements generated parameters interface, getters return provided values
+    private static Object params(String interfaceName, Object... properties) {
+        final Map<String, Object> values = new HashMap<String, Object>();
+        for (int i = 0; i < properties.length; i += 2) {
+            values.put((String) properties[i], properties[i + 1]);
+        }
+        try {
+            Class<?> iface = queriesClass.getClassLoader().loadClass(CLASS_NAME + "$" + interfaceName);
+            return Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{iface}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String name = method.getName();
+                    if ("hashCode".equals(name)) return System.identityHashCode(proxy);
+                    if ("equals".equals(name)) return proxy == args[0];
+                    if ("toString".equals(name)) return values.toString();
+                    return values.get(Character.toLowerCase(name.charAt(3)) + name.substring(4));
+                }
+            });
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // methods are looked up by name and number of arguments
+    private static Object call(Object target, String methodName, Object... args) {
+        for (Method me : target.getClass().getMethods()) {
+            if (!me.getName().equals(methodName) || me.getParameterTypes().length != args.length) continue;
+            try {
+                me.setAccessible(true);
+                return me.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new RuntimeException(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        throw new IllegalArgumentException("Method: [" + methodName + "] with [" + args.length + "] arguments " +
+                "not found in class: [" + target.getClass().getName() + "]");
+    }
+
+    private static class RecordingSubscriber implements Subscriber<Long> {
+        private final List<Long> rows = Collections.synchronizedList(new ArrayList<Long>());
+        private final CountDownLatch terminated = new CountDownLatch(1);
+        private final boolean requestNext;
+        private final int cancelAfter;
+        private volatile Subscription subscription;
+        private volatile boolean completed = false;
+        private volatile Throwable error;
+
+        private RecordingSubscriber(boolean requestNext, int cancelAfter) {
+            this.requestNext = requestNext;
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Long row) {
+            rows.add(row);
+            if (cancelAfter == rows.size()) {
+                subscription.cancel();
+                subscription.request(1);
+            } else if (requestNext) {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error = e;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            terminated.countDown();
+        }
+
+        private void awaitTerminated() throws InterruptedException {
+            assertTrue("Subscriber fail", terminated.await(10, TimeUnit.SECONDS));
+        }
+    }
+}
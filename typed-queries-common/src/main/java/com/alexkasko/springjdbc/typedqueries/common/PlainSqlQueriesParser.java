@@ -2,6 +2,7 @@ package com.alexkasko.springjdbc.typedqueries.common;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -10,6 +11,9 @@ import java.util.regex.Pattern;
 /**
  * Parses SQL queries file (as {@link Reader} or {@link InputStream}) to 'name'->'sql' map.
  * Query name syntax: {@code /** selectSomeData STAR_SYMBOL/ }
+ * Query name may be followed by directives in {@code key=value} form:
+ * {@code /** selectSomeData fetchSize=5000 timeout=30 STAR_SYMBOL/ },
+ * directives are not included into query names and may be obtained using {@code parseDirectives} methods.
  * Won't close provided stream/reader.
  *
  * @author alexkasko
@@ -18,6 +22,8 @@ import java.util.regex.Pattern;
 public class PlainSqlQueriesParser {
     private enum State {STARTED, COLLECTING}
     public static final Pattern DEFAULT_QUERY_NAME_REGEX = Pattern.compile("^\\s*/\\*{2}\\s*(.*?)\\s*\\*/\\s*$");
+    private static final Pattern HEADER_SPLIT_REGEX = Pattern.compile("\\s+");
+    private static final Pattern DIRECTIVE_REGEX = Pattern.compile("^([a-zA-Z][a-zA-Z0-9_]*)=(\\S+)$");
 
     /**
      * Parses provided stream to 'name'->'sql' map using 'UTF-8' encoding
@@ -48,6 +54,44 @@ public class PlainSqlQueriesParser {
      */
     public Map<String, String> parse(Reader reader) throws SqlFileParseException {
         Map<String, String> res = new LinkedHashMap<String, String>();
+        parse(reader, res, new LinkedHashMap<String, Map<String, String>>());
+        return res;
+    }
+
+    /**
+     * Parses provided stream to 'name'->'directives' map using 'UTF-8' encoding
+     *
+     * @param is sql queries file
+     * @return 'name'->'directives' map, contains all queries, directives maps are empty for queries without directives
+     */
+    public Map<String, Map<String, String>> parseDirectives(InputStream is) {
+        return parseDirectives(is, "UTF-8");
+    }
+
+    /**
+     * Parses provided stream to 'name'->'directives' map.
+     *
+     * @param is sql queries file
+     * @param encoding sql queries file encoding
+     * @return 'name'->'directives' map, contains all queries, directives maps are empty for queries without directives
+     */
+    public Map<String, Map<String, String>> parseDirectives(InputStream is, String encoding) {
+        return parseDirectives(new InputStreamReader(is, Charset.forName(encoding)));
+    }
+
+    /**
+     * Parses provided reader to 'name'->'directives' map.
+     *
+     * @param reader sql queries file
+     * @return 'name'->'directives' map, contains all queries, directives maps are empty for queries without directives
+     */
+    public Map<String, Map<String, String>> parseDirectives(Reader reader) throws SqlFileParseException {
+        Map<String, Map<String, String>> res = new LinkedHashMap<String, Map<String, String>>();
+        parse(reader, new LinkedHashMap<String, String>(), res);
+        return res;
+    }
+
+    private void parse(Reader reader, Map<String, String> res, Map<String, Map<String, String>> directives) {
         BufferedReader re = null;
         try {
             re = new BufferedReader(reader);
@@ -64,7 +108,7 @@ public class PlainSqlQueriesParser {
                         Matcher startedMatcher = DEFAULT_QUERY_NAME_REGEX.matcher(line);
                         if(!startedMatcher.matches()) throw new SqlFileParseException(
                                 "Query name not found on start, regex: [" + DEFAULT_QUERY_NAME_REGEX + "]");
-                        name = startedMatcher.group(1);
+                        name = parseHeader(startedMatcher.group(1), directives);
                         state = State.COLLECTING;
                         break;
                     case COLLECTING:
@@ -78,7 +122,7 @@ public class PlainSqlQueriesParser {
                                     "Duplicate SQL query name: [" + name + "]");
                             // clean collected sql string
                             sql = new StringBuilder();
-                            name = nameMatcher.group(1);
+                            name = parseHeader(nameMatcher.group(1), directives);
                         } else {
                             sql.append(line);
                             sql.append("\n");
@@ -99,7 +143,22 @@ public class PlainSqlQueriesParser {
         } finally {
             closeQuietly(re);
         }
-        return res;
+    }
+
+    private static String parseHeader(String header, Map<String, Map<String, String>> directives) {
+        String[] parts = HEADER_SPLIT_REGEX.split(header);
+        String name = parts[0];
+        Map<String, String> dirs = new LinkedHashMap<String, String>();
+        for(int i = 1; i < parts.length; i++) {
+            Matcher matcher = DIRECTIVE_REGEX.matcher(parts[i]);
+            if(!matcher.matches()) throw new SqlFileParseException(
+                    "Invalid directive: [" + parts[i] + "] for query: [" + name + "], regex: [" + DIRECTIVE_REGEX + "]");
+            String existed = dirs.put(matcher.group(1), matcher.group(2));
+            if(null != existed) throw new SqlFileParseException(
+                    "Duplicate directive: [" + matcher.group(1) + "] for query: [" + name + "]");
+        }
+        directives.put(name, Collections.unmodifiableMap(dirs));
+        return name;
     }
 
     private static void closeQuietly(Closeable is) {
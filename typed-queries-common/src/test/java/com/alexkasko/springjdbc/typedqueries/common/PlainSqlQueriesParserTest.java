@@ -3,7 +3,10 @@ package com.alexkasko.springjdbc.typedqueries.common;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.StringReader;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
@@ -38,4 +41,24 @@ public class PlainSqlQueriesParserTest {
                 "   and 1 > 0 -- stupid condidion\n" +
                 "   limit 42\n", parsed.get("myTestSelect"));
     }
+
+    @Test
+    public void testDirectives() {
+        String sql = "" +
+                "/** selectFoo fetchSize=5000  timeout=30 */\n" +
+                "select foo from bar\n" +
+                "/** selectBar */\n" +
+                "select bar from baz\n";
+        Map<String, String> parsed = new PlainSqlQueriesParser().parse(new StringReader(sql));
+        assertEquals("Names fail", Arrays.asList("selectFoo", "selectBar"), new ArrayList<String>(parsed.keySet()));
+        Map<String, Map<String, String>> directives = new PlainSqlQueriesParser().parseDirectives(new StringReader(sql));
+        assertEquals("Directives fail", "5000", directives.get("selectFoo").get("fetchSize"));
+        assertEquals("Directives fail", "30", directives.get("selectFoo").get("timeout"));
+        assertTrue("Directives fail", directives.get("selectBar").isEmpty());
+    }
+
+    @Test(expected = SqlFileParseException.class)
+    public void testInvalidDirective() {
+        new PlainSqlQueriesParser().parse(new StringReader("/** selectFoo fetchSize */\nselect foo from bar\n"));
+    }
 }
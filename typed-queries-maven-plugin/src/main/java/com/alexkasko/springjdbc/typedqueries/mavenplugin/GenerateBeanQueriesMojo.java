@@ -14,6 +14,7 @@ import org.springframework.util.ClassUtils;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -124,6 +125,119 @@ public class GenerateBeanQueriesMojo extends AbstractMojo {
      * @parameter expression="${typedqueries.useFluentSettersForColumns}"
      */
     private boolean useFluentSettersForColumns;
+    /**
+     * Whether to parse queries once on generated class construction and execute them
+     * with positional parameters, false by default
+     *
+     * @parameter expression="${typedqueries.usePreparsedQueries}"
+     */
+    private boolean usePreparsedQueries;
+    /**
+     * Whether to generate reflection-free parameters sources for parameters
+     * interfaces instead of using 'BeanPropertySqlParameterSource', false by default
+     *
+     * @parameter expression="${typedqueries.generateParamsSources}"
+     */
+    private boolean generateParamsSources;
+    /**
+     * Whether to generate typed holder class with setter for each placeholder of template query
+     * and use it instead of {@code Object... substitutions} vararg
+     *
+     * @parameter expression="${typedqueries.useTypedSubstitutions}"
+     */
+    private boolean useTypedSubstitutions;
+    /**
+     * Whether to generate result row class and row mapper, that reads columns by indices,
+     * for each select query with parsed columns list
+     *
+     * @parameter expression="${typedqueries.generateRowClasses}"
+     */
+    private boolean generateRowClasses;
+    /**
+     * Whether to generate methods, that collect results of select queries with only numeric
+     * columns into primitive arrays (one array per column)
+     *
+     * @parameter expression="${typedqueries.generateColumnArrays}"
+     */
+    private boolean generateColumnArrays;
+    /**
+     * Whether to generate select methods passing reusable row views to callbacks
+     *
+     * @parameter expression="${typedqueries.generateRowCallbacks}"
+     */
+    private boolean generateRowCallbacks;
+    /**
+     * Whether to generate iterator methods prefetching rows in background, effective only with "useIterableJdbcTemplate" flag
+     *
+     * @parameter expression="${typedqueries.usePrefetchIterators}"
+     */
+    private boolean usePrefetchIterators;
+    /**
+     * Whether to generate select methods returning java.util.stream.Stream, effective only with "useIterableJdbcTemplate" flag, generated code requires Java 8
+     *
+     * @parameter expression="${typedqueries.useStreams}"
+     */
+    private boolean useStreams;
+    /**
+     * Whether to generate select methods returning reactive streams publishers, effective only with "useIterableJdbcTemplate" flag
+     *
+     * @parameter expression="${typedqueries.useReactivePublishers}"
+     */
+    private boolean useReactivePublishers;
+    /**
+     * Whether to generate async counterparts of select and update methods returning CompletableFuture, generated code requires Java 8
+     *
+     * @parameter expression="${typedqueries.useAsyncMethods}"
+     */
+    private boolean useAsyncMethods;
+    /**
+     * Whether to generate exists and first rows select methods reading only required rows
+     *
+     * @parameter expression="${typedqueries.generateLimitedSelects}"
+     */
+    private boolean generateLimitedSelects;
+    /**
+     * Whether to generate select methods returning lazily paged lists backed by query cursor
+     *
+     * @parameter expression="${typedqueries.useLazyLists}"
+     */
+    private boolean useLazyLists;
+    /**
+     * Whether to generate select methods buffering result rows in memory and spilling them to disk
+     *
+     * @parameter expression="${typedqueries.useSpillBuffers}"
+     */
+    private boolean useSpillBuffers;
+    /**
+     * Whether to generate select methods exporting results to channels in CSV or binary format
+     *
+     * @parameter expression="${typedqueries.generateExports}"
+     */
+    private boolean generateExports;
+    /**
+     * Whether to generate pipelined batch methods with adaptive batch size, requires useBatchInserts
+     *
+     * @parameter expression="${typedqueries.usePipelinedBatches}"
+     */
+    private boolean usePipelinedBatches;
+    /**
+     * Whether to generate parallel multi-connection batch methods, requires useBatchInserts
+     *
+     * @parameter expression="${typedqueries.useParallelBatches}"
+     */
+    private boolean useParallelBatches;
+    /**
+     * Whether to generate multi-row VALUES batch methods for simple inserts, requires useBatchInserts
+     *
+     * @parameter expression="${typedqueries.useMultiValuesInserts}"
+     */
+    private boolean useMultiValuesInserts;
+    /**
+     * Whether to generate batch methods taking parameters as arrays, requires useBatchInserts
+     *
+     * @parameter expression="${typedqueries.useColumnsBatches}"
+     */
+    private boolean useColumnsBatches;
     /**
      * Regular expression to use for identifying 'select' queries by name,
      * default: '^select[a-zA-Z][a-zA-Z0-9_$]*$'
@@ -202,6 +316,24 @@ public class GenerateBeanQueriesMojo extends AbstractMojo {
             if(!useUnderscoredToCamel) builder.setUseUnderscoredToCamel(false);
             if(generateInterfacesForColumns) builder.setGenerateInterfacesForColumns(true);
             if(useFluentSettersForColumns) builder.setUseFluentSettersForColumns(true);
+            if(usePreparsedQueries) builder.setUsePreparsedQueries(true);
+            if(generateParamsSources) builder.setGenerateParamsSources(true);
+            if(useTypedSubstitutions) builder.setUseTypedSubstitutions(true);
+            if(generateRowClasses) builder.setGenerateRowClasses(true);
+            if(generateColumnArrays) builder.setGenerateColumnArrays(true);
+            if(generateRowCallbacks) builder.setGenerateRowCallbacks(true);
+            if(usePrefetchIterators) builder.setUsePrefetchIterators(true);
+            if(useStreams) builder.setUseStreams(true);
+            if(useReactivePublishers) builder.setUseReactivePublishers(true);
+            if(useAsyncMethods) builder.setUseAsyncMethods(true);
+            if(generateLimitedSelects) builder.setGenerateLimitedSelects(true);
+            if(useLazyLists) builder.setUseLazyLists(true);
+            if(useSpillBuffers) builder.setUseSpillBuffers(true);
+            if(generateExports) builder.setGenerateExports(true);
+            if(usePipelinedBatches) builder.setUsePipelinedBatches(true);
+            if(useParallelBatches) builder.setUseParallelBatches(true);
+            if(useMultiValuesInserts) builder.setUseMultiValuesInserts(true);
+            if(useColumnsBatches) builder.setUseColumnsBatches(true);
             if(null != selectRegex) builder.setSelectRegex(selectRegex);
             if(null != updateRegex) builder.setUpdateRegex(updateRegex);
             if(null != templateRegex) builder.setTemplateRegex(templateRegex);
@@ -213,7 +345,7 @@ public class GenerateBeanQueriesMojo extends AbstractMojo {
             outWriter = new OutputStreamWriter(counter, "UTF-8");
             getLog().info("Generating queries wrapper for file: [" + queriesFile.getAbsolutePath() + "] " +
                     "into java file: [" + outFile.getAbsolutePath() + "]");
-            cg.generate(queries, fcn, queriesFile.getName(), outWriter);
+            cg.generate(queries, readDirectives(queriesFile), fcn, queriesFile.getName(), outWriter);
             getLog().info("Writing compete, bytes written: [" + counter.getCount() + "]");
         } catch(IOException e) {
             throw new MojoFailureException("IO error", e);
@@ -255,6 +387,17 @@ public class GenerateBeanQueriesMojo extends AbstractMojo {
         }
     }
 
+    private Map<String, Map<String, String>> readDirectives(File file) throws IOException {
+        if (!file.getName().toLowerCase().endsWith("sql")) return Collections.emptyMap();
+        InputStream is = null;
+        try {
+            is = openInputStream(file);
+            return new PlainSqlQueriesParser().parseDirectives(is, queriesFileEncoding);
+        } finally {
+            closeQuietly(is);
+        }
+    }
+
     private Map<String, Class<?>> parseTypeIdMap(String json) throws ClassNotFoundException {
         Type mapType = new TypeToken<LinkedHashMap<String, String>>(){}.getType();
         Map<String, String> strings = new Gson().fromJson(json, mapType);